@@ -31,12 +31,13 @@ import org.exoplatform.social.common.ExoSocialException;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.identity.model.Identity;
-import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.manager.ActivityManager;
 import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.space.spi.SpaceService;
+import org.exoplatform.social.integration.SearchContentNotifier;
+import org.exoplatform.social.integration.UserIdentityCache;
 import org.exoplatform.webui.application.WebuiRequestContext;
 
 import java.text.DateFormat;
@@ -132,6 +133,9 @@ public class CalendarSpaceActivityPublisher extends CalendarEventListener {
   public static final String STOP_REPEATING = "stop_repeating";
   public static final String EVENT_CANCELLED="event_cancelled";
 
+  public static final String EVENT_SEARCH_TYPE = "event";
+  public static final String TASK_SEARCH_TYPE = "task";
+
   private CalendarService calendarService;
   private IdentityManager identityManager;
   private ActivityManager activityManager;
@@ -217,7 +221,7 @@ public class CalendarSpaceActivityPublisher extends CalendarEventListener {
     Space space = spaceService.getSpaceByGroupId(spaceGroupId);
     String userId = ConversationState.getCurrent().getIdentity().getUserId();
     Identity spaceIdentity = identityManager.getOrCreateIdentity(SpaceIdentityProvider.NAME, space.getPrettyName(), false);
-    Identity userIdentity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, userId, false);
+    Identity userIdentity = UserIdentityCache.getUserIdentity(identityManager, userId);
 
     if(space == null) {
       return null;
@@ -246,8 +250,18 @@ public class CalendarSpaceActivityPublisher extends CalendarEventListener {
       activity.setTemplateParams(makeActivityParams(calendarEvent, calendarId, eventType));
       activityManager.updateActivity(activity);
     }
+    notifySearchContentChanged(calendarEvent);
     return activity;
   }
+
+  /**
+   * Tells the unified search that an event or a task changed, so that its cached results of this type are dropped.
+   *
+   * @param event
+   */
+  private void notifySearchContentChanged(CalendarEvent event) {
+    SearchContentNotifier.contentChanged(CalendarEvent.TYPE_TASK.equalsIgnoreCase(event.getEventType()) ? TASK_SEARCH_TYPE : EVENT_SEARCH_TYPE);
+  }
   /**
    * adds comment to existing event activity
    *
@@ -305,7 +319,7 @@ public class CalendarSpaceActivityPublisher extends CalendarEventListener {
   private ExoSocialActivity createComment(Map<String,String> messagesParams) {
     String userId = ConversationState.getCurrent().getIdentity().getUserId();
     if(identityManager == null) return null;
-    Identity userIdentity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, userId, false);
+    Identity userIdentity = UserIdentityCache.getUserIdentity(identityManager, userId);
 
     ExoSocialActivity newComment = new ExoSocialActivityImpl();
     newComment.isComment(true);
@@ -352,6 +366,7 @@ public class CalendarSpaceActivityPublisher extends CalendarEventListener {
       Space space = spaceService.getSpaceByGroupId(spaceGroupId);
       if (space != null && event.getActivityId() != null) {
         activityManager.deleteActivity(event.getActivityId());
+        notifySearchContentChanged(event);
       }
     } catch (ExoSocialException e){
       if (LOG.isDebugEnabled())
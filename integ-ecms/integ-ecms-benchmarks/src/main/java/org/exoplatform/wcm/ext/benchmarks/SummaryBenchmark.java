@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.wcm.ext.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.exoplatform.wcm.ext.component.activity.listener.HtmlSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Extraction of the summary lines of a web content, done by the content activity listeners on each create or update.
+ * The previous chain of regular expressions is kept as the baseline. The content is made of short paragraphs: on a
+ * single long paragraph the baseline backtracks quadratically and does not complete in a practical time beyond 64KB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SummaryBenchmark {
+
+  private static final int LINES_COUNT = 4;
+
+  private static final int CHARS_COUNT = 430;
+
+  /** Size of the content, in chars */
+  @Param({ "1024", "65536", "1048576", "5242880" })
+  public int size;
+
+  private String html;
+
+  @Setup
+  public void setUp() {
+    StringBuilder sb = new StringBuilder(size + 256);
+    sb.append("<html><head><title>Weekly report</title><style type=\"text/css\">p { margin: 0; }</style></head><body>");
+    sb.append("<script type=\"text/javascript\">var shown = 1 > 0;</script>");
+    int paragraph = 0;
+    while (sb.length() < size) {
+      sb.append("<p class=\"content\">Paragraph ").append(paragraph++).append(": ");
+      sb.append("The <b>project</b> meeting notes &amp; <a href=\"/portal/intranet/notes\">release plan</a> are updated. ");
+      sb.append("</p>\n");
+    }
+    html = sb.append("</body></html>").toString();
+  }
+
+  @Benchmark
+  public String summary() {
+    return HtmlSummary.getFirstLines(html, LINES_COUNT, CHARS_COUNT);
+  }
+
+  @Benchmark
+  public String regexChain() {
+    String result = html;
+    result = result.replaceAll("(?i)<head>.*</head>", "");
+    result = result.replaceAll("(?i)<script.*>.*</script>", "");
+    result = result.replaceAll("(?i)<style.*>.*</style>", "");
+    result = result.replaceAll("<([a-z\"]+) *[^/]*?>", "");
+    result = result.replaceAll("</([a-z]+) *[^/]*?>", "<br>");
+    result = result.replaceAll("([\n\t])+", "<br>");
+    result = result.replaceAll("(<br>[ \t\n]+<br>)", "<br>");
+    result = result.replaceAll("(<br>)+", "<br>");
+    int i = 0;
+    int index = -1;
+    while (true) {
+      index = result.indexOf("<br>", index + 1);
+      if (index < 0) break;
+      i++;
+      if (i > LINES_COUNT) break;
+    }
+    if (index < 0) {
+      if (result.length() > CHARS_COUNT) return result.substring(0, CHARS_COUNT - 1) + "...";
+      return result;
+    }
+    if (index > CHARS_COUNT) index = CHARS_COUNT - 1;
+    return result.substring(0, index) + "<br>...";
+  }
+}
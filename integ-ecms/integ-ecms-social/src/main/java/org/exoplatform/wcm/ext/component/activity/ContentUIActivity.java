@@ -285,6 +285,15 @@ public class ContentUIActivity extends BaseUIActivity {
   public String getSummary(Node node) {
     return Utils.getSummary(node);
   }
+
+  /**
+   * Gets the first lines of the summary, as shown in the activity.
+   * @param node the node
+   * @return the first lines of the summary of the node
+   */
+  public String getSummaryLines(Node node) {
+    return Utils.getFirstSummaryLines(Utils.getSummary(node));
+  }
   
   public String getDocumentSummary(Map<String, String> activityParams) {
     return activityParams.get(ContentUIActivity.DOCUMENT_SUMMARY);
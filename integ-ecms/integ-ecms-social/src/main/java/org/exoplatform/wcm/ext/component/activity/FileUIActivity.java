@@ -304,6 +304,15 @@ public class FileUIActivity extends BaseUIActivity{
   public String getSummary(Node node) {
     return Utils.getSummary(node);
   }
+
+  /**
+   * Gets the first lines of the summary, as shown in the activity.
+   * @param node the node
+   * @return the first lines of the summary of the node
+   */
+  public String getSummaryLines(Node node) {
+    return Utils.getFirstSummaryLines(Utils.getSummary(node));
+  }
   
   public String getDocumentSummary(Map<String, String> activityParams) {
     return activityParams.get(FileUIActivity.DOCUMENT_SUMMARY);
@@ -40,6 +40,7 @@ public class ContentRemovedActivityListener extends Listener<Node, String>{
   @Override
   public void onEvent(Event<Node, String> event) throws Exception {
     Node currentNode = event.getSource();
+    Utils.awaitQueuedActivities(currentNode);
     ExoContainer container = ExoContainerContext.getCurrentContainer();
     ActivityManager activityManager = (ActivityManager) container.getComponentInstanceOfType(ActivityManager.class);
     String nodeActivityID = StringUtils.EMPTY;
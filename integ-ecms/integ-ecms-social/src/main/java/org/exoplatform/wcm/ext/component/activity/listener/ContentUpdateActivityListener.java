@@ -75,18 +75,18 @@ public class ContentUpdateActivityListener extends Listener<Node, String> {
       if (propertyName.equals(editedField[i])) {
         if (propertyName.equals("exo:summary")) newValue = Utils.getFirstSummaryLines(newValue);
         if (StringUtils.isEmpty(newValue)) {
-          Utils.postActivity(currentNode, bundleMessageEmpty[i], needUpdate[i], true, "");
+          Utils.publishActivity(currentNode, bundleMessageEmpty[i], needUpdate[i], true, "");
         } else {
-          Utils.postActivity(currentNode, bundleMessage[i], needUpdate[i], true, newValue);
+          Utils.publishActivity(currentNode, bundleMessage[i], needUpdate[i], true, newValue);
         }
         return;
       }
     }//for
     if (propertyName.endsWith("jcr:data")) { //Special case for text content but store in jcr:content/jcr:data
       if (StringUtils.isEmpty(newValue)) {
-        Utils.postActivity(currentNode, bundleMessageEmpty[CONTENT_BUNDLE_INDEX], needUpdate[CONTENT_BUNDLE_INDEX], true, "");
+        Utils.publishActivity(currentNode, bundleMessageEmpty[CONTENT_BUNDLE_INDEX], needUpdate[CONTENT_BUNDLE_INDEX], true, "");
       }else {
-        Utils.postActivity(currentNode, bundleMessage[CONTENT_BUNDLE_INDEX], needUpdate[CONTENT_BUNDLE_INDEX], true, newValue);
+        Utils.publishActivity(currentNode, bundleMessage[CONTENT_BUNDLE_INDEX], needUpdate[CONTENT_BUNDLE_INDEX], true, newValue);
       }
     }
     if (propertyName.endsWith("dc:description")) { //Special case for text content but store in jcr:content/jcr:data
@@ -97,9 +97,9 @@ public class ContentUpdateActivityListener extends Listener<Node, String> {
         return;
       }
       if (StringUtils.isEmpty(newValue)) {
-        Utils.postActivity(currentNode, "SocialIntegration.messages.emptySummary", true, true, "");
+        Utils.publishActivity(currentNode, "SocialIntegration.messages.emptySummary", true, true, "");
       }else {
-        Utils.postActivity(currentNode, "SocialIntegration.messages.editSummary", true, true, newValue);
+        Utils.publishActivity(currentNode, "SocialIntegration.messages.editSummary", true, true, newValue);
       }
     }
   }
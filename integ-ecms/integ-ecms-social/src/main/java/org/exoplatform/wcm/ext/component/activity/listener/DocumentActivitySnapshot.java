@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.wcm.ext.component.activity.listener;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+import org.exoplatform.commons.utils.ActivityTypeUtils;
+import org.exoplatform.services.cms.jcrext.activity.ActivityCommonService;
+import org.exoplatform.services.jcr.core.ManageableRepository;
+import org.exoplatform.services.wcm.core.NodetypeConstant;
+import org.exoplatform.services.wcm.utils.WCMCoreUtils;
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
+import org.exoplatform.social.core.identity.model.Identity;
+
+/**
+ * The properties of a document read when one of its activity events is raised, so that the activity can be written
+ * later, without the node and its session.
+ */
+final class DocumentActivitySnapshot {
+
+  final String              repository;
+
+  final String              workspace;
+
+  final String              path;
+
+  final String              uuid;
+
+  final String              activityType;
+
+  final String              activityMsgBundleKey;
+
+  final boolean             needUpdate;
+
+  final boolean             isSystemComment;
+
+  final String              systemComment;
+
+  /** The user the activity is posted by */
+  final String              ownerId;
+
+  final String              spaceName;
+
+  final String              title;
+
+  /** The activity of the document when the event was raised, or null */
+  final String              activityId;
+
+  /** The comment gathering the changes of the current edition of the document, or null */
+  final String              commentId;
+
+  final boolean             editing;
+
+  final Map<String, String> templateParams;
+
+  /** The parameters of the document activity which follow the document, null for the file activities */
+  final Map<String, String> mainParams;
+
+  DocumentActivitySnapshot(Node node, String activityType, String activityMsgBundleKey, boolean needUpdate,
+                           boolean isSystemComment, String systemComment, boolean withMainParams) throws Exception {
+    this.repository = ((ManageableRepository) node.getSession().getRepository()).getConfiguration().getName();
+    this.workspace = node.getSession().getWorkspace().getName();
+    this.path = node.getPath();
+    this.uuid = node.isNodeType(NodetypeConstant.MIX_REFERENCEABLE) ? node.getUUID() : null;
+    this.activityType = activityType;
+    this.activityMsgBundleKey = activityMsgBundleKey;
+    this.needUpdate = needUpdate;
+    this.isSystemComment = isSystemComment;
+    this.systemComment = systemComment;
+    this.ownerId = Utils.getActivityOwnerId(node);
+    this.spaceName = Utils.getSpaceName(node);
+    this.title = node.hasProperty(NodetypeConstant.EXO_TITLE) ? node.getProperty(NodetypeConstant.EXO_TITLE).getString()
+                                                              : org.exoplatform.ecm.webui.utils.Utils.getTitle(node);
+    this.activityId = getActivityId(node);
+    ActivityCommonService activityCommonService = WCMCoreUtils.getService(ActivityCommonService.class);
+    this.editing = activityCommonService.isEditing(node);
+    this.commentId = editing && node.isNodeType(Utils.MIX_COMMENT) && node.hasProperty(Utils.MIX_COMMENT_ID)
+                     ? node.getProperty(Utils.MIX_COMMENT_ID).getString() : null;
+    this.templateParams = Collections.unmodifiableMap(Utils.populateActivityData(node, ownerId, activityMsgBundleKey,
+                                                                                 isSystemComment, systemComment));
+    this.mainParams = withMainParams ? Collections.unmodifiableMap(Utils.getMainActivityParams(node)) : null;
+  }
+
+  /**
+   * Creates the snapshot of an event known by its document and ids only.
+   */
+  DocumentActivitySnapshot(String workspace, String path, String uuid, String activityId, String commentId) {
+    this.repository = null;
+    this.workspace = workspace;
+    this.path = path;
+    this.uuid = uuid;
+    this.activityType = null;
+    this.activityMsgBundleKey = null;
+    this.needUpdate = false;
+    this.isSystemComment = false;
+    this.systemComment = null;
+    this.ownerId = null;
+    this.spaceName = null;
+    this.title = null;
+    this.activityId = activityId;
+    this.commentId = commentId;
+    this.editing = null != commentId;
+    this.templateParams = Collections.emptyMap();
+    this.mainParams = null;
+  }
+
+  /**
+   * @return the key of the document, which the activities of the same document share
+   */
+  String getKey() {
+    return getKey(workspace, uuid, path);
+  }
+
+  static String getKey(Node node) throws RepositoryException {
+    return getKey(node.getSession().getWorkspace().getName(),
+                  node.isNodeType(NodetypeConstant.MIX_REFERENCEABLE) ? node.getUUID() : null,
+                  node.getPath());
+  }
+
+  private static String getKey(String workspace, String uuid, String path) {
+    return workspace + ":" + (null != uuid ? uuid : path);
+  }
+
+  /**
+   * Creates the activity of the event, posted by the given identity.
+   */
+  ExoSocialActivity newActivity(Identity identity) {
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setUserId(identity.getId());
+    activity.setType(activityType);
+    activity.setUrl(path);
+    activity.setTitle(title);
+    activity.setTemplateParams(new HashMap<String, String>(templateParams));
+    return activity;
+  }
+
+  private static String getActivityId(Node node) {
+    try {
+      if (node.isNodeType(ActivityTypeUtils.EXO_ACTIVITY_INFO)) {
+        return node.getProperty(ActivityTypeUtils.EXO_ACTIVITY_ID).getString();
+      }
+    } catch (Exception e) {
+      // the activity is looked for when it is written
+    }
+    return null;
+  }
+}
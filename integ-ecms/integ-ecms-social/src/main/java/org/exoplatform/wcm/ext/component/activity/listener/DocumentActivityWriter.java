@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.wcm.ext.component.activity.listener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.exoplatform.commons.utils.ActivityTypeUtils;
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.services.jcr.RepositoryService;
+import org.exoplatform.services.jcr.ext.common.SessionProvider;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.picocontainer.Startable;
+
+/**
+ * Writes the document activities on a pool of workers instead of the thread raising the document events.
+ * <br>
+ * The events of a document are written in order, in batches: the activity of the document is read once per batch
+ * and updated once at its end. The activity and comment ids the batch creates are then written back to the document
+ * in a separate system session. When <code>async.enabled</code> is false, the activities are written by the thread
+ * raising the events.
+ */
+public class DocumentActivityWriter implements Startable {
+
+  private static final Log   LOG                 = ExoLogger.getLogger(DocumentActivityWriter.class);
+
+  public static final String ASYNC_ENABLED_PARAM = "async.enabled";
+
+  public static final String POOL_SIZE_PARAM     = "async.pool-size";
+
+  public static final String BATCH_SIZE_PARAM    = "async.batch-size";
+
+  /** Maximum time the events still queued are written for when the writer stops, in milliseconds */
+  private static final long  STOP_TIMEOUT        = 30000;
+
+  /** Maximum time a synchronous write of a document waits for its queued events, in milliseconds */
+  private static final long  AWAIT_TIMEOUT       = 10000;
+
+  /** Number of times the ids are written back to a document modified concurrently */
+  private static final int   WRITE_BACK_ATTEMPTS = 3;
+
+  private final boolean      async;
+
+  private final int          poolSize;
+
+  private final int          batchSize;
+
+  private final Map<String, Lane> lanes          = new HashMap<String, Lane>();
+
+  private volatile ExecutorService executor;
+
+  public DocumentActivityWriter(InitParams params) {
+    this(Boolean.parseBoolean(getParam(params, ASYNC_ENABLED_PARAM, "false")),
+         Integer.parseInt(getParam(params, POOL_SIZE_PARAM, "2")),
+         Integer.parseInt(getParam(params, BATCH_SIZE_PARAM, "50")));
+  }
+
+  DocumentActivityWriter(boolean async, int poolSize, int batchSize) {
+    this.async = async;
+    this.poolSize = Math.max(1, poolSize);
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  @Override
+  public void start() {
+    if (!async) return;
+    executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "document-activity-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  @Override
+  public void stop() {
+    ExecutorService current = executor;
+    if (null == current) return;
+    current.shutdown();
+    try {
+      if (!current.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        LOG.warn(getPendingCount() + " document activities were not written before the shutdown");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return true if the activities are written by the workers
+   */
+  public boolean isAsync() {
+    ExecutorService current = executor;
+    return null != current && !current.isShutdown();
+  }
+
+  /**
+   * @return the number of document events not written yet
+   */
+  public int getPendingCount() {
+    synchronized (lanes) {
+      int count = 0;
+      for (Lane lane : lanes.values()) {
+        count += lane.snapshots.size();
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Queues the activity of a document event after the events of the same document queued before.
+   */
+  void submit(DocumentActivitySnapshot snapshot) {
+    String key = snapshot.getKey();
+    synchronized (lanes) {
+      Lane lane = lanes.get(key);
+      if (null != lane) {
+        lane.snapshots.add(snapshot);
+        return;
+      }
+      lane = new Lane(key);
+      lane.snapshots.add(snapshot);
+      lanes.put(key, lane);
+      try {
+        executor.execute(lane);
+      } catch (RejectedExecutionException e) {
+        lanes.remove(key);
+        LOG.warn("Document activity writer stopped, the activity of " + snapshot.path + " is not written");
+      }
+    }
+  }
+
+  /**
+   * Waits until the queued events of a document are written, so that a synchronous write of its activity
+   * finds the ids they created.
+   * @param key the key of the document
+   */
+  void await(String key) {
+    long deadline = System.currentTimeMillis() + AWAIT_TIMEOUT;
+    synchronized (lanes) {
+      while (lanes.containsKey(key)) {
+        long left = deadline - System.currentTimeMillis();
+        if (left <= 0) {
+          LOG.warn("Timeout while waiting for the queued activities of " + key);
+          return;
+        }
+        try {
+          lanes.wait(left);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes a batch of events of a document in the container they were raised in, then writes the new ids back
+   * to the document.
+   * @param container the container the events were raised in, or null
+   * @param key the key of the document
+   * @param batch the events, in the order they were raised
+   * @param update the ids of the document known by the previous batches
+   */
+  void writeBatch(ExoContainer container, String key, List<DocumentActivitySnapshot> batch, NodeUpdate update) {
+    if (null == container) container = PortalContainer.getInstance();
+    ExoContainer previousContainer = ExoContainerContext.getCurrentContainerIfPresent();
+    ExoContainerContext.setCurrentContainer(container);
+    RequestLifeCycle.begin(container);
+    try {
+      try {
+        Utils.writeActivities(batch, update);
+      } catch (Exception e) {
+        LOG.error("Can not write the " + batch.size() + " activities of " + key, e);
+      }
+      // the ids created before a failure are written back too, or with the next batch if the document is busy
+      if (update.isChanged()) {
+        try {
+          writeBack(container, batch.get(batch.size() - 1), update);
+        } catch (Exception e) {
+          LOG.warn("Can not write the activity ids back to " + key + ": " + e.getMessage());
+        }
+      }
+    } finally {
+      RequestLifeCycle.end();
+      ExoContainerContext.setCurrentContainer(previousContainer);
+    }
+  }
+
+  private static void writeBack(ExoContainer container, DocumentActivitySnapshot snapshot, NodeUpdate update) throws Exception {
+    RepositoryService repositoryService = (RepositoryService) container.getComponentInstanceOfType(RepositoryService.class);
+    SessionProvider sessionProvider = SessionProvider.createSystemProvider();
+    try {
+      writeBack(sessionProvider.getSession(snapshot.workspace, repositoryService.getRepository(snapshot.repository)),
+                snapshot, update);
+    } finally {
+      sessionProvider.close();
+    }
+  }
+
+  /**
+   * Writes the new ids to the document, the session is refreshed and the write retried when the document
+   * was saved concurrently.
+   */
+  static void writeBack(Session session, DocumentActivitySnapshot snapshot, NodeUpdate update) throws Exception {
+    for (int attempt = 1;; attempt++) {
+      Node node;
+      try {
+        node = null != snapshot.uuid ? session.getNodeByUUID(snapshot.uuid) : (Node) session.getItem(snapshot.path);
+      } catch (RepositoryException e) {
+        LOG.debug("Document " + snapshot.path + " removed, its activity ids are not written back");
+        update.applied();
+        return;
+      }
+      try {
+        update.apply(node);
+        session.save();
+        update.applied();
+        return;
+      } catch (InvalidItemStateException e) {
+        session.refresh(false);
+        if (attempt >= WRITE_BACK_ATTEMPTS) throw e;
+      }
+    }
+  }
+
+  private static String getParam(InitParams params, String name, String defaultValue) {
+    ValueParam param = null != params ? params.getValueParam(name) : null;
+    if (null == param || null == param.getValue() || param.getValue().trim().length() == 0) return defaultValue;
+    return param.getValue().trim();
+  }
+
+  /**
+   * The activity and comment ids of a document known while its events are written, and the ones to write back to it.
+   */
+  static class NodeUpdate {
+    private String  activityId;
+
+    private String  commentId;
+
+    private String  attachedActivityId;
+
+    private boolean commentChanged;
+
+    /** Whether the comment id was written by the writer, and is newer than the ones of the queued events */
+    private boolean commentKnown;
+
+    NodeUpdate(DocumentActivitySnapshot snapshot) {
+      this.activityId = snapshot.activityId;
+      this.commentId = snapshot.commentId;
+    }
+
+    /**
+     * Takes the ids read with a later event of the document, unless the ids written before are known.
+     */
+    void merge(DocumentActivitySnapshot snapshot) {
+      if (null == activityId) activityId = snapshot.activityId;
+      if (!commentKnown) commentId = snapshot.commentId;
+    }
+
+    String getActivityId() {
+      return activityId;
+    }
+
+    String getCommentId() {
+      return commentId;
+    }
+
+    void attachActivity(String activityId) {
+      this.activityId = activityId;
+      this.attachedActivityId = activityId;
+    }
+
+    void setCommentId(String commentId) {
+      this.commentId = commentId;
+      this.commentChanged = true;
+      this.commentKnown = true;
+    }
+
+    boolean isChanged() {
+      return null != attachedActivityId || commentChanged;
+    }
+
+    /**
+     * Writes the new ids to the document, the caller saves it.
+     */
+    void apply(Node node) throws Exception {
+      if (null != attachedActivityId) {
+        ActivityTypeUtils.attachActivityId(node, attachedActivityId);
+      }
+      if (commentChanged) {
+        if (node.canAddMixin(Utils.MIX_COMMENT)) node.addMixin(Utils.MIX_COMMENT);
+        if (node.isNodeType(Utils.MIX_COMMENT)) node.setProperty(Utils.MIX_COMMENT_ID, commentId);
+      }
+    }
+
+    private void applied() {
+      attachedActivityId = null;
+      commentChanged = false;
+    }
+  }
+
+  /**
+   * The queued events of a document. A lane is run by a worker as long as it holds events, a batch at a time.
+   */
+  private class Lane implements Runnable {
+    private final String                               key;
+
+    private final LinkedList<DocumentActivitySnapshot> snapshots = new LinkedList<DocumentActivitySnapshot>();
+
+    private final ExoContainer                         container;
+
+    private NodeUpdate                                 update;
+
+    private Lane(String key) {
+      this.key = key;
+      this.container = ExoContainerContext.getCurrentContainerIfPresent();
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        List<DocumentActivitySnapshot> batch = new ArrayList<DocumentActivitySnapshot>(batchSize);
+        synchronized (lanes) {
+          for (int i = 0; i < batchSize && !snapshots.isEmpty(); i++) {
+            batch.add(snapshots.poll());
+          }
+        }
+        if (null == update) {
+          update = new NodeUpdate(batch.get(0));
+        }
+        writeBatch(container, key, batch, update);
+        synchronized (lanes) {
+          if (snapshots.isEmpty()) {
+            lanes.remove(key);
+            lanes.notifyAll();
+            return;
+          }
+          try {
+            executor.execute(this);
+            return;
+          } catch (RejectedExecutionException e) {
+            // the writer is stopping, the remaining events are written by this worker until the stop timeout
+          }
+        }
+      }
+    }
+  }
+}
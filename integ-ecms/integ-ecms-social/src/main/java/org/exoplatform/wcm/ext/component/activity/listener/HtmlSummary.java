@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.wcm.ext.component.activity.listener;
+
+/**
+ * Extracts the first lines of text of an HTML content, as shown in the document activities.
+ * <br>
+ * The content is read once, without intermediate copies: the head, script and style elements and the comments are
+ * skipped, the other tags are dropped, block tags and new lines make line breaks, and runs of white spaces are
+ * collapsed. Lines are separated by &lt;br&gt; in the result. The reading stops as soon as the line budget or the
+ * char budget is exceeded.
+ */
+public class HtmlSummary {
+
+  private static final String   LINE_BREAK = "<br>";
+
+  private static final String   ELLIPSIS   = "...";
+
+  private static final String[] SKIPPED_ELEMENTS = { "head", "script", "style" };
+
+  private static final String[] BLOCK_ELEMENTS   = { "address", "article", "aside", "blockquote", "br", "dd", "div",
+      "dl", "dt", "footer", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "li", "ol", "p", "pre", "section",
+      "table", "td", "th", "tr", "ul" };
+
+  private HtmlSummary() {
+  }
+
+  /**
+   * @param html the HTML content
+   * @param linesCount the maximum number of lines
+   * @param charsCount the maximum number of chars
+   * @return the first lines, followed by "..." if the content is longer
+   */
+  public static String getFirstLines(String html, int linesCount, int charsCount) {
+    if (html == null) {
+      return "";
+    }
+    StringBuilder sb = new StringBuilder(Math.min(html.length(), charsCount + LINE_BREAK.length()));
+    int length = html.length();
+    int lines = 1;
+    boolean pendingBreak = false;
+    boolean pendingSpace = false;
+    int i = 0;
+    while (i < length) {
+      char c = html.charAt(i);
+      if (c == '<' && i + 1 < length && isTagStart(html.charAt(i + 1))) {
+        if (html.startsWith("!--", i + 1)) {
+          int commentEnd = html.indexOf("-->", i + 4);
+          i = commentEnd < 0 ? length : commentEnd + 3;
+          continue;
+        }
+        int end = getTagEnd(html, i + 1);
+        boolean closing = html.charAt(i + 1) == '/';
+        int nameStart = closing ? i + 2 : i + 1;
+        if (!closing && matches(html, nameStart, end, SKIPPED_ELEMENTS)) {
+          i = skipElement(html, end, html.substring(nameStart, getNameEnd(html, nameStart, end)));
+          pendingSpace = true;
+          continue;
+        }
+        if (matches(html, nameStart, end, BLOCK_ELEMENTS)) {
+          pendingBreak = true;
+        }
+        i = end + 1;
+        continue;
+      }
+      i++;
+      if (c == '\n') {
+        pendingBreak = true;
+        continue;
+      }
+      if (Character.isWhitespace(c)) {
+        pendingSpace = true;
+        continue;
+      }
+      if (pendingBreak && sb.length() > 0) {
+        if (++lines > linesCount) {
+          return end(sb, charsCount, LINE_BREAK + ELLIPSIS);
+        }
+        sb.append(LINE_BREAK);
+      } else if (pendingSpace && sb.length() > 0) {
+        sb.append(' ');
+      }
+      pendingBreak = false;
+      pendingSpace = false;
+      if (c == '<') {
+        sb.append("&lt;");
+      } else {
+        sb.append(c);
+      }
+      if (sb.length() > charsCount) {
+        return end(sb, charsCount, ELLIPSIS);
+      }
+    }
+    return end(sb, charsCount, "");
+  }
+
+  private static String end(StringBuilder sb, int charsCount, String tail) {
+    if (sb.length() > charsCount) {
+      int cut = charsCount - 1;
+      // do not cut a line break or an entity
+      int tagStart = sb.lastIndexOf("<", cut);
+      if (tagStart >= 0 && tagStart + LINE_BREAK.length() > cut) {
+        cut = tagStart;
+      }
+      int entityStart = sb.lastIndexOf("&", cut);
+      if (entityStart >= 0 && cut - entityStart < 10) {
+        int entityEnd = sb.indexOf(";", entityStart);
+        if (entityEnd < 0 || entityEnd >= cut) {
+          cut = entityStart;
+        }
+      }
+      sb.setLength(cut);
+    }
+    return sb.append(tail).toString();
+  }
+
+  private static boolean isTagStart(char c) {
+    return Character.isLetter(c) || c == '/' || c == '!';
+  }
+
+  /**
+   * @return the index of the '>' ending the tag starting at the given index, quoted attribute values being skipped
+   */
+  private static int getTagEnd(String html, int from) {
+    char quote = 0;
+    for (int i = from, length = html.length(); i < length; i++) {
+      char c = html.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '>') {
+        return i;
+      }
+    }
+    return html.length() - 1;
+  }
+
+  private static int getNameEnd(String html, int from, int end) {
+    int i = from;
+    while (i < end && Character.isLetterOrDigit(html.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean matches(String html, int from, int end, String[] names) {
+    int nameLength = getNameEnd(html, from, end) - from;
+    for (String name : names) {
+      if (name.length() == nameLength && html.regionMatches(true, from, name, 0, nameLength)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the index following the end tag of the element whose start tag ends at the given index
+   */
+  private static int skipElement(String html, int startTagEnd, String name) {
+    String endTag = "</" + name;
+    for (int i = startTagEnd + 1, last = html.length() - endTag.length(); i <= last; i++) {
+      if (html.charAt(i) == '<' && html.regionMatches(true, i, endTag, 0, endTag.length())) {
+        return getTagEnd(html, i + 2) + 1;
+      }
+    }
+    return html.length();
+  }
+}
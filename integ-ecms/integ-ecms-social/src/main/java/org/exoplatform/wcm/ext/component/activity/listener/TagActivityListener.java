@@ -44,6 +44,6 @@ public class TagActivityListener extends Listener<Node, String>{
     }else {
       bundleMessage = ActivityCommonService.TAG_ADDED_ACTIVITY.equals(eventName)?TAG_ADDED_BUNDLE:TAG_REMOVED_BUNDLE;
     }
-    Utils.postActivity(currentNode, bundleMessage, false, true, tagValue);
+    Utils.publishActivity(currentNode, bundleMessage, false, true, tagValue);
   }
 }
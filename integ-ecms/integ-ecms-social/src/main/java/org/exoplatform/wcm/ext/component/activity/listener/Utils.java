@@ -20,7 +20,9 @@ import java.io.InputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.jcr.Node;
@@ -53,11 +55,12 @@ import org.exoplatform.services.wcm.webcontent.WebContentSchemaHandler;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.identity.model.Identity;
-import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.manager.ActivityManager;
 import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.space.spi.SpaceService;
+import org.exoplatform.social.integration.SearchContentNotifier;
+import org.exoplatform.social.integration.UserIdentityCache;
 import org.exoplatform.wcm.ext.component.activity.ContentUIActivity;
 
 
@@ -76,11 +79,14 @@ public class Utils {
   /** the publication:currentState property name */
   private static final String CURRENT_STATE_PROP  = "publication:currentState";
   
-  private static String MIX_COMMENT                = "exo:activityComment";
-  private static String MIX_COMMENT_ID             = "exo:activityCommentID";
+  static final String MIX_COMMENT                  = "exo:activityComment";
+  static final String MIX_COMMENT_ID               = "exo:activityCommentID";
   private static int    MAX_SUMMARY_LINES_COUNT    = 4;
   private static int    MAX_SUMMARY_CHAR_COUNT     = 430;
 
+  private static final String DOCUMENT_SEARCH_TYPE = "document";
+  private static final String FILE_SEARCH_TYPE     = "file";
+
   /**
    * Populate activity data with the data from Node
    * 
@@ -173,129 +179,7 @@ public class Utils {
    */
   public static ExoSocialActivity postActivity(Node node, String activityMsgBundleKey, boolean needUpdate, 
                                   boolean isSystemComment, String systemComment) throws Exception {
-    Object isSkipRaiseAct = DocumentContext.getCurrent()
-                                           .getAttributes()
-                                           .get(DocumentContext.IS_SKIP_RAISE_ACT);
-    if (isSkipRaiseAct != null && Boolean.valueOf(isSkipRaiseAct.toString())) {
-      return null;
-    }
-    if (!isSupportedContent(node)) {
-      return null;
-    }
-
-    // get services
-    ExoContainer container = ExoContainerContext.getCurrentContainer();
-    ActivityManager activityManager = (ActivityManager) container.getComponentInstanceOfType(ActivityManager.class);
-    IdentityManager identityManager = (IdentityManager) container.getComponentInstanceOfType(IdentityManager.class);
-    ActivityCommonService activityCommonService =
-            (ActivityCommonService)container.getComponentInstanceOfType(ActivityCommonService.class);
-
-    SpaceService spaceService = WCMCoreUtils.getService(SpaceService.class);
-
-    // refine to get the valid node
-    refineNode(node);
-
-    // get owner
-    String activityOwnerId = getActivityOwnerId(node);
-    String nodeActivityID = StringUtils.EMPTY;
-    ExoSocialActivity exa =null;
-    if (node.isNodeType(ActivityTypeUtils.EXO_ACTIVITY_INFO)) {
-      try {
-        nodeActivityID = node.getProperty(ActivityTypeUtils.EXO_ACTIVITY_ID).getString();
-        exa =  activityManager.getActivity(nodeActivityID);
-      }catch (Exception e){
-          LOG.info("No activity is deleted, return no related activity");
-      }
-    }
-    ExoSocialActivity activity = null ;
-    String commentID;
-    boolean commentFlag = false;
-    if (node.isNodeType(MIX_COMMENT) && node.hasProperty(MIX_COMMENT_ID) && activityCommonService.isEditing(node))
-    {
-      commentID = node.getProperty(MIX_COMMENT_ID).getString();
-      if (StringUtils.isNotBlank(commentID)) activity = activityManager.getActivity(commentID);
-      commentFlag = (activity != null);
-    }
-    if (activity==null) {
-      activity = createActivity(identityManager, activityOwnerId,
-                                node, activityMsgBundleKey, CONTENT_SPACES, isSystemComment, systemComment);
-    }
-    
-    if (exa!=null) {
-      if (commentFlag) {
-        Map<String, String> paramsMap = activity.getTemplateParams();
-        String paramMessage = paramsMap.get(ContentUIActivity.MESSAGE);
-        String paramContent = paramsMap.get(ContentUIActivity.SYSTEM_COMMENT);
-        if (!StringUtils.isEmpty(paramMessage)) {
-          paramMessage += ActivityCommonService.VALUE_SEPERATOR + activityMsgBundleKey;
-          if (StringUtils.isEmpty(systemComment)) {
-            paramContent += ActivityCommonService.VALUE_SEPERATOR + " ";
-          }else {
-            paramContent += ActivityCommonService.VALUE_SEPERATOR + systemComment;
-          }
-        } else {
-          paramMessage = activityMsgBundleKey;
-          paramContent = systemComment;
-        }
-        paramsMap.put(ContentUIActivity.MESSAGE, paramMessage);
-        paramsMap.put(ContentUIActivity.SYSTEM_COMMENT, paramContent);
-        activity.setTemplateParams(paramsMap);
-        activityManager.updateActivity(activity);
-      } else {
-        activityManager.saveComment(exa, activity);
-        if (activityCommonService.isEditing(node)) {
-          commentID = activity.getId();
-          if (node.canAddMixin(MIX_COMMENT)) node.addMixin(MIX_COMMENT);
-          if (node.isNodeType(MIX_COMMENT)) node.setProperty(MIX_COMMENT_ID, commentID);
-        }
-      }
-      if (needUpdate) {
-        updateMainActivity(activityManager, node, exa);
-      }
-      return activity;
-    }else {
-      String spaceName = getSpaceName(node);
-      if (spaceName != null && spaceName.length() > 0
-          && spaceService.getSpaceByPrettyName(spaceName) != null) {
-        // post activity to space stream
-        Identity spaceIdentity = identityManager.getOrCreateIdentity(SpaceIdentityProvider.NAME,
-            spaceName,
-            true);
-        activityManager.saveActivityNoReturn(spaceIdentity, activity);
-      } else if (activityOwnerId != null && activityOwnerId.length() > 0) {
-        // post activity to user status stream
-        Identity ownerIdentity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME,
-            activityOwnerId,
-            true);
-        activityManager.saveActivityNoReturn(ownerIdentity, activity);
-      } else {
-        return null;
-      }
-      String activityId = activity.getId();
-      if (!StringUtils.isEmpty(activityId)) {
-        ActivityTypeUtils.attachActivityId(node, activityId);
-      }
-      updateMainActivity(activityManager, node, activity);
-
-      if (node.isNodeType(ActivityTypeUtils.EXO_ACTIVITY_INFO)) {
-        try {
-          nodeActivityID = node.getProperty(ActivityTypeUtils.EXO_ACTIVITY_ID).getString();
-          exa = activityManager.getActivity(nodeActivityID);
-        } catch (Exception e) {
-          LOG.info("No activity is deleted, return no related activity");
-        }
-        if (exa != null && !commentFlag && isSystemComment) {
-          activityManager.saveComment(exa, activity);
-          if (activityCommonService.isEditing(node)) {
-            commentID = activity.getId();
-            if (node.canAddMixin(MIX_COMMENT)) node.addMixin(MIX_COMMENT);
-            if (node.isNodeType(MIX_COMMENT)) node.setProperty(MIX_COMMENT_ID, commentID);
-          }
-        }
-      }
-
-      return activity;
-    }
+    return writeActivity(node, CONTENT_SPACES, activityMsgBundleKey, needUpdate, isSystemComment, systemComment);
   }
   
   /**
@@ -309,6 +193,75 @@ public class Utils {
    */
   public static ExoSocialActivity postFileActivity(Node node, String activityMsgBundleKey, boolean needUpdate, 
                                   boolean isSystemComment, String systemComment) throws Exception {
+    return writeActivity(node, FILE_SPACES, activityMsgBundleKey, needUpdate, isSystemComment, systemComment);
+  }
+
+  /**
+   * Same as {@link #postActivity(Node, String, boolean, boolean, String)}, but the activity is written by the
+   * {@link DocumentActivityWriter} workers when they are enabled; the properties it needs are read from the node now.
+   */
+  public static void publishActivity(Node node, String activityMsgBundleKey, boolean needUpdate,
+                                     boolean isSystemComment, String systemComment) throws Exception {
+    queueActivity(node, CONTENT_SPACES, activityMsgBundleKey, needUpdate, isSystemComment, systemComment);
+  }
+
+  /**
+   * Same as {@link #postFileActivity(Node, String, boolean, boolean, String)}, but the activity is written by the
+   * {@link DocumentActivityWriter} workers when they are enabled; the properties it needs are read from the node now.
+   */
+  public static void publishFileActivity(Node node, String activityMsgBundleKey, boolean needUpdate,
+                                         boolean isSystemComment, String systemComment) throws Exception {
+    queueActivity(node, FILE_SPACES, activityMsgBundleKey, needUpdate, isSystemComment, systemComment);
+  }
+
+  /**
+   * Waits until the activities of the node queued in the {@link DocumentActivityWriter} are written, so that
+   * the activity id of the node can be read.
+   */
+  static void awaitQueuedActivities(Node node) throws RepositoryException {
+    DocumentActivityWriter activityWriter = WCMCoreUtils.getService(DocumentActivityWriter.class);
+    if (activityWriter != null && activityWriter.isAsync()) {
+      activityWriter.await(DocumentActivitySnapshot.getKey(node));
+    }
+  }
+
+  private static void queueActivity(Node node, String activityType, String activityMsgBundleKey, boolean needUpdate,
+                                    boolean isSystemComment, String systemComment) throws Exception {
+    DocumentActivityWriter activityWriter = WCMCoreUtils.getService(DocumentActivityWriter.class);
+    if (activityWriter == null || !activityWriter.isAsync()) {
+      writeActivity(node, activityType, activityMsgBundleKey, needUpdate, isSystemComment, systemComment);
+      return;
+    }
+    DocumentActivitySnapshot snapshot = snapshot(node, activityType, activityMsgBundleKey, needUpdate,
+                                                 isSystemComment, systemComment);
+    if (snapshot != null) {
+      activityWriter.submit(snapshot);
+    }
+  }
+
+  private static ExoSocialActivity writeActivity(Node node, String activityType, String activityMsgBundleKey,
+                                                 boolean needUpdate, boolean isSystemComment,
+                                                 String systemComment) throws Exception {
+    awaitQueuedActivities(node);
+    DocumentActivitySnapshot snapshot = snapshot(node, activityType, activityMsgBundleKey, needUpdate,
+                                                 isSystemComment, systemComment);
+    if (snapshot == null) {
+      return null;
+    }
+    DocumentActivityWriter.NodeUpdate update = new DocumentActivityWriter.NodeUpdate(snapshot);
+    ExoSocialActivity activity = writeActivities(Collections.singletonList(snapshot), update);
+    update.apply(node);
+    return activity;
+  }
+
+  /**
+   * Reads the properties of the node the activity of an event needs.
+   * 
+   * @return the snapshot, or null if no activity is raised for this event
+   */
+  private static DocumentActivitySnapshot snapshot(Node node, String activityType, String activityMsgBundleKey,
+                                                   boolean needUpdate, boolean isSystemComment,
+                                                   String systemComment) throws Exception {
     Object isSkipRaiseAct = DocumentContext.getCurrent()
                                            .getAttributes()
                                            .get(DocumentContext.IS_SKIP_RAISE_ACT);
@@ -319,76 +272,67 @@ public class Utils {
       return null;
     }
 
+    // refine to get the valid node
+    refineNode(node);
+    boolean isFile = FILE_SPACES.equals(activityType);
+    SearchContentNotifier.contentChanged(isFile ? FILE_SEARCH_TYPE : DOCUMENT_SEARCH_TYPE);
+    return new DocumentActivitySnapshot(node, activityType, activityMsgBundleKey, needUpdate,
+                                        isSystemComment, systemComment, !isFile);
+  }
+
+  /**
+   * Writes the activities of events of the same document, in order. The activity of the document is read once
+   * and updated once at the end, the ids to write back to the document are recorded in the given update.
+   * 
+   * @return the activity or comment written for the last event, or null if it was not written
+   */
+  static ExoSocialActivity writeActivities(List<DocumentActivitySnapshot> snapshots,
+                                           DocumentActivityWriter.NodeUpdate update) throws Exception {
     // get services
     ExoContainer container = ExoContainerContext.getCurrentContainer();
     ActivityManager activityManager = (ActivityManager) container.getComponentInstanceOfType(ActivityManager.class);
     IdentityManager identityManager = (IdentityManager) container.getComponentInstanceOfType(IdentityManager.class);
-    ActivityCommonService activityCommonService =
-            (ActivityCommonService)container.getComponentInstanceOfType(ActivityCommonService.class);
-
     SpaceService spaceService = WCMCoreUtils.getService(SpaceService.class);
 
-    // refine to get the valid node
-    refineNode(node);
-
-    // get owner
-    String activityOwnerId = getActivityOwnerId(node);
-    String nodeActivityID = StringUtils.EMPTY;
-    ExoSocialActivity exa =null;    
-    if (node.isNodeType(ActivityTypeUtils.EXO_ACTIVITY_INFO)) {
-      try {
-        nodeActivityID = node.getProperty(ActivityTypeUtils.EXO_ACTIVITY_ID).getString();
-        exa =  activityManager.getActivity(nodeActivityID);
-      }catch (Exception e){
-          LOG.info("No activity is deleted, return no related activity");
+    String exaId = null;
+    ExoSocialActivity exa = null;
+    ExoSocialActivity mainActivity = null;
+    Map<String, String> mainParams = null;
+    ExoSocialActivity activity = null;
+    for (DocumentActivitySnapshot snapshot : snapshots) {
+      update.merge(snapshot);
+      if (update.getActivityId() != null && !update.getActivityId().equals(exaId)) {
+        exaId = update.getActivityId();
+        exa = getActivity(activityManager, exaId);
       }
-    }
-    ExoSocialActivity activity = null ;
-    String commentID;
-    boolean commentFlag = false;
-    if (node.isNodeType(MIX_COMMENT) && activityCommonService.isEditing(node)) {
-      if (node.hasProperty(MIX_COMMENT_ID)) {
-        commentID = node.getProperty(MIX_COMMENT_ID).getString();
-        if (StringUtils.isNotBlank(commentID)) activity = activityManager.getActivity(commentID);
+      activity = null;
+      boolean commentFlag = false;
+      if (snapshot.editing && StringUtils.isNotBlank(update.getCommentId())) {
+        activity = activityManager.getActivity(update.getCommentId());
         commentFlag = (activity != null);
       }
-    }
-    if (activity==null) {
-      activity = createActivity(identityManager, activityOwnerId,
-                                node, activityMsgBundleKey, FILE_SPACES, isSystemComment, systemComment);
-    }
-    
-    if (exa!=null) {
-      if (commentFlag) {
-        Map<String, String> paramsMap = activity.getTemplateParams();
-        String paramMessage = paramsMap.get(ContentUIActivity.MESSAGE);
-        String paramContent = paramsMap.get(ContentUIActivity.SYSTEM_COMMENT);
-        if (!StringUtils.isEmpty(paramMessage)) {
-          paramMessage += ActivityCommonService.VALUE_SEPERATOR + activityMsgBundleKey;
-          if (StringUtils.isEmpty(systemComment)) {
-            paramContent += ActivityCommonService.VALUE_SEPERATOR + " ";
-          }else {
-            paramContent += ActivityCommonService.VALUE_SEPERATOR + systemComment;
-          }
+      if (activity == null) {
+        activity = snapshot.newActivity(UserIdentityCache.getUserIdentity(identityManager, snapshot.ownerId));
+      }
+
+      if (exa != null) {
+        if (commentFlag) {
+          appendSystemComment(activity, snapshot.activityMsgBundleKey, snapshot.systemComment);
+          activityManager.updateActivity(activity);
         } else {
-          paramMessage = activityMsgBundleKey;
-          paramContent = systemComment;
+          activityManager.saveComment(exa, activity);
+          if (snapshot.editing) {
+            update.setCommentId(activity.getId());
+          }
         }
-        paramsMap.put(ContentUIActivity.MESSAGE, paramMessage);
-        paramsMap.put(ContentUIActivity.SYSTEM_COMMENT, paramContent);
-        activity.setTemplateParams(paramsMap);
-        activityManager.updateActivity(activity);
-      } else {
-        activityManager.saveComment(exa, activity);
-        if (activityCommonService.isEditing(node)) {
-          commentID = activity.getId();
-          if (node.canAddMixin(MIX_COMMENT)) node.addMixin(MIX_COMMENT);
-          if (node.isNodeType(MIX_COMMENT)) node.setProperty(MIX_COMMENT_ID, commentID);
+        if (snapshot.needUpdate && snapshot.mainParams != null) {
+          mainActivity = exa;
+          mainParams = snapshot.mainParams;
         }
-      }      
-      return activity;
-    }else {
-      String spaceName = getSpaceName(node);
+        continue;
+      }
+
+      String spaceName = snapshot.spaceName;
       if (spaceName != null && spaceName.length() > 0
           && spaceService.getSpaceByPrettyName(spaceName) != null) {
         // post activity to space stream
@@ -396,44 +340,76 @@ public class Utils {
             spaceName,
             true);
         activityManager.saveActivityNoReturn(spaceIdentity, activity);
-      } else if (activityOwnerId != null && activityOwnerId.length() > 0) {
+      } else if (snapshot.ownerId != null && snapshot.ownerId.length() > 0) {
         // post activity to user status stream
-        Identity ownerIdentity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME,
-            activityOwnerId,
-            true);
+        Identity ownerIdentity = UserIdentityCache.getUserIdentity(identityManager, snapshot.ownerId);
         activityManager.saveActivityNoReturn(ownerIdentity, activity);
       } else {
-        return null;
+        activity = null;
+        continue;
       }
       String activityId = activity.getId();
       if (!StringUtils.isEmpty(activityId)) {
-        ActivityTypeUtils.attachActivityId(node, activityId);
+        update.attachActivity(activityId);
+        exaId = activityId;
+        exa = getActivity(activityManager, activityId);
       }
-
-      if (node.isNodeType(ActivityTypeUtils.EXO_ACTIVITY_INFO)) {
-        try {
-          nodeActivityID = node.getProperty(ActivityTypeUtils.EXO_ACTIVITY_ID).getString();
-          exa = activityManager.getActivity(nodeActivityID);
-        } catch (Exception e) {
-          LOG.info("No activity is deleted, return no related activity");
-        }
-        if (exa != null && !commentFlag && isSystemComment) {
-          activityManager.saveComment(exa, activity);
-          if (activityCommonService.isEditing(node)) {
-            commentID = activity.getId();
-            if (node.canAddMixin(MIX_COMMENT)) node.addMixin(MIX_COMMENT);
-            if (node.isNodeType(MIX_COMMENT)) node.setProperty(MIX_COMMENT_ID, commentID);
-          }
+      if (snapshot.mainParams != null) {
+        mainActivity = activity;
+        mainParams = snapshot.mainParams;
+      }
+      if (exa != null && !commentFlag && snapshot.isSystemComment) {
+        activityManager.saveComment(exa, activity);
+        if (snapshot.editing) {
+          update.setCommentId(activity.getId());
         }
       }
+    }
+    if (mainParams != null) {
+      updateMainActivity(activityManager, mainActivity, mainParams);
+    }
+    return activity;
+  }
+
+  private static ExoSocialActivity getActivity(ActivityManager activityManager, String activityId) {
+    try {
+      return activityManager.getActivity(activityId);
+    } catch (Exception e) {
+      LOG.info("No activity is deleted, return no related activity");
+      return null;
+    }
+  }
 
-      return activity;
+  /**
+   * Appends the message and the value of an event to the comment gathering the changes of the current edition.
+   */
+  private static void appendSystemComment(ExoSocialActivity activity, String activityMsgBundleKey, String systemComment) {
+    Map<String, String> paramsMap = activity.getTemplateParams();
+    String paramMessage = paramsMap.get(ContentUIActivity.MESSAGE);
+    String paramContent = paramsMap.get(ContentUIActivity.SYSTEM_COMMENT);
+    if (!StringUtils.isEmpty(paramMessage)) {
+      paramMessage += ActivityCommonService.VALUE_SEPERATOR + activityMsgBundleKey;
+      if (StringUtils.isEmpty(systemComment)) {
+        paramContent += ActivityCommonService.VALUE_SEPERATOR + " ";
+      }else {
+        paramContent += ActivityCommonService.VALUE_SEPERATOR + systemComment;
+      }
+    } else {
+      paramMessage = activityMsgBundleKey;
+      paramContent = systemComment;
     }
+    paramsMap.put(ContentUIActivity.MESSAGE, paramMessage);
+    paramsMap.put(ContentUIActivity.SYSTEM_COMMENT, paramContent);
+    activity.setTemplateParams(paramsMap);
   }
   
   
-  private static void updateMainActivity(ActivityManager activityManager, Node contentNode, ExoSocialActivity activity) {
-    Map<String, String> activityParams = activity.getTemplateParams();
+  
+  /**
+   * Reads the parameters of the document activity which follow the document: its state, type, title, version and summary.
+   */
+  static Map<String, String> getMainActivityParams(Node contentNode) {
+    Map<String, String> activityParams = new HashMap<String, String>();
     String state;
     String nodeTitle;
     String nodeType = null;
@@ -474,6 +450,13 @@ public class Utils {
     String summary = getSummary(contentNode);
     summary =getFirstSummaryLines(summary, MAX_SUMMARY_LINES_COUNT);
     activityParams.put(ContentUIActivity.DOCUMENT_SUMMARY, summary);
+    return activityParams;
+  }
+
+  private static void updateMainActivity(ActivityManager activityManager, ExoSocialActivity activity,
+                                         Map<String, String> mainParams) {
+    Map<String, String> activityParams = activity.getTemplateParams();
+    activityParams.putAll(mainParams);
     activity.setTemplateParams(activityParams);
     activityManager.updateActivity(activity);
   }
@@ -526,7 +509,7 @@ public class Utils {
    * 
    * @return activity owner
    */
-  private static String getActivityOwnerId(Node node) {
+  static String getActivityOwnerId(Node node) {
     String activityOwnerId = "";
     ConversationState conversationState = ConversationState.getCurrent();
     if (conversationState != null) {
@@ -548,7 +531,7 @@ public class Utils {
    * @return
    * @throws Exception
    */
-  private static String getSpaceName(Node node) throws Exception {
+  static String getSpaceName(Node node) throws Exception {
     NodeHierarchyCreator nodeHierarchyCreator = (NodeHierarchyCreator) ExoContainerContext.getCurrentContainer()
                                                                                           .getComponentInstanceOfType(NodeHierarchyCreator.class);
     String groupPath = nodeHierarchyCreator.getJcrPath(BasePath.CMS_GROUPS_PATH);
@@ -608,8 +591,7 @@ public class Utils {
     }else{
       userId = activityOwnerId;
     }
-    Identity identity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, 
-      userId, false);
+    Identity identity = UserIdentityCache.getUserIdentity(identityManager, userId);
     activity.setUserId(identity.getId());
     activity.setType(activityType);
     activity.setUrl(node.getPath());
@@ -619,6 +601,7 @@ public class Utils {
   }
   
   public static void deleteFileActivity(Node node) throws RepositoryException {
+    awaitQueuedActivities(node);
     // get services
     ExoContainer container = ExoContainerContext.getCurrentContainer();
     ActivityManager activityManager = (ActivityManager) container.getComponentInstanceOfType(ActivityManager.class);
@@ -637,6 +620,7 @@ public class Utils {
 
       }
     }    
+    SearchContentNotifier.contentChanged(FILE_SEARCH_TYPE);
   }
 
   /**
@@ -738,32 +722,14 @@ public class Utils {
   public static String getFirstSummaryLines(String source) {
     return getFirstSummaryLines(source, MAX_SUMMARY_LINES_COUNT);
   }
-  // Silly function to convert HTML content to plain text
+  /**
+   * Converts the first lines of an HTML content to text, see {@link HtmlSummary}.
+   * 
+   * @param source the HTML content
+   * @param linesCount the maximum number of lines
+   * @return the lines, separated by &lt;br&gt;
+   */
   public static String getFirstSummaryLines(String source, int linesCount) {
-    String result =  source;
-    result = result.replaceAll("(?i)<head>.*</head>", "");
-    result = result.replaceAll("(?i)<script.*>.*</script>", "");
-    result = result.replaceAll("(?i)<style.*>.*</style>", "");
-    result = result.replaceAll("<([a-z\"]+) *[^/]*?>", "");
-    result = result.replaceAll("</([a-z]+) *[^/]*?>", "<br>");
-    result = result.replaceAll("([\n\t])+", "<br>");
-    result = result.replaceAll("(<br>[ \t\n]+<br>)", "<br>");
-    result = result.replaceAll("(<br>)+", "<br>");
-    int i = 0;
-    int index = -1;
-    while (true) {
-      index = result.indexOf("<br>", index+1);
-      if (index<0) break;
-      i++;
-      if (i>linesCount) break;
-    }
-    if (index <0) {
-      if (result.length()>MAX_SUMMARY_CHAR_COUNT)
-      return  result.substring(0, MAX_SUMMARY_CHAR_COUNT-1) + "...";
-      return result;
-    }
-    if (index>MAX_SUMMARY_CHAR_COUNT) index = MAX_SUMMARY_CHAR_COUNT-1;
-    result = result.substring(0, index) + "<br>...";
-    return result;
+    return HtmlSummary.getFirstLines(source, linesCount, MAX_SUMMARY_CHAR_COUNT);
   }  
 }
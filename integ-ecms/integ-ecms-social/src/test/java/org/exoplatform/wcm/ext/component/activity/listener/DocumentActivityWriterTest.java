@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.wcm.ext.component.activity.listener;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.Node;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.Session;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.ExoContainer;
+
+public class DocumentActivityWriterTest extends TestCase {
+
+  private DocumentActivityWriter writer;
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (null != writer) writer.stop();
+  }
+
+  public void testEventsOfDocumentAreWrittenInOrder() throws Exception {
+    final Map<String, List<String>> written = new HashMap<String, List<String>>();
+    final List<Integer> batchSizes = new ArrayList<Integer>();
+    writer = new DocumentActivityWriter(true, 4, 3) {
+      @Override
+      void writeBatch(ExoContainer container, String key, List<DocumentActivitySnapshot> batch,
+                      DocumentActivityWriter.NodeUpdate update) {
+        synchronized (written) {
+          batchSizes.add(batch.size());
+          if (!written.containsKey(key)) written.put(key, new ArrayList<String>());
+          for (DocumentActivitySnapshot snapshot : batch) {
+            written.get(key).add(snapshot.activityId);
+          }
+        }
+        Thread.yield();
+      }
+    };
+    writer.start();
+    for (int i = 0; i < 20; i++) {
+      for (String document : new String[] { "a", "b", "c" }) {
+        // the events of a document are told apart by their activity id
+        writer.submit(new DocumentActivitySnapshot("collaboration", "/" + document, document, String.valueOf(i), null));
+      }
+    }
+    for (String document : new String[] { "a", "b", "c" }) {
+      writer.await("collaboration:" + document);
+    }
+
+    assertEquals(0, writer.getPendingCount());
+    assertEquals(3, written.size());
+    for (List<String> events : written.values()) {
+      assertEquals(20, events.size());
+      for (int i = 0; i < events.size(); i++) {
+        assertEquals(String.valueOf(i), events.get(i));
+      }
+    }
+    for (int size : batchSizes) {
+      assertTrue(size <= 3);
+    }
+  }
+
+  public void testBatchesShareIdsOfDocument() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch submitted = new CountDownLatch(1);
+    final List<List<DocumentActivitySnapshot>> batches = new ArrayList<List<DocumentActivitySnapshot>>();
+    final List<DocumentActivityWriter.NodeUpdate> updates = new ArrayList<DocumentActivityWriter.NodeUpdate>();
+    final List<String> activityIds = new ArrayList<String>();
+    writer = new DocumentActivityWriter(true, 1, 2) {
+      @Override
+      void writeBatch(ExoContainer container, String key, List<DocumentActivitySnapshot> batch,
+                      DocumentActivityWriter.NodeUpdate update) {
+        started.countDown();
+        try {
+          submitted.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        for (DocumentActivitySnapshot snapshot : batch) {
+          update.merge(snapshot);
+        }
+        if (null == update.getActivityId()) update.attachActivity("activity");
+        batches.add(batch);
+        updates.add(update);
+        activityIds.add(update.getActivityId());
+      }
+    };
+    writer.start();
+    writer.submit(new DocumentActivitySnapshot("collaboration", "/doc", "uuid", null, null));
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    for (int i = 0; i < 3; i++) {
+      // the events are raised before the activity id of the first one is written back to the document
+      writer.submit(new DocumentActivitySnapshot("collaboration", "/doc", "uuid", null, null));
+    }
+    submitted.countDown();
+    writer.await("collaboration:uuid");
+
+    assertEquals(3, batches.size());
+    assertEquals(1, batches.get(0).size());
+    assertEquals(2, batches.get(1).size());
+    assertEquals(1, batches.get(2).size());
+    assertTrue(updates.get(0) == updates.get(1) && updates.get(1) == updates.get(2));
+    assertEquals("activity", activityIds.get(1));
+    assertEquals("activity", activityIds.get(2));
+  }
+
+  public void testMergeKeepsWrittenIds() throws Exception {
+    DocumentActivityWriter.NodeUpdate update =
+        new DocumentActivityWriter.NodeUpdate(new DocumentActivitySnapshot("collaboration", "/doc", null, null, null));
+    assertNull(update.getActivityId());
+    assertFalse(update.isChanged());
+
+    // the ids read with a later event are taken as long as they are not known
+    update.merge(new DocumentActivitySnapshot("collaboration", "/doc", null, "activity", "comment"));
+    assertEquals("activity", update.getActivityId());
+    assertEquals("comment", update.getCommentId());
+    assertFalse(update.isChanged());
+
+    // the ids written by the writer are newer than the ones of the queued events
+    update.setCommentId("newComment");
+    update.merge(new DocumentActivitySnapshot("collaboration", "/doc", null, "otherActivity", "comment"));
+    assertEquals("activity", update.getActivityId());
+    assertEquals("newComment", update.getCommentId());
+    assertTrue(update.isChanged());
+  }
+
+  public void testWriteBackIsRetriedOnConcurrentSave() throws Exception {
+    DocumentActivitySnapshot snapshot = new DocumentActivitySnapshot("collaboration", "/doc", null, null, null);
+    DocumentActivityWriter.NodeUpdate update = new DocumentActivityWriter.NodeUpdate(snapshot);
+    update.setCommentId("comment");
+    MockSession session = new MockSession(2);
+
+    DocumentActivityWriter.writeBack(session.proxy(), snapshot, update);
+
+    assertEquals(3, session.saves);
+    assertEquals(2, session.refreshes);
+    assertEquals("comment", session.properties.get(Utils.MIX_COMMENT_ID));
+    assertFalse(update.isChanged());
+  }
+
+  public void testWriteBackGivesUpAfterAttempts() throws Exception {
+    DocumentActivitySnapshot snapshot = new DocumentActivitySnapshot("collaboration", "/doc", null, null, null);
+    DocumentActivityWriter.NodeUpdate update = new DocumentActivityWriter.NodeUpdate(snapshot);
+    update.setCommentId("comment");
+    MockSession session = new MockSession(Integer.MAX_VALUE);
+
+    try {
+      DocumentActivityWriter.writeBack(session.proxy(), snapshot, update);
+      fail("The write back of a document always saved concurrently must fail");
+    } catch (InvalidItemStateException e) {
+      // expected
+    }
+    assertEquals(3, session.saves);
+    // the ids are written back with the next batch
+    assertTrue(update.isChanged());
+  }
+
+  public void testWriteBackSkipsRemovedDocument() throws Exception {
+    DocumentActivitySnapshot snapshot = new DocumentActivitySnapshot("collaboration", "/removed", null, null, null);
+    DocumentActivityWriter.NodeUpdate update = new DocumentActivityWriter.NodeUpdate(snapshot);
+    update.setCommentId("comment");
+    MockSession session = new MockSession(0);
+
+    DocumentActivityWriter.writeBack(session.proxy(), snapshot, update);
+
+    assertEquals(0, session.saves);
+    assertFalse(update.isChanged());
+  }
+
+  /**
+   * A session holding the document "/doc", saved concurrently a given number of times.
+   */
+  private static class MockSession {
+    private final int                 concurrentSaves;
+
+    private final Map<String, Object> properties = new HashMap<String, Object>();
+
+    private int                       saves;
+
+    private int                       refreshes;
+
+    private MockSession(int concurrentSaves) {
+      this.concurrentSaves = concurrentSaves;
+    }
+
+    private Session proxy() {
+      final Node node = (Node) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Node.class },
+                                                      new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          if ("setProperty".equals(method.getName())) {
+            properties.put((String) args[0], args[1]);
+            return null;
+          }
+          if ("isNodeType".equals(method.getName())) return true;
+          return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+        }
+      });
+      return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Session.class },
+                                              new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          String name = method.getName();
+          if ("getItem".equals(name)) {
+            if (!"/doc".equals(args[0])) throw new PathNotFoundException((String) args[0]);
+            return node;
+          }
+          if ("save".equals(name)) {
+            if (++saves <= concurrentSaves) throw new InvalidItemStateException("Saved concurrently");
+            return null;
+          }
+          if ("refresh".equals(name)) {
+            refreshes++;
+            return null;
+          }
+          throw new UnsupportedOperationException(name);
+        }
+      });
+    }
+  }
+}
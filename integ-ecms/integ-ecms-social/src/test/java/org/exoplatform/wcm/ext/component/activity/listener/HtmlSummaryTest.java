@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.wcm.ext.component.activity.listener;
+
+import junit.framework.TestCase;
+
+public class HtmlSummaryTest extends TestCase {
+
+  public void testSkippedElements() throws Exception {
+    assertEquals("Hello big world<br>Second",
+                 HtmlSummary.getFirstLines("<html><head><title>T</title>\n<style>p{}</style></head><body>"
+                     + "<p>Hello <b>big</b>   world</p><!-- c > d --><p>Second</p></body></html>", 4, 430));
+    assertEquals("a b &lt; c &amp; d",
+                 HtmlSummary.getFirstLines("a<script type=\"x\">if (a > b) {}</SCRIPT>b < c &amp; d", 4, 430));
+  }
+
+  public void testBlockBreaks() throws Exception {
+    assertEquals("1<br>2", HtmlSummary.getFirstLines("<p>1</p><p>2</p>", 4, 430));
+    assertEquals("a<br>b<br>c", HtmlSummary.getFirstLines("a<br/>b<div>c</div>", 4, 430));
+    assertEquals("", HtmlSummary.getFirstLines("<img src=\"a/b.png\"/>", 4, 430));
+  }
+
+  public void testLinesBudget() throws Exception {
+    assertEquals("1<br>2<br>3<br>4<br>...",
+                 HtmlSummary.getFirstLines("<p>1</p><p>2</p>\n\n<p>3</p><div> </div><p>4</p><p>5</p>", 4, 430));
+  }
+
+  public void testCharsBudget() throws Exception {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      content.append("word ");
+    }
+    String summary = HtmlSummary.getFirstLines(content.toString(), 4, 430);
+    assertEquals(432, summary.length());
+    assertTrue(summary.endsWith("..."));
+    assertEquals("abcd...", HtmlSummary.getFirstLines("abcdef<br/>ghi", 4, 5));
+  }
+
+  public void testBudgetNotCutInsideEntityOrBreak() throws Exception {
+    assertEquals("abc...", HtmlSummary.getFirstLines("abc&amp;defgh", 4, 6));
+    assertEquals("ab...", HtmlSummary.getFirstLines("ab<br/>cdefghi<br>x<br>y<br>z", 2, 5));
+  }
+}
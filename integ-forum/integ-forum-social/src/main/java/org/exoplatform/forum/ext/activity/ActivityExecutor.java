@@ -16,7 +16,12 @@
  */
 package org.exoplatform.forum.ext.activity;
 
+import java.util.List;
+
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.manager.ActivityManager;
+import org.exoplatform.social.integration.SearchContentNotifier;
 
 /**
  * Created by The eXo Platform SAS
@@ -36,8 +41,94 @@ public class ActivityExecutor {
     //
     task.end(ctx);
     
+    //
+    SearchContentNotifier.contentChanged(ForumActivityUtils.POST_SEARCH_TYPE);
+    
     //
     return got;
   }
+  
+  /**
+   * Executes several update tasks of the same topic with a single load and a single update of the topic activity.
+   * The comments of the tasks posted by the same user are merged into a single comment, one line per task.
+   * @param tasks the update tasks, in the order of the changes of the topic
+   * @param ctx the context of the updated topic
+   * @return the last saved comment, or the activity if no task adds a comment
+   */
+  public static ExoSocialActivity execute(List<TopicActivityTask> tasks, ForumActivityContext ctx) {
+    if (tasks.size() == 1) {
+      return execute(tasks.get(0), ctx);
+    }
+    
+    for (TopicActivityTask task : tasks) {
+      task.start(ctx);
+    }
+    
+    //
+    ExoSocialActivity got = null;
+    try {
+      ActivityManager am = ForumActivityUtils.getActivityManager();
+      ExoSocialActivity a = ForumActivityUtils.getActivityOfTopic(ctx);
+      for (TopicActivityTask task : tasks) {
+        a = task.processActivity(ctx, a);
+      }
+      am.updateActivity(a);
+      got = a;
+      
+      //
+      ExoSocialActivity comment = null;
+      String poster = null;
+      String topicTitle = null;
+      StringBuilder title = new StringBuilder();
+      for (TopicActivityTask task : tasks) {
+        if (!task.hasComment()) {
+          continue;
+        }
+        String taskPoster = task.getCommentPoster(ctx);
+        if (comment != null && (poster == null ? taskPoster != null : !poster.equals(taskPoster))) {
+          got = saveComment(am, a, comment, poster, title);
+          comment = null;
+        }
+        if (comment == null) {
+          comment = ForumActivityBuilder.createActivityComment(ctx.getTopic(), ctx);
+          topicTitle = comment.getTitle();
+          poster = taskPoster;
+          title.setLength(0);
+        }
+        
+        //the title of some comments is made from the title of the topic
+        comment.setTitle(topicTitle);
+        comment = task.processComment(ctx, comment);
+        if (title.length() > 0) {
+          title.append("\n");
+        }
+        title.append(comment.getTitle());
+      }
+      if (comment != null) {
+        got = saveComment(am, a, comment, poster, title);
+      }
+    } catch (Exception e) {
+      throw new ActivityTaskException("Can not record Comment for when update topic " + ctx.getTopic().getId(), e);
+    }
+    
+    //
+    for (TopicActivityTask task : tasks) {
+      task.end(ctx);
+    }
+    
+    //
+    SearchContentNotifier.contentChanged(ForumActivityUtils.POST_SEARCH_TYPE);
+    
+    //
+    return got;
+  }
+  
+  private static ExoSocialActivity saveComment(ActivityManager am, ExoSocialActivity activity, ExoSocialActivity comment, String poster, StringBuilder title) {
+    comment.setTitle(title.toString());
+    Identity identity = ForumActivityUtils.getIdentity(poster);
+    comment.setUserId(identity.getId());
+    am.saveComment(activity, comment);
+    return comment;
+  }
 
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.forum.ext.activity;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded map of the activity ids of forum, poll and answers owners (topics, posts, polls, questions),
+ * which saves the read of the owner node before most activity updates.
+ * <br>
+ * It is written through by the publishers when they save the activity id of an owner, and entries pointing
+ * to an activity are dropped when the activity or comment is deleted. Since another cluster node may re-bind
+ * an owner, callers which can not load the cached activity should {@link #remove(String)} the owner and read
+ * its activity id again.
+ */
+public class ActivityIdCache {
+
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  private final Map<String, String> ids;
+
+  public ActivityIdCache(final int maxSize) {
+    this.ids = new LinkedHashMap<String, String>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * @param owner the key of the owner
+   * @return the cached activity id, or null if unknown
+   */
+  public String get(String owner) {
+    synchronized (ids) {
+      return ids.get(owner);
+    }
+  }
+
+  /**
+   * @param owner the key of the owner
+   * @param activityId the activity id of the owner, an empty id is not cached
+   */
+  public void put(String owner, String activityId) {
+    if (owner == null) {
+      return;
+    }
+    synchronized (ids) {
+      if (activityId == null || activityId.length() == 0) {
+        ids.remove(owner);
+      } else {
+        ids.put(owner, activityId);
+      }
+    }
+  }
+
+  public void remove(String owner) {
+    synchronized (ids) {
+      ids.remove(owner);
+    }
+  }
+
+  /**
+   * Drops the owners bound to a deleted activity or comment.
+   * @param activityId
+   */
+  public void removeActivity(String activityId) {
+    if (activityId == null) {
+      return;
+    }
+    synchronized (ids) {
+      Iterator<String> it = ids.values().iterator();
+      while (it.hasNext()) {
+        if (activityId.equals(it.next())) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  public int size() {
+    synchronized (ids) {
+      return ids.size();
+    }
+  }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.forum.ext.activity;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Runs activity jobs asynchronously on a pool of workers, in submission order for a given key (the topic),
+ * so that the comments of a topic activity keep the order of the posts.
+ * <br>
+ * A failing job is retried with an exponential backoff before the following jobs of its key run, and is
+ * dropped after the maximum number of attempts. Every job is appended to a journal file with its record,
+ * and marked as done once it ran; the jobs which were not done when the queue stopped are restored
+ * through the {@link Replayer} at the next start.
+ */
+public class ActivityQueue {
+
+  private static final Log   LOG              = ExoLogger.getLogger(ActivityQueue.class);
+
+  /** Number of jobs a worker runs for a key before giving its thread to the other keys. */
+  private static final int   BATCH_SIZE       = 16;
+
+  /** Number of done jobs after which the journal is rewritten with the pending jobs only. */
+  private static final int   COMPACTION_THRESHOLD = 1000;
+
+  private static final long  MAX_BACKOFF      = 60000;
+
+  private static final String ENCODING        = "UTF-8";
+
+  /** Marks a null field of a record, URL encoding never produces a bare '%' */
+  private static final String NULL_FIELD      = "%";
+
+  public interface Job {
+    void run() throws Exception;
+  }
+
+  public interface Replayer {
+    /**
+     * Rebuilds the job of a record read back from the journal.
+     * @return the job, or null if it has nothing left to do
+     */
+    Job restore(String key, String[] record) throws Exception;
+  }
+
+  private final File journal;
+  private final int maxAttempts;
+  private final long backoff;
+  private final ScheduledThreadPoolExecutor executor;
+
+  private final Map<String, Lane> lanes = new HashMap<String, Lane>();
+
+  /** The records of the jobs not done yet, by sequence number, guarded by itself. */
+  private final Map<Long, String> pending = new LinkedHashMap<Long, String>();
+  private Writer writer;
+  private long sequence;
+  private int doneSinceCompaction;
+
+  private volatile Replayer replayer;
+
+  /**
+   * @param poolSize the number of workers
+   * @param journal the journal file, or null to keep the jobs in memory only
+   * @param maxAttempts the number of times a job is run before being dropped
+   * @param backoff the delay before the first retry of a job in milliseconds, doubled at each retry
+   */
+  public ActivityQueue(int poolSize, File journal, int maxAttempts, long backoff) {
+    this.journal = journal;
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.backoff = Math.max(1, backoff);
+    this.executor = new ScheduledThreadPoolExecutor(poolSize, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "forum-activity-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+  }
+
+  /**
+   * Opens the journal and queues the jobs it still holds; they start after the given delay, which leaves
+   * time to the services they use to start, and the jobs submitted meanwhile for the same keys wait for them.
+   */
+  public void start(Replayer replayer, long replayDelay) throws IOException {
+    this.replayer = replayer;
+    if (null == journal) return;
+    Map<Long, String> restored = read(journal);
+    synchronized (pending) {
+      pending.putAll(restored);
+      for (Long seq : restored.keySet()) {
+        sequence = Math.max(sequence, seq);
+      }
+      compact();
+    }
+    if (!restored.isEmpty()) {
+      LOG.info(restored.size() + " forum activity jobs restored from " + journal);
+    }
+    synchronized (lanes) {
+      for (Map.Entry<Long, String> e : restored.entrySet()) {
+        String[] fields = decode(e.getValue());
+        String key = fields[0];
+        String[] record = new String[fields.length - 1];
+        System.arraycopy(fields, 1, record, 0, record.length);
+        Lane lane = lanes.get(key);
+        if (null == lane) {
+          lane = new Lane(key);
+          lanes.put(key, lane);
+          lane.schedule(replayDelay);
+        }
+        lane.entries.add(new Entry(e.getKey(), record, null));
+      }
+    }
+  }
+
+  /**
+   * Queues a job after the jobs already queued with the same key.
+   * @param key the key jobs are ordered by
+   * @param record what the job does, written to the journal so it can be restored
+   */
+  public void submit(String key, String[] record, Job job) {
+    long seq = append(key, record);
+    synchronized (lanes) {
+      Lane lane = lanes.get(key);
+      if (null == lane) {
+        lane = new Lane(key);
+        lanes.put(key, lane);
+        lane.entries.add(new Entry(seq, record, job));
+        lane.schedule(0);
+      } else {
+        lane.entries.add(new Entry(seq, record, job));
+      }
+    }
+  }
+
+  /**
+   * Waits for the running jobs to end, the queued ones stay in the journal.
+   */
+  public void stop(long timeout) {
+    executor.shutdown();
+    try {
+      executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (pending) {
+      close();
+    }
+  }
+
+  /**
+   * @return the number of jobs not done yet
+   */
+  public int getPendingCount() {
+    synchronized (lanes) {
+      int count = 0;
+      for (Lane lane : lanes.values()) {
+        count += lane.entries.size();
+      }
+      return count;
+    }
+  }
+
+  private long append(String key, String[] record) {
+    synchronized (pending) {
+      long seq = ++sequence;
+      if (null == journal) return seq;
+      String line = encode(key, record);
+      pending.put(seq, line);
+      try {
+        writer().write("+" + seq + " " + line + "\n");
+        writer.flush();
+      } catch (IOException e) {
+        LOG.warn("Can not write the forum activity journal " + journal + ": " + e.getMessage());
+        close();
+      }
+      return seq;
+    }
+  }
+
+  private void done(long seq) {
+    if (null == journal) return;
+    synchronized (pending) {
+      pending.remove(seq);
+      try {
+        if (++doneSinceCompaction >= COMPACTION_THRESHOLD && pending.size() < doneSinceCompaction) {
+          compact();
+        } else {
+          writer().write("-" + seq + "\n");
+          writer.flush();
+        }
+      } catch (IOException e) {
+        LOG.warn("Can not write the forum activity journal " + journal + ": " + e.getMessage());
+        close();
+      }
+    }
+  }
+
+  /** Rewrites the journal with the pending jobs only, the caller holds the lock on {@link #pending}. */
+  private void compact() throws IOException {
+    close();
+    File parent = journal.getAbsoluteFile().getParentFile();
+    if (!parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Can not create the directory " + parent);
+    }
+    File tmp = new File(parent, journal.getName() + ".tmp");
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), ENCODING));
+    try {
+      for (Map.Entry<Long, String> e : pending.entrySet()) {
+        out.write("+" + e.getKey() + " " + e.getValue() + "\n");
+      }
+    } finally {
+      out.close();
+    }
+    if (journal.exists() && !journal.delete() || !tmp.renameTo(journal)) {
+      throw new IOException("Can not replace " + journal);
+    }
+    doneSinceCompaction = 0;
+  }
+
+  private Writer writer() throws IOException {
+    if (null == writer) {
+      writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), ENCODING));
+    }
+    return writer;
+  }
+
+  private void close() {
+    if (null == writer) return;
+    try {
+      writer.close();
+    } catch (IOException e) {
+      LOG.debug("Can not close the forum activity journal", e);
+    }
+    writer = null;
+  }
+
+  /**
+   * Reads the jobs added to a journal and not marked as done, a truncated last line is ignored.
+   */
+  static Map<Long, String> read(File journal) throws IOException {
+    Map<Long, String> jobs = new LinkedHashMap<Long, String>();
+    if (!journal.exists()) return jobs;
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), ENCODING));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        try {
+          if (line.startsWith("+")) {
+            int space = line.indexOf(' ');
+            jobs.put(Long.valueOf(line.substring(1, space)), line.substring(space + 1));
+          } else if (line.startsWith("-")) {
+            jobs.remove(Long.valueOf(line.substring(1)));
+          }
+        } catch (RuntimeException e) {
+          LOG.warn("Ignoring the corrupted line of the forum activity journal: " + line);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return jobs;
+  }
+
+  static String encode(String key, String[] record) {
+    StringBuilder sb = new StringBuilder(encode(key));
+    for (String field : record) {
+      sb.append(' ').append(encode(field));
+    }
+    return sb.toString();
+  }
+
+  static String[] decode(String line) {
+    String[] fields = line.split(" ", -1); //keeps the trailing empty fields
+    for (int i = 0; i < fields.length; i++) {
+      try {
+        fields[i] = NULL_FIELD.equals(fields[i]) ? null : URLDecoder.decode(fields[i], ENCODING);
+      } catch (UnsupportedEncodingException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return fields;
+  }
+
+  private static String encode(String field) {
+    if (null == field) return NULL_FIELD;
+    try {
+      return URLEncoder.encode(field, ENCODING);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static class Entry {
+    private final long seq;
+    private final String[] record;
+    private Job job;
+    private int attempts;
+
+    private Entry(long seq, String[] record, Job job) {
+      this.seq = seq;
+      this.record = record;
+      this.job = job;
+    }
+  }
+
+  /**
+   * The jobs of a key, run one at a time. A lane is scheduled on the executor as long as it holds jobs.
+   */
+  private class Lane implements Runnable {
+    private final String key;
+    private final LinkedList<Entry> entries = new LinkedList<Entry>();
+
+    private Lane(String key) {
+      this.key = key;
+    }
+
+    @Override
+    public void run() {
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        if (executor.isShutdown()) return; //the queued jobs stay in the journal
+        Entry entry;
+        synchronized (lanes) {
+          entry = entries.peek();
+        }
+        if (!runEntry(entry)) {
+          schedule(Math.min(MAX_BACKOFF, backoff << Math.min(entry.attempts - 1, 20)));
+          return;
+        }
+        done(entry.seq);
+        synchronized (lanes) {
+          entries.poll();
+          if (entries.isEmpty()) {
+            lanes.remove(key);
+            return;
+          }
+        }
+      }
+      schedule(0);
+    }
+
+    private void schedule(long delay) {
+      try {
+        executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        LOG.debug("Forum activity queue stopped, the jobs of " + key + " are left in the journal");
+      }
+    }
+
+    /**
+     * @return false if the job must be retried
+     */
+    private boolean runEntry(Entry entry) {
+      entry.attempts++;
+      try {
+        if (null == entry.job) {
+          entry.job = replayer.restore(key, entry.record);
+        }
+        if (null != entry.job) {
+          entry.job.run();
+        }
+        return true;
+      } catch (Exception e) {
+        if (entry.attempts < maxAttempts) {
+          LOG.debug("Forum activity job " + toString(entry) + " failed, it will be retried", e);
+          return false;
+        }
+        LOG.error("Forum activity job " + toString(entry) + " failed " + entry.attempts + " times, it is dropped", e);
+        return true;
+      }
+    }
+
+    private String toString(Entry entry) {
+      StringBuilder sb = new StringBuilder(key);
+      for (String field : entry.record) {
+        sb.append(' ').append(field);
+      }
+      return sb.toString();
+    }
+  }
+}
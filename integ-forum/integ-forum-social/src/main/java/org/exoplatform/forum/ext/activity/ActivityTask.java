@@ -26,6 +26,12 @@ import org.exoplatform.social.core.activity.model.ExoSocialActivity;
  */
 public interface ActivityTask<T> {
   void start(T ctx);
+
+  /**
+   * @return the saved activity or comment, or null if there is nothing to update
+   * @throws ActivityTaskException if the activities could not be updated
+   */
   ExoSocialActivity execute(T ctx);
+
   void end(T ctx);
 }
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.forum.ext.activity;
+
+/**
+ * Thrown by an {@link ActivityTask} which could not update the activities, so that the job publishing it
+ * fails and is retried by the {@link ActivityQueue}.
+ */
+public class ActivityTaskException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public ActivityTaskException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
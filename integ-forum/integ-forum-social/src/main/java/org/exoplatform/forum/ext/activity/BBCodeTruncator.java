@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.forum.ext.activity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cuts a BBCode/HTML content once it holds enough visible text for an activity excerpt, before it is rendered.
+ * <br>
+ * The content is scanned once: HTML tags, BBCode tags, the content of the [img], &lt;script&gt; and &lt;style&gt;
+ * elements and white spaces are not counted, an entity counts as one character. When the budget of visible characters
+ * is exceeded, the content is cut before the first character over the budget and the BBCode tags still open are closed, so that
+ * the rendering of the kept head is the same as in the whole content.
+ */
+public class BBCodeTruncator {
+
+  private BBCodeTruncator() {
+  }
+
+  /**
+   * @param content the content, with the special characters already decoded
+   * @param budget the number of visible characters to keep
+   * @return the content itself if it does not hold more visible characters than the budget, its head otherwise
+   */
+  public static String truncate(String content, int budget) {
+    if (content == null || content.length() <= budget) {
+      return content;
+    }
+    List<String> openTags = new ArrayList<String>();
+    int visible = 0;
+    int length = content.length();
+    int i = 0;
+    while (i < length) {
+      char c = content.charAt(i);
+      if (c == '<') {
+        int end = content.indexOf('>', i);
+        if (end < 0) {
+          return content;
+        }
+        String name = getTagName(content, i + 1, end);
+        boolean closing = content.charAt(i + 1) == '/';
+        i = end + 1;
+        if (!closing && ("script".equals(name) || "style".equals(name))) {
+          i = skipTo(content, "</" + name, i);
+          if (i < 0) {
+            return content;
+          }
+        }
+        continue;
+      }
+      if (c == '[') {
+        int end = content.indexOf(']', i);
+        String name = end < 0 ? null : getTagName(content, i + 1, end);
+        if (name != null) {
+          boolean closing = content.charAt(i + 1) == '/';
+          i = end + 1;
+          if (closing) {
+            int index = openTags.lastIndexOf(name);
+            if (index >= 0) {
+              openTags.remove(index);
+            }
+          } else if ("img".equals(name)) {
+            i = skipTo(content, "[/img]", i);
+            if (i < 0) {
+              return content;
+            }
+            i += "[/img]".length();
+          } else {
+            openTags.add(name);
+          }
+          continue;
+        }
+      } else if (c == '&') {
+        int end = content.indexOf(';', i);
+        if (end > i + 1 && end - i <= 10) {
+          if (!content.regionMatches(true, i, "&nbsp;", 0, 6) && ++visible > budget) {
+            return cut(content, i, openTags);
+          }
+          i = end + 1;
+          continue;
+        }
+      }
+      if (!Character.isWhitespace(c) && ++visible > budget) {
+        return cut(content, i, openTags);
+      }
+      i++;
+    }
+    return content;
+  }
+
+  private static String cut(String content, int end, List<String> openTags) {
+    StringBuilder sb = new StringBuilder(end + openTags.size() * 8).append(content, 0, end);
+    for (int i = openTags.size() - 1; i >= 0; i--) {
+      sb.append("[/").append(openTags.get(i)).append(']');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Reads the name of the tag between the given bounds, as in "b", "/b", "url=..." or "a href=...".
+   * @return the lower case name, or null if it is not a tag
+   */
+  private static String getTagName(String content, int start, int end) {
+    int i = start;
+    if (i < end && content.charAt(i) == '/') {
+      i++;
+    }
+    int nameStart = i;
+    while (i < end && Character.isLetterOrDigit(content.charAt(i))) {
+      i++;
+    }
+    if (i == nameStart || !Character.isLetter(content.charAt(nameStart))) {
+      return null;
+    }
+    if (i < end && content.charAt(i) != '=' && !Character.isWhitespace(content.charAt(i))) {
+      return null;
+    }
+    return content.substring(nameStart, i).toLowerCase();
+  }
+
+  /**
+   * @return the index of the given text, ignoring case, from the given index, or -1
+   */
+  private static int skipTo(String content, String text, int from) {
+    for (int i = from, last = content.length() - text.length(); i <= last; i++) {
+      if (content.regionMatches(true, i, text, 0, text.length())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
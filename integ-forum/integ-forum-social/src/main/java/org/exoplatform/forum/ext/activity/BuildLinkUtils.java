@@ -18,11 +18,14 @@ package org.exoplatform.forum.ext.activity;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.exoplatform.commons.utils.CommonsUtils;
 import org.exoplatform.forum.common.CommonUtils;
 import org.exoplatform.forum.service.Utils;
 import org.exoplatform.portal.application.PortalRequestContext;
+import org.exoplatform.portal.mop.EventType;
 import org.exoplatform.portal.mop.SiteKey;
 import org.exoplatform.portal.mop.SiteType;
 import org.exoplatform.portal.mop.navigation.NavigationContext;
@@ -30,10 +33,10 @@ import org.exoplatform.portal.mop.navigation.NavigationService;
 import org.exoplatform.portal.mop.navigation.NodeContext;
 import org.exoplatform.portal.mop.navigation.NodeModel;
 import org.exoplatform.portal.mop.navigation.Scope;
-import org.exoplatform.portal.mop.user.UserNavigation;
-import org.exoplatform.portal.mop.user.UserNode;
-import org.exoplatform.portal.mop.user.UserPortal;
 import org.exoplatform.portal.webui.util.Util;
+import org.exoplatform.services.listener.Event;
+import org.exoplatform.services.listener.Listener;
+import org.exoplatform.services.listener.ListenerService;
 import org.exoplatform.social.core.space.SpaceUtils;
 import org.exoplatform.web.application.RequestContext;
 import org.exoplatform.web.url.navigation.NavigationResource;
@@ -44,6 +47,19 @@ public class BuildLinkUtils {
 
   public static final String CATEGORY     = "category";
 
+  /** Time to live of a cached link prefix, after which the navigation changes made on other cluster nodes are seen. */
+  private static final long   LINK_TIME_TO_LIVE   = 5 * 60 * 1000;
+
+  private static final int    LINK_CACHE_MAX_SIZE = 10000;
+
+  /**
+   * The URLs of the portlet pages the object ids are appended to, by site and portlet, an empty URL when the site has no such page.
+   * Entries of a site are dropped when its navigation changes.
+   */
+  private static final ConcurrentMap<String, CachedLink> links = new ConcurrentHashMap<String, CachedLink>();
+
+  private static volatile boolean listening;
+
   public enum PORTLET_INFO {
     FORUM("ForumPortlet", "forum"),
     POLL("PollPortlet", "poll"),
@@ -120,45 +136,110 @@ public class BuildLinkUtils {
       return "#";
     }
     try {
-      String link = "";
       String objectType = getType(objectId);
+      String prefix;
       //
       if (isInSpace(parentObjectId)) {
-        link = buildSpaceLink(getGroupId(parentObjectId, portletInfo), objectType, objectId, portletInfo);
+        prefix = getSpaceLinkPrefix(getGroupId(parentObjectId, portletInfo), portletInfo);
       } else {
-        PortalRequestContext prc = Util.getPortalRequestContext();
+        final PortalRequestContext prc = Util.getPortalRequestContext();
 
         if (!CommonUtils.isEmpty(siteName) && !prc.getSiteKey().getName().equals(siteName)) {
-          SiteKey siteKey = SiteKey.portal(siteName);
-          String nodeURI = getSiteName(siteKey, portletInfo);
-
-          //
-          if (!CommonUtils.isEmpty(nodeURI)) {
-            link = new StringBuffer(getSiteHomeURL(siteName, nodeURI)).append(buildLink_(objectType, objectId, portletInfo)).toString();
-          }
+          prefix = getSiteLinkPrefix(SiteKey.portal(siteName), portletInfo);
         } else {
-          UserPortal userPortal = prc.getUserPortal();
-          UserNavigation userNav = userPortal.getNavigation(prc.getSiteKey());
-          UserNode userNode = userPortal.getNode(userNav, Scope.ALL, null, null);
-
-          //
-          UserNode portletNode = userNode.getChild(portletInfo.getPageId());
-          if (portletNode != null) {
-            link = new StringBuffer(getNodeURL(portletNode)).append(buildLink_(objectType, objectId, portletInfo)).toString();
-          }
+          prefix = getSiteLinkPrefix(prc.getSiteKey(), portletInfo);
         }
       }
       //
-      return link;
+      return CommonUtils.isEmpty(prefix) ? "" : prefix + buildLink_(objectType, objectId, portletInfo);
     } catch (Exception ex) {
       return "";
     }
   }
 
-  private static String getNodeURL(UserNode node) {
-    RequestContext ctx = RequestContext.getCurrentInstance();
-    NodeURL nodeURL = ctx.createURL(NodeURL.TYPE);
-    return nodeURL.setNode(node).toString();
+  private static String getSpaceLinkPrefix(final String spaceGroupId, final PORTLET_INFO portletInfo) throws Exception {
+    return getLinkPrefix(SiteKey.group(spaceGroupId), portletInfo, new LinkResolver() {
+      @Override
+      public String resolve() throws Exception {
+        return buildSpaceLink(spaceGroupId, portletInfo);
+      }
+    });
+  }
+
+  /**
+   * The node of the portlet is read from the navigation of the site rather than from the navigation of the current
+   * user, so that the cached URL can be shared by all the users; the page permissions are checked when the link is followed.
+   */
+  private static String getSiteLinkPrefix(final SiteKey siteKey, final PORTLET_INFO portletInfo) throws Exception {
+    return getLinkPrefix(siteKey, portletInfo, new LinkResolver() {
+      @Override
+      public String resolve() throws Exception {
+        String nodeURI = getSiteName(siteKey, portletInfo);
+
+        //
+        if (!CommonUtils.isEmpty(nodeURI)) {
+          return getSiteHomeURL(siteKey, nodeURI);
+        }
+        return CommonUtils.EMPTY_STR;
+      }
+    });
+  }
+
+  private static String getLinkPrefix(SiteKey siteKey, PORTLET_INFO portletInfo, LinkResolver resolver) throws Exception {
+    listenNavigationChanges();
+    String key = getSiteCacheKey(siteKey) + portletInfo.name();
+    CachedLink cached = links.get(key);
+    long now = System.currentTimeMillis();
+    if (cached != null && cached.expiry > now) {
+      return cached.prefix;
+    }
+    String prefix = resolver.resolve();
+    if (links.size() >= LINK_CACHE_MAX_SIZE) {
+      links.clear();
+    }
+    links.put(key, new CachedLink(prefix, now + LINK_TIME_TO_LIVE));
+    return prefix;
+  }
+
+  private static String getSiteCacheKey(SiteKey siteKey) {
+    return siteKey.getType().getName() + ":" + siteKey.getName() + "|";
+  }
+
+  /**
+   * Registers once the listener dropping the cached links of a site when its navigation changes.
+   */
+  private static void listenNavigationChanges() {
+    if (listening) {
+      return;
+    }
+    synchronized (links) {
+      if (listening) {
+        return;
+      }
+      ListenerService listenerService = CommonsUtils.getService(ListenerService.class);
+      if (listenerService != null) {
+        Listener<Object, Object> listener = new Listener<Object, Object>() {
+          @Override
+          public void onEvent(Event<Object, Object> event) throws Exception {
+            if (event.getSource() instanceof SiteKey) {
+              String siteCacheKey = getSiteCacheKey((SiteKey) event.getSource());
+              Iterator<String> it = links.keySet().iterator();
+              while (it.hasNext()) {
+                if (it.next().startsWith(siteCacheKey)) {
+                  it.remove();
+                }
+              }
+            } else {
+              links.clear();
+            }
+          }
+        };
+        listenerService.addListener(EventType.NAVIGATION_CREATED, listener);
+        listenerService.addListener(EventType.NAVIGATION_UPDATED, listener);
+        listenerService.addListener(EventType.NAVIGATION_DESTROYED, listener);
+      }
+      listening = true;
+    }
   }
 
   private static String buildLink_(String objectType, String objectId, PORTLET_INFO portletInfo) {
@@ -169,12 +250,11 @@ public class BuildLinkUtils {
     return buffer.append("/").append(objectType).append("/").append(objectId).toString();
   }
 
-  private static String buildSpaceLink(String spaceGroupId, String objectType, String objectId, PORTLET_INFO portletInfo) throws Exception {
+  private static String buildSpaceLink(String spaceGroupId, PORTLET_INFO portletInfo) throws Exception {
     String nodeURI = getSiteName(SiteKey.group(spaceGroupId), portletInfo);
     if (!CommonUtils.isEmpty(nodeURI)) {
       String spaceLink = getSpaceHomeURL(spaceGroupId);
-      StringBuffer buffer = new StringBuffer(spaceLink).append("/").append(nodeURI);
-      return buffer.append(buildLink_(objectType, objectId, portletInfo)).toString();
+      return new StringBuffer(spaceLink).append("/").append(nodeURI).toString();
     }
 
     return CommonUtils.EMPTY_STR;
@@ -204,9 +284,9 @@ public class BuildLinkUtils {
     return CommonUtils.EMPTY_STR;
   }
 
-  private static String getSiteHomeURL(String siteName, String nodeURI) {
+  private static String getSiteHomeURL(SiteKey siteKey, String nodeURI) {
     NodeURL nodeURL = RequestContext.getCurrentInstance().createURL(NodeURL.TYPE);
-    NavigationResource resource = new NavigationResource(SiteType.PORTAL, siteName, nodeURI);
+    NavigationResource resource = new NavigationResource(siteKey.getType(), siteKey.getName(), nodeURI);
 
     return nodeURL.setResource(resource).toString();
   }
@@ -218,4 +298,18 @@ public class BuildLinkUtils {
 
     return nodeURL.setResource(resource).toString();
   }
+
+  private interface LinkResolver {
+    String resolve() throws Exception;
+  }
+
+  private static class CachedLink {
+    private final String prefix;
+    private final long   expiry;
+
+    private CachedLink(String prefix, long expiry) {
+      this.prefix = prefix;
+      this.expiry = expiry;
+    }
+  }
 }
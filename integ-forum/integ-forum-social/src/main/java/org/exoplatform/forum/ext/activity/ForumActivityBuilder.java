@@ -62,6 +62,12 @@ public class ForumActivityBuilder {
   private static final int NUMBER_CHARS    = 430;
   private static final int NUMBER_OF_LINES    = 4;
   
+  /**
+   * Visible characters of a topic or post content rendered for its activity, a margin over {@link #NUMBER_CHARS}
+   * for the markup rendered as nothing (smileys, empty links...).
+   */
+  public static final int EXCERPT_SOURCE_CHARS = 1000;
+  
   public static final String SPACE_GROUP_ID  = "SpaceGroupId";
   
   private ForumActivityBuilder() {
@@ -70,11 +76,12 @@ public class ForumActivityBuilder {
   
   public static ExoSocialActivity createActivityComment(Post post, ForumActivityContext ctx) {
     ExoSocialActivity activity = new ExoSocialActivityImpl();
-    String title = getFourFirstLines(post.getMessage());
+    String message = getContent(post, ctx);
+    String title = getFourFirstLines(message);
 
     //activity.setUserId(post.getOwner());
     activity.setTitle(title);
-    activity.setBody(post.getMessage());
+    activity.setBody(message);
     activity.isComment(true);
     activity.setType(FORUM_ACTIVITY_TYPE);
     
@@ -97,7 +104,7 @@ public class ForumActivityBuilder {
   
   public static ExoSocialActivity createActivityComment(Topic topic, ForumActivityContext ctx) {
     ExoSocialActivity activity = new ExoSocialActivityImpl();
-    String body = getFourFirstLines(topic.getDescription());
+    String body = getFourFirstLines(getContent(topic, ctx));
     
     //activity.setUserId(topic.getOwner());
     String title = CommonUtils.decodeSpecialCharToHTMLnumber(topic.getTopicName());
@@ -109,6 +116,20 @@ public class ForumActivityBuilder {
     return activity;
   }
   
+  /**
+   * @return the content of the topic rendered in the context, or its description if it is not the topic of the context
+   */
+  private static String getContent(Topic topic, ForumActivityContext ctx) {
+    return ctx != null && ctx.getTopic() == topic ? ctx.getTopicContent() : topic.getDescription();
+  }
+
+  /**
+   * @return the content of the post rendered in the context, or its message if it is not the post of the context
+   */
+  private static String getContent(Post post, ForumActivityContext ctx) {
+    return ctx != null && ctx.getPost() == post ? ctx.getPostContent() : post.getMessage();
+  }
+  
   public static String decodeHTMLInput(String message) {
     message = CommonUtils.decodeSpecialCharToHTMLnumber(message);
     String[] tab = TransformHTML.getPlainText(message).replaceAll("(?m)^\\s*$[\n\r]{1,}", "").split("\\r?\\n");
@@ -187,7 +208,7 @@ public class ForumActivityBuilder {
   
   public static ExoSocialActivity createActivity(Topic topic, ForumActivityContext ctx) {
     ExoSocialActivity activity = new ExoSocialActivityImpl();
-    String body = getFourFirstLines(topic.getDescription());
+    String body = getFourFirstLines(getContent(topic, ctx));
     
     
     //processing in execute of task.
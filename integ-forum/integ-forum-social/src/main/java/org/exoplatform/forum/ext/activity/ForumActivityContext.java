@@ -34,6 +34,10 @@ public class ForumActivityContext {
   
   private Topic topic;
   private Post post;
+  
+  /** Rendered excerpts of the topic description and of the post message, the forum data itself is left as is. */
+  private String topicContent;
+  private String postContent;
 
   /**org.exoplatform.forum.service.Utils.CLOSE
   * org.exoplatform.forum.service.Utils.LOCK
@@ -121,13 +125,49 @@ public class ForumActivityContext {
   }
   
   public void setPost(Post post) {
+    if (post != this.post) {
+      this.postContent = null;
+    }
     this.post = post;
   }
 
   public void setTopic(Topic topic) {
+    if (topic != this.topic) {
+      this.topicContent = null;
+    }
     this.topic = topic;
   }
 
+  public void setTopicContent(String topicContent) {
+    this.topicContent = topicContent;
+  }
+
+  public void setPostContent(String postContent) {
+    this.postContent = postContent;
+  }
+
+  /**
+   * Gets the content of the topic published in its activity
+   * @return the rendered excerpt of the description, or the description itself if it was not rendered
+   */
+  public String getTopicContent() {
+    if (topicContent != null || topic == null) {
+      return topicContent;
+    }
+    return topic.getDescription();
+  }
+
+  /**
+   * Gets the content of the post published in its comment
+   * @return the rendered excerpt of the message, or the message itself if it was not rendered
+   */
+  public String getPostContent() {
+    if (postContent != null || post == null) {
+      return postContent;
+    }
+    return post.getMessage();
+  }
+
   /**
    * Gets categoryId
    * @return
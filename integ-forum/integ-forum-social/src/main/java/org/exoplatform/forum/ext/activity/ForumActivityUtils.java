@@ -28,15 +28,16 @@ import org.exoplatform.forum.service.Post;
 import org.exoplatform.forum.service.Topic;
 import org.exoplatform.forum.service.Utils;
 import org.exoplatform.forum.service.impl.model.PostFilter;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
-import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
-import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.manager.ActivityManager;
 import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.space.SpaceUtils;
-import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.space.spi.SpaceService;
+import org.exoplatform.social.integration.SearchContentNotifier;
+import org.exoplatform.social.integration.UserIdentityCache;
 
 /**
  * Created by The eXo Platform SAS
@@ -46,20 +47,39 @@ import org.exoplatform.social.core.space.spi.SpaceService;
  */
 public class ForumActivityUtils {
 
+  private static final Log   LOG               = ExoLogger.getLogger(ForumActivityUtils.class);
+
   private static final int   TYPE_PRIVATE      = 2;
   
+  public static final String POST_SEARCH_TYPE   = "post";
+  
+  public static final String ANSWER_SEARCH_TYPE = "answer";
+  
+  /** Template param of a topic activity holding the progress of the re-attachment of the replies, while it is not complete */
+  public static final String REATTACHED_POSTS_KEY = "ReattachedPosts";
+  
+  private static final int   REATTACH_PAGE_SIZE = 100;
+  
   private static ForumService forumService;
   private static ActivityManager activityManager;
   private static IdentityManager identityManager;
   private static SpaceService spaceService;
   
+  private static final ActivityIdCache activityIds = new ActivityIdCache(ActivityIdCache.DEFAULT_MAX_SIZE);
+  
+  private static final SpaceIdentityResolver spaceIdentities = new SpaceIdentityResolver(SpaceIdentityResolver.DEFAULT_MAX_SIZE,
+                                                                                         SpaceIdentityResolver.DEFAULT_TIME_TO_LIVE);
+  
   public static Identity getSpaceIdentity(String forumId) {
-    Space space = getSpaceService().getSpaceByGroupId(getSpaceGroupId(forumId));
-    Identity spaceIdentity = null;
-    if (space != null) {
-      spaceIdentity = getIdentityManager().getOrCreateIdentity(SpaceIdentityProvider.NAME, space.getPrettyName(), false);
-    }
-    return spaceIdentity;
+    return spaceIdentities.getSpaceIdentityForForum(forumId);
+  }
+  
+  /**
+   * Gets the shared resolver of the space stream identities, also used by the poll and answers publishers.
+   * @return
+   */
+  public static SpaceIdentityResolver getSpaceIdentityResolver() {
+    return spaceIdentities;
   }
   
   public static String getSpaceGroupId(String forumId) {
@@ -102,49 +122,147 @@ public class ForumActivityUtils {
   
   public static void takeActivityBack(Topic topic, ExoSocialActivity activity) {
     ForumActivityUtils.getForumService().saveActivityIdForOwnerPath(topic.getPath(), activity.getId());
+    activityIds.put(topic.getPath(), activity.getId());
   }
   
   public static void takeCommentBack(Post post, ExoSocialActivity comment) {
     ForumActivityUtils.getForumService().saveActivityIdForOwnerPath(post.getPath(), comment.getId());
+    activityIds.put(post.getPath(), comment.getId());
+  }
+  
+  /**
+   * Gets the activity id of a forum owner (topic, post or poll), from the cache if it is known.
+   * @param ownerPath
+   * @return
+   */
+  public static String getActivityIdForOwnerPath(String ownerPath) {
+    String activityId = activityIds.get(ownerPath);
+    if (activityId == null) {
+      activityId = getForumService().getActivityIdForOwnerPath(ownerPath);
+      activityIds.put(ownerPath, activityId);
+    }
+    return activityId;
   }
   
+  /**
+   * Gets the activity id of a topic, from the cache if it is known.
+   * @param topic
+   * @return
+   */
+  public static String getActivityIdForTopic(Topic topic) {
+    String activityId = activityIds.get(topic.getPath());
+    if (activityId == null) {
+      activityId = getForumService().getActivityIdForOwnerId(topic.getId());
+      activityIds.put(topic.getPath(), activityId);
+    }
+    return activityId;
+  }
+  
+  /**
+   * Gets the cache of the activity ids of the forum, poll and answers owners.
+   * @return
+   */
+  public static ActivityIdCache getActivityIdCache() {
+    return activityIds;
+  }
+  
+  /**
+   * Re-attaches the replies of a topic to its activity as comments, after a split.
+   * The posts are read by pages, and the number of posts already handled is saved in the activity after each comment,
+   * so that an interrupted re-attachment goes on where it stopped when it is run again on the same activity,
+   * without saving again the comments it already re-attached.
+   * @param topic
+   * @param activity
+   * @throws Exception
+   */
   public static void updateActivityByTopic(Topic topic, ExoSocialActivity activity) throws Exception {
     String topicPath = topic.getPath();
     PostFilter filter = new PostFilter(Utils.getCategoryId(topicPath), Utils.getForumId(topicPath), Utils.getTopicId(topicPath), "", "", "", "");
     ListAccess<Post> listPost = getForumService().getPosts(filter);
+    int size = listPost.getSize();
     
     //After split, if a topic has only one post (include the post by default of topic),
     //this topic is considered "has no reply" then no comment will be added to the activity 
-    if (listPost.getSize() <= 1) {
+    if (size <= 1) {
       return;
     }
     
-    Post[] posts = listPost.load(0, listPost.getSize());
     ActivityManager am = getActivityManager();
+    Map<String, String> templateParams = activity.getTemplateParams();
+    String firstPostId = topic.getId().replace(Utils.TOPIC, Utils.POST);
+    int offset = 0;
     int count = 0;
     
+    //resumes an interrupted re-attachment
+    String progress = templateParams.get(REATTACHED_POSTS_KEY);
+    if (progress != null) {
+      String[] tab = progress.split(":");
+      offset = Integer.parseInt(tab[0]);
+      count = Integer.parseInt(tab[1]);
+    }
+    
     //
-    for (Post post : posts) {
-      //The first post of topic is not a reply and will not be added to the activity
-      if (post.getId().equals(topic.getId().replace(Utils.TOPIC, Utils.POST))) {
-        continue;
+    while (offset < size) {
+      Post[] posts = listPost.load(offset, Math.min(REATTACH_PAGE_SIZE, size - offset));
+      if (posts.length == 0) {
+        break;
       }
-      String commentId = getForumService().getActivityIdForOwnerPath(post.getPath());
-      am.saveComment(activity, am.getActivity(commentId));
-      count++;
+      for (int i = 0; i < posts.length; i++) {
+        //The first post of topic is not a reply and will not be added to the activity
+        if (posts[i].getId().equals(firstPostId)) {
+          continue;
+        }
+        String commentId = getActivityIdForOwnerPath(posts[i].getPath());
+        ExoSocialActivity comment = Utils.isEmpty(commentId) ? null : am.getActivity(commentId);
+        if (comment != null) {
+          am.saveComment(activity, comment);
+          count++;
+          
+          //saves the progress
+          templateParams.put(REATTACHED_POSTS_KEY, (offset + i + 1) + ":" + count);
+          activity.setTemplateParams(templateParams);
+          am.updateActivity(activity);
+        }
+      }
+      offset += posts.length;
     }
     
-    Map<String, String> templateParams = activity.getTemplateParams();
+    templateParams.remove(REATTACHED_POSTS_KEY);
     templateParams.put(ForumActivityBuilder.TOPIC_POST_COUNT_KEY, "" + count);
     activity.setTemplateParams(templateParams);
     am.updateActivity(activity);
   }
   
+  /**
+   * Goes on with the re-attachment of the replies of a topic to its activity if it was interrupted.
+   * @param topic
+   * @throws Exception
+   */
+  public static void resumeActivityByTopic(Topic topic) throws Exception {
+    String activityId = getActivityIdForOwnerPath(topic.getPath());
+    if (Utils.isEmpty(activityId)) {
+      return;
+    }
+    ExoSocialActivity activity = getActivityManager().getActivity(activityId);
+    if (activity == null || activity.getTemplateParams() == null || !activity.getTemplateParams().containsKey(REATTACHED_POSTS_KEY)) {
+      return;
+    }
+    
+    //see getActivityOfTopic
+    activity.setBody(null);
+    activity.setTitle(null);
+    updateActivityByTopic(topic, activity);
+  }
+  
   public static void saveTopicActivity(Identity poster, Identity streamOwner, ExoSocialActivity activity, Topic topic) throws Exception {
     //Save activity only in case the owner and poster of new topic exist
     if (poster != null && streamOwner != null) {
       activity.setUserId(poster.getId());
       getActivityManager().saveActivityNoReturn(streamOwner, activity);
+      
+      //binds the activity before the replies are re-attached, so that an interrupted re-attachment can be resumed
+      takeActivityBack(topic, activity);
+      
       //update comment for activity's topic
       updateActivityByTopic(topic, activity);
     }
@@ -157,8 +275,7 @@ public class ForumActivityUtils {
    * @return
    */
   public static String getActivityId(ForumActivityContext ctx) {
-    ForumService fs = ForumActivityUtils.getForumService();
-    String activityId = fs.getActivityIdForOwnerPath(ctx.getTopic().getPath());
+    String activityId = getActivityIdForOwnerPath(ctx.getTopic().getPath());
     
     //
     if (Utils.isEmpty(activityId)) {
@@ -180,8 +297,7 @@ public class ForumActivityUtils {
    * @return
    */
   public static ExoSocialActivity getActivityOfTopic(ForumActivityContext ctx) {
-    ForumService fs = ForumActivityUtils.getForumService();
-    String activityId = fs.getActivityIdForOwnerId(ctx.getTopic().getId());
+    String activityId = getActivityIdForTopic(ctx.getTopic());
     
     ActivityManager am = ForumActivityUtils.getActivityManager();
     
@@ -193,10 +309,17 @@ public class ForumActivityUtils {
     //
     ExoSocialActivity got = am.getActivity(activityId);
     
-    //
+    //the cached id may be stale (the topic was bound again on another node): read it from the topic before creating an activity
     if (got == null) {
-      got = makeActivity(ctx);
-      
+      activityIds.removeActivity(activityId);
+      String storedId = getForumService().getActivityIdForOwnerId(ctx.getTopic().getId());
+      if (!Utils.isEmpty(storedId) && !storedId.equals(activityId)) {
+        activityIds.put(ctx.getTopic().getPath(), storedId);
+        got = am.getActivity(storedId);
+      }
+      if (got == null) {
+        got = makeActivity(ctx);
+      }
     }
     
     //title and body of activity may contain specials characters and when we get activity, the special character will be encoded
@@ -207,20 +330,21 @@ public class ForumActivityUtils {
     return got;
   }
   
+  /**
+   * Renders the BBCode of the topic description and of the post message of the context, only as far as their
+   * activity excerpt needs: the rest of a long content is cut before it is rendered. The excerpts are kept in
+   * the context, the topic and the post are not modified.
+   * @param ctx
+   * @return
+   */
   public static ForumActivityContext processBBCode(ForumActivityContext ctx) {
     Topic topic = ctx.getTopic();
     Post post = ctx.getPost();
     if (topic != null) {
-      String description = topic.getDescription();
-      description = CommonUtils.processBBCode(CommonUtils.decodeSpecialCharToHTMLnumberIgnore(description));
-      topic.setDescription(description);
-      ctx.setTopic(topic);
+      ctx.setTopicContent(processExcerptBBCode(topic.getDescription()));
     }
     if (post != null) {
-      String message = post.getMessage();
-      message = CommonUtils.processBBCode(CommonUtils.decodeSpecialCharToHTMLnumberIgnore(message));
-      post.setMessage(message);
-      ctx.setPost(post);
+      ctx.setPostContent(processExcerptBBCode(post.getMessage()));
     }
     return ctx;
   }
@@ -232,8 +356,7 @@ public class ForumActivityUtils {
    * @return
    */
   public static ExoSocialActivity getCommentOfPost(ForumActivityContext ctx) {
-    ForumService fs = ForumActivityUtils.getForumService();
-    String activityId = fs.getActivityIdForOwnerPath(ctx.getPost().getPath());
+    String activityId = getActivityIdForOwnerPath(ctx.getPost().getPath());
     
     ActivityManager am = ForumActivityUtils.getActivityManager();
     
@@ -245,6 +368,16 @@ public class ForumActivityUtils {
     //
     ExoSocialActivity got = am.getActivity(activityId);
     
+    //the cached id may be stale (the post was bound again on another node): read it from the post
+    if (got == null) {
+      activityIds.removeActivity(activityId);
+      String storedId = getForumService().getActivityIdForOwnerPath(ctx.getPost().getPath());
+      if (!Utils.isEmpty(storedId) && !storedId.equals(activityId)) {
+        activityIds.put(ctx.getPost().getPath(), storedId);
+        got = am.getActivity(storedId);
+      }
+    }
+    
     return got;
   }
   
@@ -266,6 +399,7 @@ public class ForumActivityUtils {
     ActivityManager am = getActivityManager();
     for(String activityId : activityIds) {
       am.deleteActivity(activityId);
+      ForumActivityUtils.activityIds.removeActivity(activityId);
     }
   }
   
@@ -276,6 +410,7 @@ public class ForumActivityUtils {
    * @param commentId
    */
   public static void removeComment(String activityId, String commentId) {
+    activityIds.removeActivity(commentId);
     ActivityManager am = getActivityManager();
     ExoSocialActivity activity = am.getActivity(activityId);
     if (activity == null)
@@ -319,8 +454,18 @@ public class ForumActivityUtils {
     return spaceService;
   }
   
+  public static String processExcerptBBCode(String content) {
+    content = CommonUtils.decodeSpecialCharToHTMLnumberIgnore(content);
+    return CommonUtils.processBBCode(BBCodeTruncator.truncate(content, ForumActivityBuilder.EXCERPT_SOURCE_CHARS));
+  }
+  
+  /**
+   * Gets the identity of a user, through the shared user identity cache when it is deployed.
+   * @param remoteId
+   * @return
+   */
   public static Identity getIdentity(String remoteId) {
-    return getIdentityManager().getOrCreateIdentity(OrganizationIdentityProvider.NAME, remoteId, false);
+    return UserIdentityCache.getUserIdentity(getIdentityManager(), remoteId);
   }
   
   /**
@@ -329,9 +474,8 @@ public class ForumActivityUtils {
    * @return
    */
   public static ExoSocialActivity getActivityOfPollTopic(ForumActivityContext ctx) {
-    ForumService fs = ForumActivityUtils.getForumService();
     String path = ctx.getTopic().getPath().concat("/").concat(ctx.getTopic().getId().replace(Utils.TOPIC, Utils.POLL));
-    String pollActivityId = fs.getActivityIdForOwnerPath(path);
+    String pollActivityId = getActivityIdForOwnerPath(path);
     
     ActivityManager am = ForumActivityUtils.getActivityManager();
     
@@ -102,9 +102,8 @@ public abstract class PostActivityTask implements ActivityTask<ForumActivityCont
         
         return newComment;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when add post " + ctx.getPost().getId(), e);
+        throw new ActivityTaskException("Can not record Comment for when add post " + ctx.getPost().getId(), e);
       }
-      return null;
     }
     
   };
@@ -169,10 +168,8 @@ public abstract class PostActivityTask implements ActivityTask<ForumActivityCont
         
         return comment;
       } catch (Exception e) {
-        LOG.error("Can not record Comment when updates post " + ctx.getPost().getId(), e);
+        throw new ActivityTaskException("Can not record Comment when updates post " + ctx.getPost().getId(), e);
       }
-      
-      return null;
     }
     
   };
@@ -193,7 +190,7 @@ public abstract class PostActivityTask implements ActivityTask<ForumActivityCont
     public ExoSocialActivity execute(ForumActivityContext ctx) {
       try {
         ActivityManager am = ForumActivityUtils.getActivityManager();
-        String postActivityId = ForumActivityUtils.getForumService().getActivityIdForOwnerPath(ctx.getPost().getPath());
+        String postActivityId = ForumActivityUtils.getActivityIdForOwnerPath(ctx.getPost().getPath());
         ExoSocialActivity postActivity = null;
         if (postActivityId != null) {
           postActivity = am.getActivity(postActivityId);
@@ -204,10 +201,8 @@ public abstract class PostActivityTask implements ActivityTask<ForumActivityCont
         }
         return postActivity;
       } catch (Exception e) {
-        LOG.error("Can not hide comment when hide post " + ctx.getPost().getId(), e);
+        throw new ActivityTaskException("Can not hide comment when hide post " + ctx.getPost().getId(), e);
       }
-      
-      return null;
     }
     
   };
@@ -228,7 +223,7 @@ public abstract class PostActivityTask implements ActivityTask<ForumActivityCont
     public ExoSocialActivity execute(ForumActivityContext ctx) {
       try {
         ActivityManager am = ForumActivityUtils.getActivityManager();
-        String postActivityId = ForumActivityUtils.getForumService().getActivityIdForOwnerPath(ctx.getPost().getPath());
+        String postActivityId = ForumActivityUtils.getActivityIdForOwnerPath(ctx.getPost().getPath());
         ExoSocialActivity postActivity = null;
         if (postActivityId != null) {
           postActivity = am.getActivity(postActivityId);
@@ -239,10 +234,8 @@ public abstract class PostActivityTask implements ActivityTask<ForumActivityCont
         }
         return postActivity;
       } catch (Exception e) {
-        LOG.error("Can not unhide comment when unhide post " + ctx.getPost().getId(), e);
+        throw new ActivityTaskException("Can not unhide comment when unhide post " + ctx.getPost().getId(), e);
       }
-      
-      return null;
     }
     
   };
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.forum.ext.activity;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
+import org.exoplatform.social.core.space.model.Space;
+
+/**
+ * Bounded cache of the stream identities of the spaces, by space group id, shared by the forum, poll and answers
+ * publishers which resolve it from a forum id, a poll parent path or a FAQ category id.
+ * <br>
+ * Group ids which are not bound to a space are cached too, so that the forums of removed spaces do not look the
+ * space up again on each event. Entries are dropped by the space lifecycle callbacks of this node, and expire
+ * after a time to live for the changes made on other cluster nodes.
+ */
+public class SpaceIdentityResolver {
+
+  public static final int    DEFAULT_MAX_SIZE     = 1000;
+
+  public static final long   DEFAULT_TIME_TO_LIVE = 10 * 60 * 1000;
+
+  /** Cached in place of the identity of a group id which is not a space */
+  private static final Identity NO_SPACE          = new Identity(SpaceIdentityProvider.NAME, "");
+
+  private final long         timeToLive;
+
+  private final Map<String, CachedIdentity> identities;
+
+  public SpaceIdentityResolver(final int maxSize, long timeToLive) {
+    this.timeToLive = timeToLive;
+    this.identities = new LinkedHashMap<String, CachedIdentity>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedIdentity> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * @param forumId the id of the forum
+   * @return the stream identity of the space of the forum, or null if it is not a space forum
+   */
+  public Identity getSpaceIdentityForForum(String forumId) {
+    if (!ForumActivityUtils.hasSpace(forumId)) {
+      return null;
+    }
+    return getSpaceIdentity(ForumActivityUtils.getSpaceGroupId(forumId));
+  }
+
+  /**
+   * @param spaceGroupId the group id of the space, may be empty
+   * @return the stream identity of the space, or null if there is no such space
+   */
+  public Identity getSpaceIdentity(String spaceGroupId) {
+    if (spaceGroupId == null || spaceGroupId.length() == 0) {
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    synchronized (identities) {
+      CachedIdentity cached = identities.get(spaceGroupId);
+      if (cached != null && cached.expiry > now) {
+        return cached.identity == NO_SPACE ? null : cached.identity;
+      }
+    }
+    Identity identity = loadSpaceIdentity(spaceGroupId);
+    synchronized (identities) {
+      identities.put(spaceGroupId, new CachedIdentity(identity == null ? NO_SPACE : identity, now + timeToLive));
+    }
+    return identity;
+  }
+
+  /**
+   * Drops the cached identity of a space, when it is created, renamed or removed.
+   * @param spaceGroupId
+   */
+  public void remove(String spaceGroupId) {
+    synchronized (identities) {
+      identities.remove(spaceGroupId);
+    }
+  }
+
+  public void clear() {
+    synchronized (identities) {
+      identities.clear();
+    }
+  }
+
+  public int size() {
+    synchronized (identities) {
+      return identities.size();
+    }
+  }
+
+  protected Identity loadSpaceIdentity(String spaceGroupId) {
+    Space space = ForumActivityUtils.getSpaceService().getSpaceByGroupId(spaceGroupId);
+    if (space == null) {
+      return null;
+    }
+    return ForumActivityUtils.getIdentityManager().getOrCreateIdentity(SpaceIdentityProvider.NAME, space.getPrettyName(), false);
+  }
+
+  private static class CachedIdentity {
+    private final Identity identity;
+    private final long     expiry;
+
+    private CachedIdentity(Identity identity, long expiry) {
+      this.identity = identity;
+      this.expiry = expiry;
+    }
+  }
+}
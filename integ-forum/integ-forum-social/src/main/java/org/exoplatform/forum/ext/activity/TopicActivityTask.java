@@ -51,7 +51,34 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
   
   protected ExoSocialActivity processComment(ForumActivityContext ctx) {
     ExoSocialActivity activity = ForumActivityBuilder.createActivityComment(ctx.getTopic(), ctx);
-    return processTitle(ctx, activity); 
+    return processComment(ctx, activity); 
+  }
+  
+  /**
+   * Sets the title of the comment created by the task on the given comment of the topic.
+   * @param ctx
+   * @param comment
+   * @return
+   */
+  protected ExoSocialActivity processComment(ForumActivityContext ctx, ExoSocialActivity comment) {
+    return processTitle(ctx, comment); 
+  }
+  
+  /**
+   * Tells if the task adds a comment to the topic activity once it is updated.
+   * @return
+   */
+  protected boolean hasComment() {
+    return true;
+  }
+  
+  /**
+   * Gets the user the comment of the task is posted by.
+   * @param ctx
+   * @return
+   */
+  protected String getCommentPoster(ForumActivityContext ctx) {
+    return ctx.getTopic().getModifiedBy();
   }
 
   public static TopicActivityTask ADD_TOPIC = new TopicActivityTask() {
@@ -94,9 +121,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newActivity;
       } catch (Exception e) {
-        LOG.error("Can not record Activity for when add topic's title " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Activity for when add topic's title " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
     
   };
@@ -108,8 +134,7 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
       return activity;
     }
     
-    protected ExoSocialActivity processComment(ForumActivityContext ctx) {
-      ExoSocialActivity newComment = ForumActivityBuilder.createActivityComment(ctx.getTopic(), ctx);
+    protected ExoSocialActivity processComment(ForumActivityContext ctx, ExoSocialActivity newComment) {
       PropertyChangeSupport newPcs = ctx.getPcs();
       Topic topic = ctx.getTopic();
       StringBuilder sb = new StringBuilder();
@@ -120,7 +145,7 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
       }
       
       if (newPcs.hasPropertyName(Topic.TOPIC_CONTENT)) {
-        sb.append(ForumActivityType.UPDATE_TOPIC_CONTENT.getTitle(newComment, topic.getDescription()));
+        sb.append(ForumActivityType.UPDATE_TOPIC_CONTENT.getTitle(newComment, ctx.getTopicContent()));
       }
       
       newComment.setTitle(sb.toString());
@@ -131,7 +156,7 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
     @Override
     protected ExoSocialActivity processActivity(ForumActivityContext ctx, ExoSocialActivity activity) {
       activity.setTitle(CommonUtils.decodeSpecialCharToHTMLnumber(ctx.getTopic().getTopicName()));
-      activity.setBody(ForumActivityBuilder.getFourFirstLines(ctx.getTopic().getDescription()));
+      activity.setBody(ForumActivityBuilder.getFourFirstLines(ctx.getTopicContent()));
       
       return activity;
     };
@@ -159,9 +184,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newComment;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when update topic " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Comment for when update topic " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
     
   };
@@ -203,9 +227,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newComment;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when update topic " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Comment for when update topic " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
     
   };
@@ -219,7 +242,7 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
     
     @Override
     protected ExoSocialActivity processActivity(ForumActivityContext ctx, ExoSocialActivity activity) {
-      activity.setBody(ForumActivityBuilder.getFourFirstLines(ctx.getTopic().getDescription()));
+      activity.setBody(ForumActivityBuilder.getFourFirstLines(ctx.getTopicContent()));
       //processTitle(ctx, activity);
       return activity;
     };
@@ -246,9 +269,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newComment;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when update topic's content " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Comment for when update topic's content " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
     
   };
@@ -260,6 +282,11 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
       return ForumActivityType.UPDATE_TOPIC_RATE.getActivity(activity, "" + ctx.getTopic().getVoteRating());
     }
     
+    @Override
+    protected String getCommentPoster(ForumActivityContext ctx) {
+      return UserHelper.getCurrentUser();
+    }
+    
     @Override
     protected ExoSocialActivity processActivity(ForumActivityContext ctx, ExoSocialActivity activity) {
       Map<String, String> templateParams = activity.getTemplateParams();
@@ -284,7 +311,7 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         ExoSocialActivity newComment = processComment(ctx);
         
         //
-        Identity poster = ForumActivityUtils.getIdentity(UserHelper.getCurrentUser());
+        Identity poster = ForumActivityUtils.getIdentity(getCommentPoster(ctx));
         newComment.setUserId(poster.getId());
         
         //
@@ -292,9 +319,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newComment;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when update topic's content " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Comment for when update topic's content " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
     
   };
@@ -335,9 +361,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newComment;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when close topic " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Comment for when close topic " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
   };
   
@@ -377,9 +402,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newComment;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when open topic " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Comment for when open topic " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
   };
   
@@ -421,9 +445,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newComment;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when lock topic " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Comment for when lock topic " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
   };
   
@@ -466,9 +489,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newComment;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when unlock topic " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Comment for when unlock topic " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
   };
   
@@ -510,9 +532,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newComment;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when approved topic " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Comment for when approved topic " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
   };
   
@@ -555,14 +576,18 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newComment;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when unapproved topic " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Comment for when unapproved topic " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
   };
   
   public static TopicActivityTask HIDDEN_TOPIC = new TopicActivityTask() {
 
+    @Override
+    protected boolean hasComment() {
+      return false;
+    }
+
     @Override
     protected ExoSocialActivity processTitle(ForumActivityContext ctx, ExoSocialActivity activity) {
       return activity;
@@ -589,14 +614,18 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return a;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when hidden topic " + ctx.getTopic().getId(), e);
-        return null;
+        throw new ActivityTaskException("Can not record Comment for when hidden topic " + ctx.getTopic().getId(), e);
       }
     }
   };
   
   public static TopicActivityTask CENSORING_TOPIC = new TopicActivityTask() {
 
+    @Override
+    protected boolean hasComment() {
+      return false;
+    }
+
     @Override
     protected ExoSocialActivity processTitle(ForumActivityContext ctx, ExoSocialActivity activity) {
       return activity;
@@ -620,14 +649,18 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return a;
       } catch (Exception e) {
-        LOG.error("Can not hide activity for censoring topic " + ctx.getTopic().getId(), e);
-        return null;
+        throw new ActivityTaskException("Can not hide activity for censoring topic " + ctx.getTopic().getId(), e);
       }
     }
   };
   
   public static TopicActivityTask UNCENSORING_TOPIC = new TopicActivityTask() {
 
+    @Override
+    protected boolean hasComment() {
+      return false;
+    }
+
     @Override
     public ExoSocialActivity processTitle(ForumActivityContext ctx, ExoSocialActivity activity) {
       return activity;
@@ -651,14 +684,18 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return a;
       } catch (Exception e) {
-        LOG.error("Can not show activity for uncensoring topic " + ctx.getTopic().getId(), e);
-        return null;
+        throw new ActivityTaskException("Can not show activity for uncensoring topic " + ctx.getTopic().getId(), e);
       }
     }
   };
   
   public static TopicActivityTask ACTIVE_TOPIC = new TopicActivityTask() {
 
+    @Override
+    protected boolean hasComment() {
+      return false;
+    }
+
     @Override
     protected ExoSocialActivity processTitle(ForumActivityContext ctx, ExoSocialActivity activity) {
       return activity;
@@ -682,8 +719,7 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return a;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when active topic " + ctx.getTopic().getId(), e);
-        return null;
+        throw new ActivityTaskException("Can not record Comment for when active topic " + ctx.getTopic().getId(), e);
       }
     }
   };
@@ -751,9 +787,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newComment;
       } catch (Exception e) {
-        LOG.error("Can not record Comment for when moves topic " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Comment for when moves topic " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
   };
   
@@ -790,9 +825,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newActivity;
       } catch (Exception e) {
-        LOG.error("Can not record Activity for merged topics " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Activity for merged topics " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
   };
   
@@ -845,9 +879,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return newActivity;
       } catch (Exception e) {
-        LOG.error("Can not record Activity for splited topic " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Activity for splited topic " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
   };
   
@@ -878,9 +911,8 @@ public abstract class TopicActivityTask implements ActivityTask<ForumActivityCon
         
         return a;
       } catch (Exception e) {
-        LOG.error("Can not record Activity for when add topic's title " + ctx.getTopic().getId(), e);
+        throw new ActivityTaskException("Can not record Activity for when add topic's title " + ctx.getTopic().getId(), e);
       }
-      return null;
     }
     
   };
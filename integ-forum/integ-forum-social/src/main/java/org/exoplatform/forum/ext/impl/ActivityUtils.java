@@ -4,6 +4,7 @@ import org.exoplatform.faq.service.Question;
 import org.exoplatform.faq.service.Utils;
 import org.exoplatform.forum.common.CommonUtils;
 import org.exoplatform.forum.ext.activity.ForumActivityBuilder;
+import org.exoplatform.forum.ext.activity.ForumActivityUtils;
 import org.exoplatform.social.core.space.SpaceUtils;
 
 public class ActivityUtils {
@@ -32,7 +33,7 @@ public class ActivityUtils {
   }
   
   public static String processContent(String content) {
-    content = CommonUtils.processBBCode(CommonUtils.decodeSpecialCharToHTMLnumberIgnore(content));
+    content = ForumActivityUtils.processExcerptBBCode(content);
     content = ForumActivityBuilder.getFourFirstLines(content);
     return content;
   }
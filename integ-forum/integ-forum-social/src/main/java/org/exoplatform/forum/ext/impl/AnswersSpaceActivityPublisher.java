@@ -33,18 +33,17 @@ import org.exoplatform.faq.service.Utils;
 import org.exoplatform.faq.service.impl.AnswerEventListener;
 import org.exoplatform.forum.common.CommonUtils;
 import org.exoplatform.forum.common.UserHelper;
+import org.exoplatform.forum.ext.activity.ActivityIdCache;
+import org.exoplatform.forum.ext.activity.ForumActivityUtils;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.identity.model.Identity;
-import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
-import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.manager.ActivityManager;
 import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.processor.I18NActivityUtils;
-import org.exoplatform.social.core.space.model.Space;
-import org.exoplatform.social.core.space.spi.SpaceService;
+import org.exoplatform.social.integration.SearchContentNotifier;
 
 /**
  * @author <a href="mailto:patrice.lamarque@exoplatform.com">Patrice
@@ -66,17 +65,12 @@ public class AnswersSpaceActivityPublisher extends AnswerEventListener {
   public static final String QUESTION_POINT     = "QuestionPoint";
   
   private final static Log LOG = ExoLogger.getExoLogger(AnswersSpaceActivityPublisher.class);
+
+  /** Prefix of the keys of the questions in the activity id cache. */
+  private static final String QUESTION_OWNER    = "question:";
   
   private Identity getSpaceIdentity(String categoryId) {
-    String spaceGroupId = ActivityUtils.getSpaceGroupId(categoryId);
-    if ("".equals(spaceGroupId))
-      return null;
-    IdentityManager identityM = (IdentityManager) ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(IdentityManager.class);
-    SpaceService spaceService  = (SpaceService) ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(SpaceService.class);
-    Space space = spaceService.getSpaceByGroupId(spaceGroupId);
-    if (space != null)
-      return identityM.getOrCreateIdentity(SpaceIdentityProvider.NAME, space.getPrettyName(), false);
-    else return null;
+    return ForumActivityUtils.getSpaceIdentityResolver().getSpaceIdentity(ActivityUtils.getSpaceGroupId(categoryId));
   }
   
   private ExoSocialActivity newActivity(Identity author, String title, String body, Map<String, String> templateParams) {
@@ -149,12 +143,11 @@ public class AnswersSpaceActivityPublisher extends AnswerEventListener {
   public void saveAnswer(String questionId, Answer answer, boolean isNew) {
     try {
       ExoContainer exoContainer = ExoContainerContext.getCurrentContainer();
-      IdentityManager identityM = (IdentityManager) exoContainer.getComponentInstanceOfType(IdentityManager.class);
       ActivityManager activityM = (ActivityManager) exoContainer.getComponentInstanceOfType(ActivityManager.class);
       FAQService faqS = (FAQService) exoContainer.getComponentInstanceOfType(FAQService.class);
       Question question = faqS.getQuestionById(questionId);
-      Identity userIdentity = identityM.getOrCreateIdentity(OrganizationIdentityProvider.NAME,answer.getResponseBy(),false);
-      String activityId = faqS.getActivityIdForQuestion(questionId);
+      Identity userIdentity = ForumActivityUtils.getIdentity(answer.getResponseBy());
+      String activityId = getActivityIdForQuestion(faqS, questionId);
       
       //
       String answerContent = ActivityUtils.processContent(answer.getResponses());
@@ -202,7 +195,7 @@ public class AnswersSpaceActivityPublisher extends AnswerEventListener {
       }
       if (activityId == null) {
         saveQuestion(question, false);
-        String newActivityId = faqS.getActivityIdForQuestion(question.getId());
+        String newActivityId = getActivityIdForQuestion(faqS, question.getId());
         ExoSocialActivity activity = activityM.getActivity(newActivityId);
         ExoSocialActivity comment = createCommentForAnswer(userIdentity, answer);
         if (comment.getTitle().equals("")) {
@@ -215,19 +208,19 @@ public class AnswersSpaceActivityPublisher extends AnswerEventListener {
     } catch (Exception e) { // FQAService
       LOG.error("Can not record Activity for space when post answer ", e);
     }
+    SearchContentNotifier.contentChanged(ForumActivityUtils.ANSWER_SEARCH_TYPE);
   }
 
   @Override
   public void saveComment(String questionId, Comment cm, String language) {
     try {
       ExoContainer exoContainer = ExoContainerContext.getCurrentContainer();
-      IdentityManager identityM = (IdentityManager) exoContainer.getComponentInstanceOfType(IdentityManager.class);
       ActivityManager activityM = (ActivityManager) exoContainer.getComponentInstanceOfType(ActivityManager.class);
       FAQService faqS = (FAQService) exoContainer.getComponentInstanceOfType(FAQService.class);
       Question question = faqS.getQuestionById(questionId);
       String message = ActivityUtils.processContent(cm.getComments());
-      Identity userIdentity = identityM.getOrCreateIdentity(OrganizationIdentityProvider.NAME, cm.getCommentBy(), false);
-      String activityId = faqS.getActivityIdForQuestion(questionId);
+      Identity userIdentity = ForumActivityUtils.getIdentity(cm.getCommentBy());
+      String activityId = getActivityIdForQuestion(faqS, questionId);
       if (activityId != null) {
         try {
           ExoSocialActivity activity = activityM.getActivity(activityId);
@@ -263,7 +256,7 @@ public class AnswersSpaceActivityPublisher extends AnswerEventListener {
       } 
       if (activityId == null) { //Create new activity for the question and add new comment
         saveQuestion(question, false);
-        String newActivityId = faqS.getActivityIdForQuestion(questionId);
+        String newActivityId = getActivityIdForQuestion(faqS, questionId);
         ExoSocialActivity activity = activityM.getActivity(newActivityId);
         ExoSocialActivity comment = new ExoSocialActivityImpl();
         comment.setUserId(userIdentity.getId());
@@ -276,6 +269,7 @@ public class AnswersSpaceActivityPublisher extends AnswerEventListener {
     } catch (Exception e) { //FQAService      
       LOG.error("Can not record Activity for space when post comment ", e);
     }
+    SearchContentNotifier.contentChanged(ForumActivityUtils.ANSWER_SEARCH_TYPE);
 
   }
 
@@ -286,14 +280,14 @@ public class AnswersSpaceActivityPublisher extends AnswerEventListener {
       IdentityManager identityM = (IdentityManager) exoContainer.getComponentInstanceOfType(IdentityManager.class);
       ActivityManager activityM = (ActivityManager) exoContainer.getComponentInstanceOfType(ActivityManager.class);
       FAQService faqS = (FAQService) exoContainer.getComponentInstanceOfType(FAQService.class);
-      Identity userIdentity = identityM.getOrCreateIdentity(OrganizationIdentityProvider.NAME,question.getAuthor(),false);
+      Identity userIdentity = ForumActivityUtils.getIdentity(question.getAuthor());
       Map<String, String> templateParams = updateTemplateParams(new HashMap<String, String>(), question.getId(),
                                                                 ActivityUtils.getQuestionRate(question),
                                                                 ActivityUtils.getNbOfAnswers(question),
                                                                 ActivityUtils.getNbOfComments(question),
                                                                 question.getLanguage(), question.getLink(),
                                                                 Utils.getQuestionPoint(question));
-      String activityId = faqS.getActivityIdForQuestion(question.getId());
+      String activityId = getActivityIdForQuestion(faqS, question.getId());
       
       String questionDetail = ActivityUtils.processContent(question.getDetail());
       //in case deleted activity, if isUpdate, we will re-create new activity and add a comment associated
@@ -336,7 +330,7 @@ public class AnswersSpaceActivityPublisher extends AnswerEventListener {
         }
         ExoSocialActivity activity = newActivity(userIdentity, question.getQuestion(), questionDetail, templateParams);
         activityM.saveActivityNoReturn(streamOwner, activity);
-        faqS.saveActivityIdForQuestion(question.getId(), activity.getId());
+        saveActivityIdForQuestion(faqS, question.getId(), activity.getId());
 
         if (isUpdate) {
           ExoSocialActivity comment = createCommentWhenUpdateQuestion(userIdentity, question);
@@ -348,6 +342,7 @@ public class AnswersSpaceActivityPublisher extends AnswerEventListener {
     } catch (Exception e) { // FQAService
       LOG.error("Can not record Activity for space when add new question ", e);
     }
+    SearchContentNotifier.contentChanged(ForumActivityUtils.ANSWER_SEARCH_TYPE);
   }
 
   @Override
@@ -399,18 +394,20 @@ public class AnswersSpaceActivityPublisher extends AnswerEventListener {
     try {
       ExoContainer exoContainer = ExoContainerContext.getCurrentContainer();
       ActivityManager activityM = (ActivityManager) exoContainer.getComponentInstanceOfType(ActivityManager.class);
+      ForumActivityUtils.getActivityIdCache().removeActivity(questionActivityId);
       ExoSocialActivity activity = activityM.getActivity(questionActivityId);
       activityM.deleteActivity(activity);
     } catch (Exception e) {
       LOG.debug("Fail to remove activity when remove question "+e.getMessage());
     }
+    SearchContentNotifier.contentChanged(ForumActivityUtils.ANSWER_SEARCH_TYPE);
   }
   
   public void removeAnswer(String questionPath, String answerActivityId) {
     try {
       ExoContainer exoContainer = ExoContainerContext.getCurrentContainer();
       FAQService faqS = (FAQService) exoContainer.getComponentInstanceOfType(FAQService.class);
-      String questionActivityId = faqS.getActivityIdForQuestion(questionPath);
+      String questionActivityId = getActivityIdForQuestion(faqS, questionPath);
       ActivityManager activityM = (ActivityManager) exoContainer.getComponentInstanceOfType(ActivityManager.class);
       for (String id : answerActivityId.split(",")) {
         ExoSocialActivity activity = activityM.getActivity(id);
@@ -422,6 +419,7 @@ public class AnswersSpaceActivityPublisher extends AnswerEventListener {
     } catch (Exception e) {
       LOG.debug("Fail to remove comment when remove question's answer "+e.getMessage());
     }
+    SearchContentNotifier.contentChanged(ForumActivityUtils.ANSWER_SEARCH_TYPE);
   }
   
   public void removeComment(String questionActivityId, String commentActivityId, String questionPath) {
@@ -433,6 +431,7 @@ public class AnswersSpaceActivityPublisher extends AnswerEventListener {
     } catch (Exception e) {
       LOG.debug("Fail to remove comment when remove question's comment "+e.getMessage());
     }
+    SearchContentNotifier.contentChanged(ForumActivityUtils.ANSWER_SEARCH_TYPE);
   }
   
   private String getQuestionMessage(PropertyChangeEvent e, Question question, ExoSocialActivity comment) {
@@ -489,6 +488,21 @@ public class AnswersSpaceActivityPublisher extends AnswerEventListener {
     }
   }
   
+  private String getActivityIdForQuestion(FAQService faqS, String questionId) {
+    ActivityIdCache activityIds = ForumActivityUtils.getActivityIdCache();
+    String activityId = activityIds.get(QUESTION_OWNER + questionId);
+    if (activityId == null) {
+      activityId = faqS.getActivityIdForQuestion(questionId);
+      activityIds.put(QUESTION_OWNER + questionId, activityId);
+    }
+    return activityId;
+  }
+  
+  private void saveActivityIdForQuestion(FAQService faqS, String questionId, String activityId) {
+    faqS.saveActivityIdForQuestion(questionId, activityId);
+    ForumActivityUtils.getActivityIdCache().put(QUESTION_OWNER + questionId, activityId);
+  }
+  
   private void refreshActivity(String questionId, String questionActivityId) {
     try {
       ExoContainer exoContainer = ExoContainerContext.getCurrentContainer();
@@ -24,6 +24,7 @@ import org.exoplatform.container.ExoContainer;
 import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.forum.common.CommonUtils;
+import org.exoplatform.forum.ext.activity.ForumActivityUtils;
 import org.exoplatform.forum.service.Category;
 import org.exoplatform.forum.service.Forum;
 import org.exoplatform.forum.service.ForumService;
@@ -154,16 +155,19 @@ public class ForumDataInitialize extends SpaceListenerPlugin {
 
   @Override
   public void spaceCreated(SpaceLifeCycleEvent event) {
-
+    // a group id may have been cached as not being a space
+    forgetSpaceIdentity(event);
   }
 
   @Override
   public void spaceRemoved(SpaceLifeCycleEvent event) {
-
+    forgetSpaceIdentity(event);
   }
 
   @Override
-  public void spaceRenamed(SpaceLifeCycleEvent event) {}
+  public void spaceRenamed(SpaceLifeCycleEvent event) {
+    forgetSpaceIdentity(event);
+  }
 
   @Override
   public void spaceDescriptionEdited(SpaceLifeCycleEvent event) {}
@@ -176,4 +180,11 @@ public class ForumDataInitialize extends SpaceListenerPlugin {
     
   }
 
+  private void forgetSpaceIdentity(SpaceLifeCycleEvent event) {
+    Space space = event.getSpace();
+    if (space != null && space.getGroupId() != null) {
+      ForumActivityUtils.getSpaceIdentityResolver().remove(space.getGroupId());
+    }
+  }
+
 }
@@ -17,10 +17,20 @@
 package org.exoplatform.forum.ext.impl;
 
 import java.beans.PropertyChangeEvent;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.exoplatform.commons.utils.PropertyChangeSupport;
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
 import org.exoplatform.forum.ext.activity.ActivityExecutor;
+import org.exoplatform.forum.ext.activity.ActivityQueue;
 import org.exoplatform.forum.ext.activity.ForumActivityContext;
 import org.exoplatform.forum.ext.activity.ForumActivityUtils;
 import org.exoplatform.forum.ext.activity.PostActivityTask;
@@ -30,18 +40,93 @@ import org.exoplatform.forum.service.Forum;
 import org.exoplatform.forum.service.ForumEventListener;
 import org.exoplatform.forum.service.Post;
 import org.exoplatform.forum.service.Topic;
+import org.exoplatform.forum.service.Utils;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.services.security.ConversationState;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 
 /**
+ * Publishes the forum events as activities of the spaces.
+ * <br>
+ * When the <code>async.enabled</code> parameter is true, the activities are written by the workers of an
+ * {@link ActivityQueue} instead of the thread saving the forum data, in the order of the events of each topic.
+ * The queued events are journaled in <code>journal.dir</code> and replayed from the forum data after a restart.
+ * 
  * @author <a href="mailto:patrice.lamarque@exoplatform.com">Patrice Lamarque</a>
  * @version $Revision$
  */
 public class ForumSpaceActivityPublisher extends ForumEventListener {
   
+  private static final Log   LOG                   = ExoLogger.getLogger(ForumSpaceActivityPublisher.class);
+
   public static final int    APPROVE               = 3;
   public static final int    WAITING               = 5;
   public static final int    HIDDEN                = 9;
 
+  public static final String ASYNC_ENABLED_PARAM   = "async.enabled";
+  public static final String POOL_SIZE_PARAM       = "async.pool-size";
+  public static final String MAX_ATTEMPTS_PARAM    = "async.max-attempts";
+  public static final String BACKOFF_PARAM         = "async.backoff";
+  public static final String REPLAY_DELAY_PARAM    = "async.replay-delay";
+  public static final String JOURNAL_DIR_PARAM     = "journal.dir";
+
+  private static final String JOURNAL_FILE         = "forum-activities.journal";
+
+  /** Number of topics after which the progress is logged when many topics are locked or unlocked at once. */
+  private static final int    BULK_SIZE            = 100;
+
+  private static final String ADD_POST             = "addPost";
+  private static final String UPDATE_POST          = "updatePost";
+  private static final String HIDE_POST            = "hidePost";
+  private static final String UNHIDE_POST          = "unhidePost";
+  private static final String ADD_TOPIC            = "addTopic";
+  private static final String UPDATE_TOPIC         = "updateTopic";
+  private static final String LOCK_TOPIC           = "lockTopic";
+  private static final String MOVE_TOPIC           = "moveTopic";
+  private static final String MERGE_TOPIC          = "mergeTopic";
+  private static final String SPLIT_TOPIC          = "splitTopic";
+
+  /** Prefix of the properties of an {@link #UPDATE_TOPIC} record which are published in a single comment. */
+  private static final String GROUPED_PROPERTY     = "*";
+
+  private final ActivityQueue queue;
+
+  public ForumSpaceActivityPublisher(InitParams params) {
+    if (Boolean.parseBoolean(getParam(params, ASYNC_ENABLED_PARAM, "false"))) {
+      String dir = getParam(params, JOURNAL_DIR_PARAM, null);
+      File journal = null;
+      if (null == dir) {
+        LOG.warn("No " + JOURNAL_DIR_PARAM + " parameter, the queued forum activities will be lost on restart");
+      } else {
+        journal = new File(dir, JOURNAL_FILE);
+      }
+      queue = new ActivityQueue(Integer.parseInt(getParam(params, POOL_SIZE_PARAM, "2")),
+                                journal,
+                                Integer.parseInt(getParam(params, MAX_ATTEMPTS_PARAM, "5")),
+                                Long.parseLong(getParam(params, BACKOFF_PARAM, "1000")));
+      try {
+        queue.start(new ActivityQueue.Replayer() {
+          @Override
+          public ActivityQueue.Job restore(String key, String[] record) throws Exception {
+            return ForumSpaceActivityPublisher.this.restore(record);
+          }
+        }, Long.parseLong(getParam(params, REPLAY_DELAY_PARAM, "30000")));
+      } catch (Exception e) {
+        LOG.error("Can not read the forum activity journal " + journal, e);
+      }
+    } else {
+      queue = null;
+    }
+  }
+
+  /**
+   * Publishes the activities through the given queue, which is already started.
+   */
+  ForumSpaceActivityPublisher(ActivityQueue queue) {
+    this.queue = queue;
+  }
+
   @Override
   public void saveCategory(Category category) {
   }
@@ -54,91 +139,177 @@ public class ForumSpaceActivityPublisher extends ForumEventListener {
   
   @Override
   public void addPost(Post post) {
-    ForumActivityContext ctx = ForumActivityContext.makeContextForAddPost(post);
-    PostActivityTask task = PostActivityTask.ADD_POST;
-    ctx = ForumActivityUtils.processBBCode(ctx);
-    ExoSocialActivity comment = ActivityExecutor.execute(task, ctx);
-    
-    //
-    ForumActivityUtils.takeCommentBack(post, comment);
+    publish(addPostJob(post));
+  }
+  
+  private PublishJob addPostJob(final Post post) {
+    return new PublishJob(post.getTopicId(), ADD_POST, post.getPath()) {
+      /** The comment saved by a failed attempt, only its id is left to store when the job is retried. */
+      private ExoSocialActivity comment;
+
+      @Override
+      protected void execute() {
+        if (null == comment) {
+          ForumActivityContext ctx = ForumActivityContext.makeContextForAddPost(post);
+          PostActivityTask task = PostActivityTask.ADD_POST;
+          ctx = ForumActivityUtils.processBBCode(ctx);
+          comment = ActivityExecutor.execute(task, ctx);
+        }
+        
+        //
+        ForumActivityUtils.takeCommentBack(post, comment);
+      }
+    };
   }
   
   @Override
   public void updatePost(Post post) {
-    ForumActivityContext ctx = ForumActivityContext.makeContextForUpdatePost(post);
-    PostActivityTask task = PostActivityTask.UPDATE_POST;
-    ctx = ForumActivityUtils.processBBCode(ctx);
-    ActivityExecutor.execute(task, ctx);
+    publish(updatePostJob(post));
+  }
+
+  private PublishJob updatePostJob(final Post post) {
+    return new PublishJob(post.getTopicId(), UPDATE_POST, post.getPath()) {
+      @Override
+      protected void execute() {
+        ForumActivityContext ctx = ForumActivityContext.makeContextForUpdatePost(post);
+        PostActivityTask task = PostActivityTask.UPDATE_POST;
+        ctx = ForumActivityUtils.processBBCode(ctx);
+        ActivityExecutor.execute(task, ctx);
+      }
+    };
   }
 
   @Override
   public void updatePost(Post post, int type) {
     switch (type) {
       case HIDDEN:
-        if (post.getIsHidden() == true) {
-          ForumActivityContext ctx = ForumActivityContext.makeContextForUpdatePost(post);
-          PostActivityTask task = PostActivityTask.HIDE_POST;
-          ActivityExecutor.execute(task, ctx);
-        } else {
-          ForumActivityContext ctx = ForumActivityContext.makeContextForUpdatePost(post);
-          PostActivityTask task = PostActivityTask.UNHIDE_POST;
-          ActivityExecutor.execute(task, ctx);
-        }
+        publish(hidePostJob(post, post.getIsHidden()));
         break;
       case WAITING:
-        if (post.getIsWaiting() == true) {
-          ForumActivityContext ctx = ForumActivityContext.makeContextForUpdatePost(post);
-          PostActivityTask task = PostActivityTask.HIDE_POST;
-          ActivityExecutor.execute(task, ctx);
-        } else {
-          ForumActivityContext ctx = ForumActivityContext.makeContextForUpdatePost(post);
-          PostActivityTask task = PostActivityTask.UNHIDE_POST;
-          ActivityExecutor.execute(task, ctx);
-        }
+        publish(hidePostJob(post, post.getIsWaiting()));
         break;
       default:
         return;
     }
   }
+
+  private PublishJob hidePostJob(final Post post, final boolean hide) {
+    return new PublishJob(post.getTopicId(), hide ? HIDE_POST : UNHIDE_POST, post.getPath()) {
+      @Override
+      protected void execute() {
+        ForumActivityContext ctx = ForumActivityContext.makeContextForUpdatePost(post);
+        PostActivityTask task = hide ? PostActivityTask.HIDE_POST : PostActivityTask.UNHIDE_POST;
+        ActivityExecutor.execute(task, ctx);
+      }
+    };
+  }
   
   @Override
   public void addTopic(Topic topic) {
-    ForumActivityContext ctx = ForumActivityContext.makeContextForAddTopic(topic);
-    TopicActivityTask task = TopicActivityTask.ADD_TOPIC;
-    ctx = ForumActivityUtils.processBBCode(ctx);
-    ExoSocialActivity got = ActivityExecutor.execute(task, ctx);
-    
-    //
-    ForumActivityUtils.takeActivityBack(topic, got);
+    publish(addTopicJob(topic));
+  }
+  
+  private PublishJob addTopicJob(final Topic topic) {
+    return new PublishJob(topic.getId(), ADD_TOPIC, topic.getPath()) {
+      /** The activity saved by a failed attempt, only its id is left to store when the job is retried. */
+      private ExoSocialActivity activity;
+
+      @Override
+      protected void execute() {
+        if (null == activity) {
+          ForumActivityContext ctx = ForumActivityContext.makeContextForAddTopic(topic);
+          TopicActivityTask task = TopicActivityTask.ADD_TOPIC;
+          ctx = ForumActivityUtils.processBBCode(ctx);
+          activity = ActivityExecutor.execute(task, ctx);
+        }
+        
+        //
+        ForumActivityUtils.takeActivityBack(topic, activity);
+      }
+    };
   }
   
   @Override
   public void updateTopic(Topic topic) {
-    
-    TopicActivityTask task = null;
-    ForumActivityContext ctx = ForumActivityContext.makeContextForUpdateTopic(topic);
-    
-    updateProperties(topic, ctx);
-    
-    PropertyChangeEvent[] events = topic.getChangeEvent();
-    
-    for (int i = 0; i < events.length; i++) {
-      task = getTaskFromUpdateTopic(events[i], ctx);
-      ActivityExecutor.execute(task, ctx);
+    PropertyChangeSupport newPcs = updateProperties(topic);
+    publish(updateTopicJob(topic, newPcs, topic.getChangeEvent()));
+  }
+  
+  /**
+   * @param newPcs the title and content changes published in a single comment, or null
+   * @param events the other changes, published in a comment each
+   */
+  private PublishJob updateTopicJob(final Topic topic, final PropertyChangeSupport newPcs, final PropertyChangeEvent[] events) {
+    List<String> record = new ArrayList<String>();
+    record.add(UPDATE_TOPIC);
+    record.add(topic.getPath());
+    if (null != newPcs) {
+      for (PropertyChangeEvent event : newPcs.getChangeEvents()) {
+        record.add(GROUPED_PROPERTY + event.getPropertyName());
+      }
+    }
+    for (PropertyChangeEvent event : events) {
+      record.add(event.getPropertyName() + "=" + (event.getNewValue() instanceof Boolean ? event.getNewValue() : ""));
     }
+    return new PublishJob(topic.getId(), record.toArray(new String[record.size()])) {
+      @Override
+      protected void execute() {
+        List<TopicActivityTask> tasks = new ArrayList<TopicActivityTask>();
+        ForumActivityContext ctx = ForumActivityContext.makeContextForUpdateTopic(topic);
+        
+        if (null != newPcs) {
+          ctx.setPcs(newPcs);
+          tasks.add(TopicActivityTask.UPDATE_TOPIC_PROPERTIES);
+          ctx = ForumActivityUtils.processBBCode(ctx);
+        }
+        
+        for (int i = 0; i < events.length; i++) {
+          TopicActivityTask task = getTaskFromUpdateTopic(events[i], ctx);
+          if (null != task) {
+            tasks.add(task);
+          }
+        }
+        
+        //all the changes are applied to the activity at once
+        if (!tasks.isEmpty()) {
+          ActivityExecutor.execute(tasks, ctx);
+        }
+      }
+    };
   }
   
   @Override
   public void updateTopics(List<Topic> topics, boolean isLock) {
+    if (topics.isEmpty()) return;
+    BulkProgress progress = new BulkProgress(isLock ? "locked" : "unlocked", topics.size());
     for (Topic topic : topics) {
-      topic.setIsLock(isLock);
-      ForumActivityContext ctx = ForumActivityContext.makeContextForAddTopic(topic);
-      TopicActivityTask task = TopicActivityTask.UPDATE_FORUM_TOPIC;
-      ActivityExecutor.execute(task, ctx);
+      publish(lockTopicJob(topic, isLock, progress));
     }
   }
   
-  private void updateProperties(Topic topic, ForumActivityContext ctx) {
+  /**
+   * Updates the activity of a topic locked or unlocked with others. A job is queued per topic, after the other
+   * jobs of the topic, so that the activity is not looked up before the job creating it has run.
+   */
+  private PublishJob lockTopicJob(final Topic topic, boolean isLock, final BulkProgress progress) {
+    topic.setIsLock(isLock);
+    return new PublishJob(topic.getId(), LOCK_TOPIC, topic.getPath(), String.valueOf(isLock)) {
+      @Override
+      protected void execute() {
+        ForumActivityContext ctx = ForumActivityContext.makeContextForAddTopic(topic);
+        TopicActivityTask task = TopicActivityTask.UPDATE_FORUM_TOPIC;
+        ActivityExecutor.execute(task, ctx);
+        progress.done();
+      }
+    };
+  }
+  
+  /**
+   * Takes the title and content changes out of the changes of the topic when both happened,
+   * so that they are published in a single comment.
+   * @return the title and content changes, or null
+   */
+  private PropertyChangeSupport updateProperties(Topic topic) {
     PropertyChangeSupport newPcs = new PropertyChangeSupport(topic);
     PropertyChangeSupport pcs = topic.getPcs();
     
@@ -153,47 +324,82 @@ public class ForumSpaceActivityPublisher extends ForumEventListener {
     }
     
     if (newPcs.getChangeEvents().length > 1) {
-      ctx.setPcs(newPcs);
-      
-      //1. executes task
-      TopicActivityTask task = TopicActivityTask.UPDATE_TOPIC_PROPERTIES;
-      ctx = ForumActivityUtils.processBBCode(ctx);
-      ActivityExecutor.execute(task, ctx);
-      //2. remove events
+      //remove events
       pcs.removePropertyChange(Topic.TOPIC_NAME);
       pcs.removePropertyChange(Topic.TOPIC_CONTENT);
+      return newPcs;
     }
-    
+    return null;
   }
   
  
   @Override
   public void moveTopic(Topic topic, String toCategoryName, String toForumName) {
-    ForumActivityContext ctx = ForumActivityContext.makeContextForMoveTopic(topic, toCategoryName, toForumName);
-    TopicActivityTask task = TopicActivityTask.MOVE_TOPIC;
-    ActivityExecutor.execute(task, ctx);
+    publish(moveTopicJob(topic, toCategoryName, toForumName));
+  }
+
+  private PublishJob moveTopicJob(final Topic topic, final String toCategoryName, final String toForumName) {
+    return new PublishJob(topic.getId(), MOVE_TOPIC, topic.getPath(), toCategoryName, toForumName) {
+      @Override
+      protected void execute() {
+        ForumActivityContext ctx = ForumActivityContext.makeContextForMoveTopic(topic, toCategoryName, toForumName);
+        TopicActivityTask task = TopicActivityTask.MOVE_TOPIC;
+        ActivityExecutor.execute(task, ctx);
+      }
+    };
   }
 
   @Override
   public void mergeTopic(Topic newTopic, String removeActivityId1, String removeActivityId2) {
-    ForumActivityContext ctx = ForumActivityContext.makeContextForMergeTopic(newTopic, removeActivityId1, removeActivityId2);
-    TopicActivityTask task = TopicActivityTask.MERGE_TOPIC;
-    ExoSocialActivity got = ActivityExecutor.execute(task, ctx);
-    
-    //
-    ForumActivityUtils.takeActivityBack(ctx.getTopic(), got);
+    publish(mergeTopicJob(newTopic, removeActivityId1, removeActivityId2));
+  }
+
+  private PublishJob mergeTopicJob(final Topic newTopic, final String removeActivityId1, final String removeActivityId2) {
+    return new PublishJob(newTopic.getId(), MERGE_TOPIC, newTopic.getPath(), removeActivityId1, removeActivityId2) {
+      /** The activity saved by a failed attempt, only its id is left to store when the job is retried. */
+      private ExoSocialActivity activity;
+
+      @Override
+      protected void execute() {
+        if (null == activity) {
+          ForumActivityContext ctx = ForumActivityContext.makeContextForMergeTopic(newTopic, removeActivityId1, removeActivityId2);
+          TopicActivityTask task = TopicActivityTask.MERGE_TOPIC;
+          activity = ActivityExecutor.execute(task, ctx);
+        }
+        
+        //
+        ForumActivityUtils.takeActivityBack(newTopic, activity);
+      }
+    };
   }
 
   @Override
   public void splitTopic(Topic newTopic, Topic splitedTopic, String removeActivityId) {
-    /** 1. Call delete activityId*/
-    /** 2. Call add topic*/
-    ForumActivityContext ctx = ForumActivityContext.makeContextForSplitTopic(newTopic, splitedTopic, removeActivityId);
-    TopicActivityTask task = TopicActivityTask.SPLIT_TOPIC;
-    ExoSocialActivity activity = ActivityExecutor.execute(task, ctx);
-    
-    //
-    ForumActivityUtils.takeActivityBack(newTopic, activity);
+    publish(splitTopicJob(newTopic, splitedTopic, removeActivityId));
+  }
+
+  private PublishJob splitTopicJob(final Topic newTopic, final Topic splitedTopic, final String removeActivityId) {
+    return new PublishJob(newTopic.getId(), SPLIT_TOPIC, newTopic.getPath(), splitedTopic.getPath(), removeActivityId) {
+      @Override
+      protected void execute() throws Exception {
+        String activityId = ForumActivityUtils.getActivityIdForOwnerPath(newTopic.getPath());
+        if (!Utils.isEmpty(activityId) && !activityId.equals(removeActivityId)) {
+          //the activities were created by an interrupted run, only the re-attachment of the replies may be left
+          ForumActivityUtils.resumeActivityByTopic(newTopic);
+          ForumActivityUtils.resumeActivityByTopic(splitedTopic);
+          return;
+        }
+        
+        /** 1. Call delete activityId*/
+        /** 2. Call add topic*/
+        ForumActivityContext ctx = ForumActivityContext.makeContextForSplitTopic(newTopic, splitedTopic, removeActivityId);
+        TopicActivityTask task = TopicActivityTask.SPLIT_TOPIC;
+        ExoSocialActivity activity = ActivityExecutor.execute(task, ctx);
+        
+        //
+        ForumActivityUtils.takeActivityBack(newTopic, activity);
+      }
+    };
   }
  
   @Override
@@ -206,6 +412,150 @@ public class ForumSpaceActivityPublisher extends ForumEventListener {
     ForumActivityUtils.removeComment(activityId, commentId);
   }
   
+  private void publish(PublishJob job) {
+    if (null == queue) {
+      try {
+        job.execute();
+      } catch (Exception e) {
+        LOG.error("Can not publish the forum activity " + job.record[0] + " of " + job.key, e);
+      }
+    } else {
+      queue.submit(job.key, job.record, job);
+    }
+  }
+
+  /**
+   * Rebuilds a job read back from the journal with the current forum data.
+   * @return the job, or null if the data it publishes does not exist anymore
+   */
+  private PublishJob restore(String[] record) throws Exception {
+    String action = record[0];
+    if (ADD_POST.equals(action) || UPDATE_POST.equals(action) || HIDE_POST.equals(action) || UNHIDE_POST.equals(action)) {
+      String path = record[1];
+      Post post = ForumActivityUtils.getForumService().getPost(Utils.getCategoryId(path),
+                                                               Utils.getForumId(path),
+                                                               Utils.getTopicId(path),
+                                                               path.substring(path.lastIndexOf('/') + 1));
+      if (null == post) return null;
+      if (ADD_POST.equals(action)) return isPublished(path) ? null : addPostJob(post);
+      if (UPDATE_POST.equals(action)) return updatePostJob(post);
+      return hidePostJob(post, HIDE_POST.equals(action));
+    }
+    Topic topic = getTopic(record[1]);
+    if (null == topic) return null;
+    if (ADD_TOPIC.equals(action)) {
+      return isPublished(record[1]) ? null : addTopicJob(topic);
+    } else if (UPDATE_TOPIC.equals(action)) {
+      PropertyChangeSupport newPcs = null;
+      List<PropertyChangeEvent> events = new ArrayList<PropertyChangeEvent>();
+      for (int i = 2; i < record.length; i++) {
+        if (record[i].startsWith(GROUPED_PROPERTY)) {
+          if (null == newPcs) newPcs = new PropertyChangeSupport(topic);
+          newPcs.addPropertyChange(new PropertyChangeEvent(topic, record[i].substring(GROUPED_PROPERTY.length()), null, null));
+        } else {
+          int eq = record[i].indexOf('=');
+          String value = record[i].substring(eq + 1);
+          events.add(new PropertyChangeEvent(topic, record[i].substring(0, eq), null, value.length() == 0 ? null : Boolean.valueOf(value)));
+        }
+      }
+      return updateTopicJob(topic, newPcs, events.toArray(new PropertyChangeEvent[events.size()]));
+    } else if (LOCK_TOPIC.equals(action)) {
+      boolean isLock = Boolean.parseBoolean(record[2]);
+      return lockTopicJob(topic, isLock, new BulkProgress(isLock ? "locked" : "unlocked", 1));
+    } else if (MOVE_TOPIC.equals(action)) {
+      return moveTopicJob(topic, record[2], record[3]);
+    } else if (MERGE_TOPIC.equals(action)) {
+      return isPublished(record[1], record[2], record[3]) ? null : mergeTopicJob(topic, record[2], record[3]);
+    } else if (SPLIT_TOPIC.equals(action)) {
+      Topic splitedTopic = getTopic(record[2]);
+      return null == splitedTopic ? null : splitTopicJob(topic, splitedTopic, record[3]);
+    }
+    LOG.warn("Unknown forum activity job " + action);
+    return null;
+  }
+
+  /**
+   * Tells whether a journaled job was done before the restart: the social writes can not be made twice,
+   * so the job is not replayed once the activity or comment it creates is bound to its owner.
+   * @param ownerPath the path of the post or topic
+   * @param previousIds the ids of the activities the job replaces, which do not count as published
+   */
+  private boolean isPublished(String ownerPath, String... previousIds) {
+    String activityId = ForumActivityUtils.getActivityIdForOwnerPath(ownerPath);
+    if (Utils.isEmpty(activityId)) return false;
+    for (String previousId : previousIds) {
+      if (activityId.equals(previousId)) return false;
+    }
+    return true;
+  }
+
+  private Topic getTopic(String path) throws Exception {
+    return ForumActivityUtils.getForumService().getTopic(Utils.getCategoryId(path), Utils.getForumId(path), Utils.getTopicId(path), "");
+  }
+
+  private static String getParam(InitParams params, String name, String defaultValue) {
+    ValueParam param = null != params ? params.getValueParam(name) : null;
+    if (null == param || null == param.getValue() || param.getValue().trim().length() == 0) return defaultValue;
+    return param.getValue().trim();
+  }
+
+  /**
+   * Reports the progress of the update of the activities of many topics.
+   */
+  private static class BulkProgress {
+    private final String action;
+    private final int total;
+    private final AtomicInteger done = new AtomicInteger();
+
+    private BulkProgress(String action, int total) {
+      this.action = action;
+      this.total = total;
+    }
+
+    private void done() {
+      int got = done.incrementAndGet();
+      if (total > BULK_SIZE && (got % BULK_SIZE == 0 || got == total)) {
+        LOG.info("Activities of " + got + "/" + total + " " + action + " topics updated");
+      }
+    }
+  }
+
+  /**
+   * An activity publication, run in the container and as the user of the forum event, within a request life cycle.
+   */
+  private abstract static class PublishJob implements ActivityQueue.Job {
+    private final String key;
+    private final String[] record;
+    private final ExoContainer container;
+    private final ConversationState state;
+
+    private PublishJob(String key, String... record) {
+      this.key = key;
+      this.record = record;
+      ExoContainer current = ExoContainerContext.getCurrentContainerIfPresent();
+      this.container = null != current ? current : PortalContainer.getInstance();
+      this.state = ConversationState.getCurrent();
+    }
+
+    protected abstract void execute() throws Exception;
+
+    @Override
+    public void run() throws Exception {
+      ExoContainer previousContainer = ExoContainerContext.getCurrentContainerIfPresent();
+      ConversationState previousState = ConversationState.getCurrent();
+      ExoContainerContext.setCurrentContainer(container);
+      ConversationState.setCurrent(state);
+      RequestLifeCycle.begin(container);
+      try {
+        execute();
+      } finally {
+        RequestLifeCycle.end();
+        ConversationState.setCurrent(previousState);
+        ExoContainerContext.setCurrentContainer(previousContainer);
+      }
+    }
+  }
+  
   private TopicActivityTask getTaskFromUpdateTopic(PropertyChangeEvent event, ForumActivityContext ctx) {
     TopicActivityTask got = null;
     if (Topic.TOPIC_NAME.equals(event.getPropertyName())) {
@@ -21,6 +21,8 @@ import java.util.Map;
 
 import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.forum.common.CommonUtils;
+import org.exoplatform.forum.ext.activity.ActivityIdCache;
+import org.exoplatform.forum.ext.activity.ForumActivityUtils;
 import org.exoplatform.poll.service.Poll;
 import org.exoplatform.poll.service.PollEventListener;
 import org.exoplatform.poll.service.PollService;
@@ -31,14 +33,9 @@ import org.exoplatform.services.security.ConversationState;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.identity.model.Identity;
-import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
-import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.manager.ActivityManager;
-import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.processor.I18NActivityUtils;
 import org.exoplatform.social.core.space.SpaceUtils;
-import org.exoplatform.social.core.space.model.Space;
-import org.exoplatform.social.core.space.spi.SpaceService;
 
 public class PollSpaceActivityPublisher extends PollEventListener{
 
@@ -51,6 +48,9 @@ public class PollSpaceActivityPublisher extends PollEventListener{
   
   public static final String POLL_ID = "Id";
   
+  /** Prefix of the keys of the poll owners in the activity id cache. */
+  private static final String POLL_OWNER            = "poll:";
+  
   private ExoSocialActivity activity(Identity author, String title, String body, Map<String, String> templateParams) throws Exception {
     ExoSocialActivity activity = new ExoSocialActivityImpl();
     activity.setUserId(author.getId());
@@ -80,12 +80,11 @@ public class PollSpaceActivityPublisher extends PollEventListener{
   
   private void savePollForActivity(Poll poll, boolean isNew, boolean isVote) {
     PollService pollService = (PollService) ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(PollService.class);
-    IdentityManager identityManager = (IdentityManager) ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(IdentityManager.class);
     try {
-      Identity pollOwnerIdentity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, poll.getOwner(), false);
+      Identity pollOwnerIdentity = ForumActivityUtils.getIdentity(poll.getOwner());
       Map<String, String> templateParams = new HashMap<String, String>();
       String pollPath = poll.getParentPath()+"/"+poll.getId();
-      String activityId = pollService.getActivityIdForOwner(pollPath);
+      String activityId = getActivityIdForOwner(pollService, pollPath);
       if (activityId != null) {
         ExoSocialActivity activity = getManager().getActivity(activityId);
         if (activity != null) {
@@ -100,7 +99,7 @@ public class PollSpaceActivityPublisher extends PollEventListener{
             ExoSocialActivity comment = createComment();
             String userId = getCurrentUserId();
             if (userId != null && ! userId.equals(pollOwnerIdentity.getRemoteId())) {
-              Identity currentIdentity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, userId, false); 
+              Identity currentIdentity = ForumActivityUtils.getIdentity(userId); 
               comment.setUserId(currentIdentity.getId());
             } else {
               comment.setUserId(pollOwnerIdentity.getId());
@@ -108,6 +107,7 @@ public class PollSpaceActivityPublisher extends PollEventListener{
             getManager().saveComment(activity, comment);
           }
         } else {
+          ForumActivityUtils.getActivityIdCache().removeActivity(activityId);
           activityId = null;
           poll.setInfoVote();
         }
@@ -131,7 +131,7 @@ public class PollSpaceActivityPublisher extends PollEventListener{
           ExoSocialActivity comment = createComment();
           String userId = getCurrentUserId();
           if (userId != null && ! userId.equals(pollOwnerIdentity.getRemoteId())) {
-            Identity currentIdentity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, userId, false); 
+            Identity currentIdentity = ForumActivityUtils.getIdentity(userId); 
             comment.setUserId(currentIdentity.getId());
           } else {
             comment.setUserId(pollOwnerIdentity.getId());
@@ -139,10 +139,10 @@ public class PollSpaceActivityPublisher extends PollEventListener{
           getManager().saveComment(newActivity, comment);
         }
         
-        if (pollService.getActivityIdForOwner(pollPath) == null) {
+        if (getActivityIdForOwner(pollService, pollPath) == null) {
           saveCommentToTopicActivity(poll, "A poll has been added to the topic.", "forum.add-poll");
         }
-        pollService.saveActivityIdForOwner(pollPath, newActivity.getId());
+        saveActivityIdForOwner(pollService, pollPath, newActivity.getId());
       }
     } catch (Exception e) {
       LOG.error("Can not record Activity for space when create poll ", e.getMessage());
@@ -151,17 +151,16 @@ public class PollSpaceActivityPublisher extends PollEventListener{
   
   public void saveCommentToTopicActivity(Poll poll, String title, String titleId) {
     PollService pollService = (PollService) ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(PollService.class);
-    IdentityManager identityManager = (IdentityManager) ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(IdentityManager.class);
-    String topicActivityId = pollService.getActivityIdForOwner(poll.getParentPath());
+    String topicActivityId = getActivityIdForOwner(pollService, poll.getParentPath());
     if (topicActivityId != null) {
       ExoSocialActivity topicActivity = getManager().getActivity(topicActivityId);
       if (poll.isInTopic() && topicActivity != null) {
         ExoSocialActivityImpl comment = new ExoSocialActivityImpl();
-        Identity pollOwnerIdentity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, poll.getOwner(), false);
+        Identity pollOwnerIdentity = ForumActivityUtils.getIdentity(poll.getOwner());
         
         String userId = getCurrentUserId();
         if (userId != null && ! userId.equals(pollOwnerIdentity.getRemoteId())) {
-          Identity currentIdentity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, userId, false); 
+          Identity currentIdentity = ForumActivityUtils.getIdentity(userId); 
           comment.setUserId(currentIdentity.getId());
         } else {
           comment.setUserId(pollOwnerIdentity.getId());
@@ -188,7 +187,8 @@ public class PollSpaceActivityPublisher extends PollEventListener{
       PollService pollService = (PollService) ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(PollService.class);
       Poll poll = pollService.getPoll(pollId);
       String pollPath = poll.getParentPath()+"/"+poll.getId();
-      String activityId = pollService.getActivityIdForOwner(pollPath);
+      String activityId = getActivityIdForOwner(pollService, pollPath);
+      ForumActivityUtils.getActivityIdCache().removeActivity(activityId);
       ExoSocialActivity activity = getManager().getActivity(activityId);
       getManager().deleteActivity(activity);
       saveCommentToTopicActivity(poll, "Poll has been removed.", "forum.remove-poll");
@@ -197,6 +197,21 @@ public class PollSpaceActivityPublisher extends PollEventListener{
     }
   }
   
+  private String getActivityIdForOwner(PollService pollService, String ownerPath) {
+    ActivityIdCache activityIds = ForumActivityUtils.getActivityIdCache();
+    String activityId = activityIds.get(POLL_OWNER + ownerPath);
+    if (activityId == null) {
+      activityId = pollService.getActivityIdForOwner(ownerPath);
+      activityIds.put(POLL_OWNER + ownerPath, activityId);
+    }
+    return activityId;
+  }
+  
+  private void saveActivityIdForOwner(PollService pollService, String ownerPath, String activityId) {
+    pollService.saveActivityIdForOwner(ownerPath, activityId);
+    ForumActivityUtils.getActivityIdCache().put(POLL_OWNER + ownerPath, activityId);
+  }
+  
   private ActivityManager getManager() {
     return (ActivityManager) ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(ActivityManager.class);
   }
@@ -211,16 +226,7 @@ public class PollSpaceActivityPublisher extends PollEventListener{
   }
   
   private Identity getSpaceIdentity(Poll poll) {
-    IdentityManager identityM = (IdentityManager) ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(IdentityManager.class);
-    String path = poll.getParentPath();
-    String spaceGroupId = getSpaceGroupId(path);
-    if ("".equals(spaceGroupId)) {
-      return null;
-    } else {
-      SpaceService spaceService  = (SpaceService) ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(SpaceService.class);
-      Space space = spaceService.getSpaceByGroupId(spaceGroupId);
-      return identityM.getOrCreateIdentity(SpaceIdentityProvider.NAME, space.getPrettyName(), false);
-    }
+    return ForumActivityUtils.getSpaceIdentityResolver().getSpaceIdentity(getSpaceGroupId(poll.getParentPath()));
   }
   
 }
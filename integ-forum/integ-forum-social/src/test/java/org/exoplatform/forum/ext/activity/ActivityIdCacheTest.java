@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.forum.ext.activity;
+
+import junit.framework.TestCase;
+
+public class ActivityIdCacheTest extends TestCase {
+
+  public void testLeastRecentlyUsedOwnerIsEvicted() throws Exception {
+    ActivityIdCache cache = new ActivityIdCache(2);
+    cache.put("topic1", "a1");
+    cache.put("topic2", "a2");
+    assertEquals("a1", cache.get("topic1"));
+    cache.put("topic3", "a3");
+    assertEquals(2, cache.size());
+    assertNull(cache.get("topic2"));
+    assertEquals("a1", cache.get("topic1"));
+    assertEquals("a3", cache.get("topic3"));
+  }
+
+  public void testDeletedActivityIsDropped() throws Exception {
+    ActivityIdCache cache = new ActivityIdCache(10);
+    cache.put("topic1", "a1");
+    cache.put("topic1/post1", "c1");
+    cache.put("topic1/post2", "c2");
+    cache.removeActivity("c1");
+    assertNull(cache.get("topic1/post1"));
+    assertEquals("c2", cache.get("topic1/post2"));
+    cache.put("topic1", "");
+    assertNull(cache.get("topic1"));
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.forum.ext.activity;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class ActivityQueueTest extends TestCase {
+
+  private File journal;
+
+  @Override
+  protected void setUp() throws Exception {
+    journal = File.createTempFile("forum-activities", ".journal");
+    journal.delete();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    journal.delete();
+  }
+
+  public void testJobsOfAKeyRunInOrder() throws Exception {
+    ActivityQueue queue = new ActivityQueue(4, journal, 1, 1);
+    queue.start(null, 0);
+    final List<String> done = Collections.synchronizedList(new ArrayList<String>());
+    final CountDownLatch latch = new CountDownLatch(200);
+    for (int i = 0; i < 100; i++) {
+      for (final String key : new String[] { "topic1", "topic2" }) {
+        final int index = i;
+        queue.submit(key, new String[] { "addPost", key + "/post" + i }, new ActivityQueue.Job() {
+          @Override
+          public void run() throws Exception {
+            done.add(key + ":" + index);
+            latch.countDown();
+          }
+        });
+      }
+    }
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    queue.stop(1000);
+    List<String> topic1 = new ArrayList<String>();
+    for (String job : done) {
+      if (job.startsWith("topic1:")) topic1.add(job);
+    }
+    for (int i = 0; i < 100; i++) {
+      assertEquals("topic1:" + i, topic1.get(i));
+    }
+    assertTrue(ActivityQueue.read(journal).isEmpty());
+  }
+
+  public void testFailedJobIsRetriedBeforeTheNextOnes() throws Exception {
+    ActivityQueue queue = new ActivityQueue(2, journal, 3, 1);
+    queue.start(null, 0);
+    final List<String> done = Collections.synchronizedList(new ArrayList<String>());
+    final AtomicInteger attempts = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(1);
+    queue.submit("topic1", new String[] { "addTopic" }, new ActivityQueue.Job() {
+      @Override
+      public void run() throws Exception {
+        if (attempts.incrementAndGet() < 3) throw new IllegalStateException("activity store unavailable");
+        done.add("addTopic");
+      }
+    });
+    queue.submit("topic1", new String[] { "addPost" }, new ActivityQueue.Job() {
+      @Override
+      public void run() throws Exception {
+        done.add("addPost");
+        latch.countDown();
+      }
+    });
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    queue.stop(1000);
+    assertEquals(3, attempts.get());
+    assertEquals("addTopic", done.get(0));
+    assertEquals("addPost", done.get(1));
+  }
+
+  public void testPendingJobsAreReplayed() throws Exception {
+    final ActivityQueue stopped = new ActivityQueue(1, journal, 1, 1);
+    stopped.start(null, 0);
+    final AtomicInteger pending = new AtomicInteger();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    stopped.submit("topic1", new String[] { "addTopic", "cat/forum/topic1" }, new ActivityQueue.Job() {
+      @Override
+      public void run() throws Exception {
+        started.countDown();
+        release.await();
+        pending.set(ActivityQueue.read(journal).size());
+        //the queue stops before the next job runs
+        stopped.stop(0);
+      }
+    });
+    stopped.submit("topic1", new String[] { "moveTopic", "cat/forum/topic1", "New category", null }, new ActivityQueue.Job() {
+      @Override
+      public void run() throws Exception {
+        fail("the queue is stopped");
+      }
+    });
+    //the queue must not be stopped before the first job starts
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    release.countDown();
+    stopped.stop(10000);
+    assertEquals(2, pending.get());
+
+    final List<String[]> replayed = new ArrayList<String[]>();
+    ActivityQueue queue = new ActivityQueue(1, journal, 1, 1);
+    final CountDownLatch latch = new CountDownLatch(1);
+    queue.start(new ActivityQueue.Replayer() {
+      @Override
+      public ActivityQueue.Job restore(String key, String[] record) throws Exception {
+        replayed.add(record);
+        latch.countDown();
+        return null;
+      }
+    }, 0);
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    queue.stop(1000);
+    assertEquals(1, replayed.size());
+    assertEquals("moveTopic", replayed.get(0)[0]);
+    assertEquals("New category", replayed.get(0)[2]);
+    assertNull(replayed.get(0)[3]);
+    assertTrue(ActivityQueue.read(journal).isEmpty());
+  }
+
+  public void testRecordsSurviveTheJournal() throws Exception {
+    String[][] records = { { "mergeTopic", "cat/forum/topic1", "" },
+                           { "splitTopic", "cat/forum/topic1", "-" },
+                           { "moveTopic", "cat/forum/topic1", "%", null },
+                           { "addPost", "", "a b+c%20d", "" } };
+    for (String[] record : records) {
+      String[] fields = ActivityQueue.decode(ActivityQueue.encode("topic1", record));
+      assertEquals(record.length + 1, fields.length);
+      assertEquals("topic1", fields[0]);
+      for (int i = 0; i < record.length; i++) {
+        assertEquals(record[i], fields[i + 1]);
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.forum.ext.activity;
+
+import junit.framework.TestCase;
+
+public class BBCodeTruncatorTest extends TestCase {
+
+  public void testContentIsCutOverBudget() throws Exception {
+    String content = "[b]short[/b] <p>content</p>";
+    assertTrue(content == BBCodeTruncator.truncate(content, 12));
+    assertEquals("[b]short[/b] <p>conten", BBCodeTruncator.truncate(content, 11));
+    assertNull(BBCodeTruncator.truncate(null, 10));
+  }
+
+  public void testMarkupIsNotCounted() throws Exception {
+    String content = "<p class=\"x\">[url=http://exoplatform.com]abc[/url]</p> &amp; [img]http://host/image.png[/img]de";
+    assertTrue(content == BBCodeTruncator.truncate(content, 6));
+    assertEquals("<p class=\"x\">[url=http://exoplatform.com]abc[/url]</p> &amp; [img]http://host/image.png[/img]d",
+                 BBCodeTruncator.truncate(content, 5));
+  }
+
+  public void testOpenTagsAreClosed() throws Exception {
+    String content = "[quote=john][B]abc[/B] [i]defgh[/i][/quote]";
+    assertEquals("[quote=john][B]abc[/B] [i]de[/i][/quote]", BBCodeTruncator.truncate(content, 5));
+  }
+
+  public void testScriptIsNotCounted() throws Exception {
+    String content = "<script>var a = 1;</script>abcdefghij";
+    assertEquals("<script>var a = 1;</script>abc", BBCodeTruncator.truncate(content, 3));
+  }
+
+  public void testBracketsWhichAreNotTagsAreCounted() throws Exception {
+    assertEquals("[1] [", BBCodeTruncator.truncate("[1] [*] a < b", 4));
+  }
+}
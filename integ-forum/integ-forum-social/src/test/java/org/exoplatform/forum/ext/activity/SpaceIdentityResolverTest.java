@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.forum.ext.activity;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
+
+public class SpaceIdentityResolverTest extends TestCase {
+
+  private final Map<String, Identity> spaces = new HashMap<String, Identity>();
+
+  private int loads;
+
+  private SpaceIdentityResolver newResolver(int maxSize) {
+    return new SpaceIdentityResolver(maxSize, SpaceIdentityResolver.DEFAULT_TIME_TO_LIVE) {
+      @Override
+      protected Identity loadSpaceIdentity(String spaceGroupId) {
+        loads++;
+        return spaces.get(spaceGroupId);
+      }
+    };
+  }
+
+  public void testMissingSpaceIsCached() throws Exception {
+    SpaceIdentityResolver resolver = newResolver(10);
+    assertNull(resolver.getSpaceIdentity("/spaces/removed"));
+    assertNull(resolver.getSpaceIdentity("/spaces/removed"));
+    assertEquals(1, loads);
+    assertNull(resolver.getSpaceIdentity(""));
+    assertEquals(1, loads);
+  }
+
+  public void testRemovedEntryIsLoadedAgain() throws Exception {
+    SpaceIdentityResolver resolver = newResolver(10);
+    Identity space = new Identity(SpaceIdentityProvider.NAME, "space1");
+    spaces.put("/spaces/space1", space);
+    assertTrue(space == resolver.getSpaceIdentity("/spaces/space1"));
+    Identity renamed = new Identity(SpaceIdentityProvider.NAME, "space_one");
+    spaces.put("/spaces/space1", renamed);
+    assertTrue(space == resolver.getSpaceIdentity("/spaces/space1"));
+    resolver.remove("/spaces/space1");
+    assertTrue(renamed == resolver.getSpaceIdentity("/spaces/space1"));
+    assertEquals(2, loads);
+  }
+
+  public void testSizeIsBounded() throws Exception {
+    SpaceIdentityResolver resolver = newResolver(2);
+    resolver.getSpaceIdentity("/spaces/a");
+    resolver.getSpaceIdentity("/spaces/b");
+    resolver.getSpaceIdentity("/spaces/c");
+    assertEquals(2, resolver.size());
+  }
+}
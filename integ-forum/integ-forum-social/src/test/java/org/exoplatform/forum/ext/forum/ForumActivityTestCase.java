@@ -17,15 +17,20 @@
 package org.exoplatform.forum.ext.forum;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.exoplatform.commons.utils.ListAccess;
 import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.forum.ext.activity.ForumActivityBuilder;
+import org.exoplatform.forum.ext.activity.ForumActivityUtils;
 import org.exoplatform.forum.service.MessageBuilder;
 import org.exoplatform.forum.service.Post;
 import org.exoplatform.forum.service.Topic;
 import org.exoplatform.forum.service.impl.model.PostFilter;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.manager.ActivityManager;
 import org.junit.FixMethodOrder;
 import org.junit.runners.MethodSorters;
@@ -96,6 +101,32 @@ public class ForumActivityTestCase extends BaseForumActivityTestCase {
     //assertEquals("message2", list2.load(0, 10)[0].getTitle());
   }
 
+  public void testResumedReattachmentSkipsHandledPosts() throws Exception {
+    Topic topic = forumService.getTopic(categoryId, forumId, topicId, "");
+    Post post1 = createdPost("name1", "message1");
+    Post post2 = createdPost("name2", "message2");
+    Post post3 = createdPost("name3", "message3");
+    forumService.savePost(categoryId, forumId, topicId, post1, true, new MessageBuilder());
+    forumService.savePost(categoryId, forumId, topicId, post2, true, new MessageBuilder());
+    forumService.savePost(categoryId, forumId, topicId, post3, true, new MessageBuilder());
+    int size = forumService.getPosts(new PostFilter(categoryId, forumId, topicId, "", "", "", "")).getSize();
+
+    //a re-attachment interrupted after the comments of post1 and post2
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("resumed");
+    Map<String, String> templateParams = new HashMap<String, String>();
+    templateParams.put(ForumActivityUtils.REATTACHED_POSTS_KEY, (size - 1) + ":2");
+    activity.setTemplateParams(templateParams);
+    getManager().saveActivityNoReturn(ForumActivityUtils.getIdentity(topic.getOwner()), activity);
+
+    ForumActivityUtils.updateActivityByTopic(topic, activity);
+
+    activity = getManager().getActivity(activity.getId());
+    assertEquals(1, getManager().getCommentsWithListAccess(activity).getSize());
+    assertEquals("3", activity.getTemplateParams().get(ForumActivityBuilder.TOPIC_POST_COUNT_KEY));
+    assertFalse(activity.getTemplateParams().containsKey(ForumActivityUtils.REATTACHED_POSTS_KEY));
+  }
+
   private ActivityManager getManager() {
     return (ActivityManager) ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(ActivityManager.class);
   }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.forum.ext.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.exoplatform.forum.ext.activity.ActivityQueue;
+import org.exoplatform.forum.ext.forum.BaseForumActivityTestCase;
+import org.exoplatform.forum.service.Post;
+
+public class ForumSpaceActivityPublisherTest extends BaseForumActivityTestCase {
+
+  private static final int MAX_ATTEMPTS = 3;
+
+  public void testFailedPublicationIsRetried() throws Exception {
+    final AtomicInteger attempts = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(MAX_ATTEMPTS);
+    ActivityQueue queue = new ActivityQueue(1, null, MAX_ATTEMPTS, 1) {
+      @Override
+      public void submit(String key, String[] record, final Job job) {
+        super.submit(key, record, new Job() {
+          @Override
+          public void run() throws Exception {
+            attempts.incrementAndGet();
+            latch.countDown();
+            job.run();
+          }
+        });
+      }
+    };
+    queue.start(null, 0);
+    ForumSpaceActivityPublisher publisher = new ForumSpaceActivityPublisher(queue);
+
+    //the topic of the post does not exist: the comment can not be saved
+    Post post = createdPost("name", "message");
+    post.setPath(categoryId + "/" + forumId + "/topicunknown/" + post.getId());
+    publisher.addPost(post);
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    queue.stop(1000);
+    assertEquals(MAX_ATTEMPTS, attempts.get());
+    assertEquals(0, queue.getPendingCount()); //dropped after the last attempt
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Latency added to a synthetic connector call, parsed from a JMH parameter:
+ * <ul>
+ * <li><code>none</code>: no latency</li>
+ * <li><code>fixed:5</code>: always 5 ms</li>
+ * <li><code>uniform:2-10</code>: between 2 and 10 ms</li>
+ * <li><code>exponential:5</code>: 5 ms on average, with a long tail</li>
+ * </ul>
+ */
+public abstract class LatencyDistribution {
+
+  public static final LatencyDistribution NONE = new LatencyDistribution() {
+    @Override
+    public long nextDelay(Random random) {
+      return 0;
+    }
+  };
+
+  /**
+   * @param random the random generator of the calling thread
+   * @return the next delay, in microseconds
+   */
+  public abstract long nextDelay(Random random);
+
+  public void sleep(Random random) throws InterruptedException {
+    long delay = nextDelay(random);
+    if (delay > 0) Thread.sleep(delay / 1000, (int) (delay % 1000) * 1000);
+  }
+
+  public static LatencyDistribution parse(String spec) {
+    if (null == spec || spec.isEmpty() || "none".equals(spec)) return NONE;
+    int colon = spec.indexOf(':');
+    if (colon == -1) throw new IllegalArgumentException("Invalid latency distribution: " + spec);
+    String type = spec.substring(0, colon);
+    String value = spec.substring(colon + 1);
+    if ("fixed".equals(type)) {
+      final long delay = toMicros(value);
+      return new LatencyDistribution() {
+        @Override
+        public long nextDelay(Random random) {
+          return delay;
+        }
+      };
+    } else if ("uniform".equals(type)) {
+      int dash = value.indexOf('-');
+      final long min = toMicros(value.substring(0, dash));
+      final long max = toMicros(value.substring(dash + 1));
+      return new LatencyDistribution() {
+        @Override
+        public long nextDelay(Random random) {
+          return min + (long) (random.nextDouble() * (max - min));
+        }
+      };
+    } else if ("exponential".equals(type)) {
+      final long mean = toMicros(value);
+      return new LatencyDistribution() {
+        @Override
+        public long nextDelay(Random random) {
+          return (long) (-mean * Math.log(1 - random.nextDouble()));
+        }
+      };
+    }
+    throw new IllegalArgumentException("Invalid latency distribution: " + spec);
+  }
+
+  private static long toMicros(String millis) {
+    return (long) (Double.parseDouble(millis.trim()) * 1000);
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.exoplatform.commons.search.driver.jcr.FuzzyQueryRewriter;
+import org.exoplatform.commons.search.driver.jcr.SearchQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing and fuzzy rewriting of the queries, done once per search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QueryParsingBenchmark {
+
+  @Param({ "proj", "project meeting notes", "\"weekly meeting\" project~0.8 notes~ \"release plan\"" })
+  public String query;
+
+  private FuzzyQueryRewriter rewriter;
+
+  @Setup
+  public void setUp() {
+    rewriter = new FuzzyQueryRewriter(true, 0.5);
+  }
+
+  @Benchmark
+  public SearchQuery parse() {
+    return SearchQuery.parse(query);
+  }
+
+  @Benchmark
+  public String rewrite() {
+    return rewriter.rewrite(SearchQuery.parse(query));
+  }
+
+  @Benchmark
+  public String normalize() {
+    return SearchQuery.parse(query).toString();
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.exoplatform.commons.api.search.data.SearchResult;
+import org.exoplatform.commons.search.service.UnifiedSearchService;
+import org.exoplatform.ws.frameworks.json.JsonWriter;
+import org.exoplatform.ws.frameworks.json.impl.JsonGeneratorImpl;
+import org.exoplatform.ws.frameworks.json.impl.JsonWriterImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * What the REST service does with the results once the connectors answered: URL rewriting and JSON serialization,
+ * of the whole map at once and connector by connector as in the streaming mode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseBenchmark {
+
+  private static final String BASE_URI = "http://localhost:8080";
+
+  @Param({ "4", "10" })
+  public int connectors;
+
+  @Param({ "10", "50" })
+  public int resultCount;
+
+  private Map<String, Collection<SearchResult>> results;
+  private JsonGeneratorImpl generator;
+
+  @Setup(Level.Invocation)
+  public void setUp() {
+    //the rewriting changes the results, they are generated again before each call
+    results = new HashMap<String, Collection<SearchResult>>();
+    for (int i = 0; i < connectors; i++) {
+      SyntheticSearchConnector connector = new SyntheticSearchConnector("synthetic" + i, resultCount, LatencyDistribution.NONE);
+      results.put(connector.getSearchType(), connector.search(null, "project", null, 0, resultCount, "relevancy", "desc"));
+    }
+    generator = new JsonGeneratorImpl();
+  }
+
+  @Benchmark
+  public Map<String, Collection<SearchResult>> rewriteUrls() {
+    for (Collection<SearchResult> typeResults : results.values()) {
+      for (SearchResult result : typeResults) {
+        UnifiedSearchService.toAbsoluteUrls(result, BASE_URI);
+      }
+    }
+    return results;
+  }
+
+  @Benchmark
+  public byte[] serialize() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonWriter writer = new JsonWriterImpl(out);
+    generator.createJsonObjectFromMap(results).writeTo(writer);
+    writer.flush();
+    return out.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] serializeStreaming() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonWriter writer = new JsonWriterImpl(out);
+    writer.writeStartObject();
+    for (Map.Entry<String, Collection<SearchResult>> entry : results.entrySet()) {
+      writer.writeKey(entry.getKey());
+      writer.writeStartArray();
+      for (SearchResult result : entry.getValue()) {
+        UnifiedSearchService.toAbsoluteUrls(result, BASE_URI);
+        generator.createJsonObject(result).writeTo(writer);
+      }
+      writer.writeEndArray();
+      writer.flush();
+    }
+    writer.writeEndObject();
+    writer.flush();
+    return out.toByteArray();
+  }
+}
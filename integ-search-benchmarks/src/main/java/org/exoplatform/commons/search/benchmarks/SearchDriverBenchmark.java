@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.exoplatform.commons.api.search.data.SearchContext;
+import org.exoplatform.commons.api.search.data.SearchResult;
+import org.exoplatform.commons.search.service.search.EventSearchConnector;
+import org.exoplatform.commons.search.service.search.PeopleSearchConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A whole {@link org.exoplatform.commons.search.driver.jcr.JcrSearchDriver#search} call: query rewriting,
+ * fan-out to the connectors and collection of their results.
+ * <br>
+ * The connectors are the people and event connectors of the service tests plus synthetic ones,
+ * with the given result count and latency distribution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchDriverBenchmark {
+
+  private static final List<String> ALL_TYPES = Arrays.asList("all");
+  private static final List<String> SITES = Arrays.asList("intranet", "acme");
+
+  @Param({ "2", "8" })
+  public int syntheticConnectors;
+
+  @Param({ "10", "50" })
+  public int resultCount;
+
+  @Param({ "none", "exponential:2", "uniform:1-10" })
+  public String latency;
+
+  private SearchDriverFixture fixture;
+  private SearchContext context;
+
+  @Setup
+  public void setUp() {
+    LatencyDistribution distribution = LatencyDistribution.parse(latency);
+    List<SyntheticSearchConnector> connectors = new ArrayList<SyntheticSearchConnector>();
+    connectors.add(new SyntheticSearchConnector(new PeopleSearchConnector(SyntheticSearchConnector.newInitParams("people")), distribution));
+    connectors.add(new SyntheticSearchConnector(new EventSearchConnector(SyntheticSearchConnector.newInitParams("event")), distribution));
+    for (int i = 0; i < syntheticConnectors; i++) {
+      connectors.add(new SyntheticSearchConnector("synthetic" + i, resultCount, distribution));
+    }
+    fixture = new SearchDriverFixture(connectors);
+    context = new SearchContext(null, "intranet");
+  }
+
+  @Setup(Level.Iteration)
+  public void enterContainer() {
+    fixture.enter();
+  }
+
+  @TearDown
+  public void tearDown() {
+    fixture.stop();
+  }
+
+  @Benchmark
+  public Map<String, Collection<SearchResult>> search() {
+    return fixture.getDriver().search(context, "project meeting", SITES, ALL_TYPES, 0, resultCount, "relevancy", "desc");
+  }
+}
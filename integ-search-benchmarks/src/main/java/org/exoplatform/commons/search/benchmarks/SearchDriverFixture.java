@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.exoplatform.commons.api.search.SearchService;
+import org.exoplatform.commons.api.search.SearchServiceConnector;
+import org.exoplatform.commons.api.settings.SettingService;
+import org.exoplatform.commons.search.driver.jcr.JcrSearchDriver;
+import org.exoplatform.commons.search.service.MockSettingService;
+import org.exoplatform.commons.search.service.SearchMetrics;
+import org.exoplatform.commons.search.service.SearchTypeRegistry;
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.services.listener.ListenerService;
+
+/**
+ * A {@link JcrSearchDriver} running in a bare container, with in-memory settings and the given connectors.
+ */
+public class SearchDriverFixture {
+
+  private final ExoContainer container;
+  private final JcrSearchDriver driver;
+
+  public SearchDriverFixture(List<? extends SearchServiceConnector> connectors) {
+    container = new ExoContainer();
+    ExoContainerContext.setCurrentContainer(container);
+
+    SettingService settingService = new MockSettingService();
+    ListenerService listenerService = new ListenerService(container.getContext());
+    SearchTypeRegistry searchTypeRegistry = new SearchTypeRegistry(settingService, listenerService, null);
+    driver = new JcrSearchDriver(searchTypeRegistry, new SearchMetrics(), null);
+    container.registerComponentInstance(SettingService.class, settingService);
+    container.registerComponentInstance(ListenerService.class, listenerService);
+    container.registerComponentInstance(SearchTypeRegistry.class, searchTypeRegistry);
+    container.registerComponentInstance(SearchService.class, driver);
+
+    List<String> searchTypes = new ArrayList<String>();
+    for (SearchServiceConnector connector : connectors) {
+      driver.addConnector(connector);
+      searchTypes.add(connector.getSearchType());
+    }
+    StringBuilder enabledTypes = new StringBuilder();
+    for (String searchType : searchTypes) {
+      if (enabledTypes.length() > 0) enabledTypes.append(',');
+      enabledTypes.append(searchType);
+    }
+    searchTypeRegistry.setEnabledSearchTypes(enabledTypes.toString());
+    driver.start();
+  }
+
+  /**
+   * Makes the fixture container the current one of the calling thread, the driver looks its components up there.
+   */
+  public void enter() {
+    ExoContainerContext.setCurrentContainer(container);
+  }
+
+  public JcrSearchDriver getDriver() {
+    return driver;
+  }
+
+  public void stop() {
+    driver.stop();
+    ExoContainerContext.setCurrentContainer(null);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.exoplatform.commons.api.search.SearchServiceConnector;
+import org.exoplatform.commons.api.search.data.SearchContext;
+import org.exoplatform.commons.api.search.data.SearchResult;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
+
+/**
+ * An in-memory connector returning a fixed number of generated results, after a delay drawn from a latency distribution.
+ * When it wraps another connector, it returns the results of that connector instead.
+ */
+public class SyntheticSearchConnector extends SearchServiceConnector {
+
+  private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+    @Override
+    protected Random initialValue() {
+      return new Random();
+    }
+  };
+
+  private final SearchServiceConnector delegate;
+  private final int resultCount;
+  private final LatencyDistribution latency;
+
+  public SyntheticSearchConnector(String searchType, int resultCount, LatencyDistribution latency) {
+    super(newInitParams(searchType));
+    this.delegate = null;
+    this.resultCount = resultCount;
+    this.latency = latency;
+  }
+
+  public SyntheticSearchConnector(SearchServiceConnector delegate, LatencyDistribution latency) {
+    super(newInitParams(delegate.getSearchType()));
+    this.delegate = delegate;
+    this.resultCount = 0;
+    this.latency = latency;
+  }
+
+  @Override
+  public Collection<SearchResult> search(SearchContext context, String query, Collection<String> sites, int offset, int limit, String sort, String order) {
+    try {
+      latency.sleep(RANDOM.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new ArrayList<SearchResult>();
+    }
+    if (null != delegate) return delegate.search(context, query, sites, offset, limit, sort, order);
+
+    //new results on each call, the URL rewriting changes them
+    int count = Math.min(resultCount, limit);
+    List<SearchResult> results = new ArrayList<SearchResult>(count);
+    for (int i = 0; i < count; i++) {
+      int rank = offset + i;
+      results.add(new SearchResult("/portal/intranet/" + getSearchType() + "/" + rank,
+                                   getSearchType() + " result " + rank + " for " + query,
+                                   "An excerpt of the " + getSearchType() + " result " + rank + " matching " + query,
+                                   "John Smith - Monday, April 1, 2013 8:30 PM",
+                                   "/rest/jcr/repository/collaboration/" + getSearchType() + "/" + rank + ".png",
+                                   1364800000000L + rank * 60000L,
+                                   1000 - rank));
+    }
+    return results;
+  }
+
+  static InitParams newInitParams(String searchType) {
+    PropertiesParam constructorParams = new PropertiesParam();
+    constructorParams.setName("constructor.params");
+    constructorParams.setProperty("searchType", searchType);
+    constructorParams.setProperty("displayName", searchType);
+    InitParams params = new InitParams();
+    params.addParameter(constructorParams);
+    return params;
+  }
+}
@@ -23,6 +23,7 @@ window.initQuickSearch = function initQuickSearch(portletId,seeAllMsg, noResultM
     var firstBackSpace = true;
     var index = 0;
     var currentFocus = 0;
+    var quickSearchRequest; //the pending quick search request, aborted by the next keystroke
     //var skipKeyUp = [9,16,17,18,19,20,33,34,35,36,37,38,39,40,45,49];
     
     var mapKeyUp = {"0":"48","1":"49","2":"50","3":"51","4":"52","5":"53","6":"54","7":"55","8":"56","9":"57",
@@ -194,7 +195,9 @@ window.initQuickSearch = function initQuickSearch(portletId,seeAllMsg, noResultM
       
       
       // get results of all search types in a map
-      $.getJSON("/rest/search", searchParams, function(resultMap){
+      if(quickSearchRequest) quickSearchRequest.abort(); //the server drops it too when the next request arrives
+      quickSearchRequest = $.getJSON("/rest/search/typeahead", searchParams, function(resultMap){
+        if(!resultMap) return; //superseded by a newer request
         var rows = []; //one row per type
         index = 0;
         $.each(SEARCH_TYPES, function(i, searchType){          
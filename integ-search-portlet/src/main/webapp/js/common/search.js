@@ -7,6 +7,8 @@ window.initSearch = function initSearch() {
     var SEARCH_TYPES; //enabled search types
     var SEARCH_SETTING; //search setting
     var SERVER_OFFSET = 0;
+    var SERVER_CURSOR = ""; //cursor of the page to get from the server, empty for the first one
+    var NEXT_CURSOR; //cursor of the next page, empty after the last one, null if the server does not page with cursors
     var LIMIT, RESULT_CACHE, CACHE_OFFSET, NUM_RESULTS_RENDERED;
     var formLoading;
 
@@ -296,6 +298,7 @@ window.initSearch = function initSearch() {
 
     function search(callback) {
       SERVER_OFFSET = 0;
+      SERVER_CURSOR = "";
       NUM_RESULTS_RENDERED = 0;
 
       getFromServer(function(){
@@ -323,12 +326,14 @@ window.initSearch = function initSearch() {
         sites: getSelectedSites(),
         types: getSelectedTypes(),
         offset: SERVER_OFFSET,
+        cursor: SERVER_CURSOR,
         limit: LIMIT,
         sort: sort,
         order: order
       };
 
-      $.getJSON("/rest/search", searchParams, function(resultMap){
+      $.getJSON("/rest/search", searchParams, function(resultMap, textStatus, jqXHR){
+        NEXT_CURSOR = jqXHR.getResponseHeader("X-Search-Cursor");
         RESULT_CACHE = [];
         $.each(resultMap, function(searchType, results){
           //results.map(function(result){result.type = searchType;});
@@ -404,8 +409,9 @@ window.initSearch = function initSearch() {
     $("#btnShowMore").click(function(){
       CACHE_OFFSET = CACHE_OFFSET + LIMIT;
       var remaining = RESULT_CACHE.slice(CACHE_OFFSET, CACHE_OFFSET+LIMIT);      
-      if(remaining.length < LIMIT) {
-        SERVER_OFFSET = SERVER_OFFSET + LIMIT;        
+      if(remaining.length < LIMIT && "" !== NEXT_CURSOR) { //an empty cursor means that every connector returned its last results
+        if(null == NEXT_CURSOR) SERVER_OFFSET = SERVER_OFFSET + LIMIT;
+        else SERVER_CURSOR = NEXT_CURSOR; //each connector continues from its own position
         getFromServer(function(){
           RESULT_CACHE = remaining.concat(RESULT_CACHE);
           renderCachedResults(true);
@@ -486,6 +492,7 @@ window.initSearch = function initSearch() {
       $("#sortField").attr("order", $(this).children("i").hasClass("uiIconSortUp") ? "asc" : "desc");
 
       SERVER_OFFSET = 0;
+      SERVER_CURSOR = "";
       NUM_RESULTS_RENDERED = 0;
       getFromServer(function(){
         renderCachedResults();
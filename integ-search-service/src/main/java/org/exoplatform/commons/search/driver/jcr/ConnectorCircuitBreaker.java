@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Protects the search from one failing or slow connector.
+ * <br>
+ * The outcome of the calls is counted over a rolling window of one second buckets. When enough calls were made and
+ * too many of them failed or missed the deadline, the breaker opens: the connector is not called anymore until the
+ * open duration is over. It then lets a single probe call through (half-open), which closes it again or reopens it.
+ * Each call is identified by the permit it was given, so that the outcome of the calls started before the breaker
+ * opened is counted, but only the probe decides whether a half-open breaker closes or reopens.
+ * <br>
+ * The number of concurrent calls is bounded by a limit which grows by one per limit successful calls and is halved
+ * when a call fails or is too slow (additive increase, multiplicative decrease).
+ */
+class ConnectorCircuitBreaker {
+  private final static Log LOG = ExoLogger.getLogger(ConnectorCircuitBreaker.class);
+
+  enum State { CLOSED, OPEN, HALF_OPEN }
+
+  /** Returned by {@link #tryAcquire()} when the connector must not be called. */
+  static final long NO_PERMIT = -1;
+
+  private static final long BUCKET_DURATION = 1000; //milliseconds
+
+  private final String searchType;
+  private final int minimumCalls;
+  private final int failureRate;
+  private final long openDuration;
+  private final long slowCallDuration;
+  private final int maxConcurrency;
+
+  private final long[] bucketStarts;
+  private final int[] calls;
+  private final int[] failures;
+
+  private State state = State.CLOSED;
+  private long openedAt;
+  private boolean probing;
+  private long probePermit = NO_PERMIT;
+  private long lastPermit;
+  private int inFlight;
+  private double concurrencyLimit;
+
+  /**
+   * @param window duration of the rolling window, in seconds
+   * @param minimumCalls number of calls in the window below which the breaker does not open
+   * @param failureRate percentage of failed or slow calls over which the breaker opens
+   * @param openDuration time the breaker stays open, in milliseconds
+   * @param slowCallDuration duration over which a call counts as failed, in milliseconds
+   * @param maxConcurrency maximum number of concurrent calls
+   */
+  ConnectorCircuitBreaker(String searchType, int window, int minimumCalls, int failureRate, long openDuration, long slowCallDuration, int maxConcurrency) {
+    this.searchType = searchType;
+    this.minimumCalls = minimumCalls;
+    this.failureRate = failureRate;
+    this.openDuration = openDuration;
+    this.slowCallDuration = slowCallDuration;
+    this.maxConcurrency = maxConcurrency;
+    this.bucketStarts = new long[window];
+    this.calls = new int[window];
+    this.failures = new int[window];
+    this.concurrencyLimit = maxConcurrency;
+  }
+
+  /**
+   * Reserves a call, which must be ended by {@link #onSuccess(long, long)}, {@link #onFailure(long, long)} or
+   * {@link #release(long)} with the returned permit.
+   * @return the permit of the call, or {@link #NO_PERMIT} if the connector must not be called now
+   */
+  synchronized long tryAcquire() {
+    long now = System.currentTimeMillis();
+    if (state == State.OPEN) {
+      if (now - openedAt < openDuration) return NO_PERMIT;
+      state = State.HALF_OPEN;
+      probing = false;
+    }
+    if (state == State.HALF_OPEN) {
+      if (probing) return NO_PERMIT; //a single probe at a time
+      probing = true;
+      probePermit = ++lastPermit;
+      inFlight++;
+      return probePermit;
+    }
+    if (inFlight >= (int) concurrencyLimit) return NO_PERMIT;
+    inFlight++;
+    return ++lastPermit;
+  }
+
+  /**
+   * Ends a call which was reserved but never made.
+   */
+  synchronized void release(long permit) {
+    inFlight--;
+    if (isProbe(permit)) probing = false;
+  }
+
+  synchronized void onSuccess(long permit, long duration) {
+    if (duration >= slowCallDuration) {
+      onFailure(permit, duration);
+      return;
+    }
+    inFlight--;
+    record(false);
+    concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+    if (isProbe(permit)) {
+      LOG.info("Connector " + searchType + " answered again, its circuit breaker is closed");
+      state = State.CLOSED;
+      probing = false;
+      reset();
+    }
+  }
+
+  synchronized void onFailure(long permit, long duration) {
+    inFlight--;
+    record(true);
+    concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+    if (state == State.HALF_OPEN) {
+      if (isProbe(permit)) open(); //a call started before the breaker opened does not decide
+      return;
+    }
+    if (state == State.CLOSED) {
+      int total = 0, failed = 0;
+      long windowStart = System.currentTimeMillis() - bucketStarts.length * BUCKET_DURATION;
+      for (int i = 0; i < bucketStarts.length; i++) {
+        if (bucketStarts[i] > windowStart) {
+          total += calls[i];
+          failed += failures[i];
+        }
+      }
+      if (total >= minimumCalls && failed * 100 >= failureRate * total) open();
+    }
+  }
+
+  synchronized ConnectorStatus getStatus() {
+    int total = 0, failed = 0;
+    long windowStart = System.currentTimeMillis() - bucketStarts.length * BUCKET_DURATION;
+    for (int i = 0; i < bucketStarts.length; i++) {
+      if (bucketStarts[i] > windowStart) {
+        total += calls[i];
+        failed += failures[i];
+      }
+    }
+    State current = state == State.OPEN && System.currentTimeMillis() - openedAt >= openDuration ? State.HALF_OPEN : state;
+    return new ConnectorStatus(current.name(), inFlight, (int) concurrencyLimit, total, failed);
+  }
+
+  /**
+   * @return true if the permit is the one of the probe call of the half-open breaker
+   */
+  private boolean isProbe(long permit) {
+    return state == State.HALF_OPEN && permit == probePermit;
+  }
+
+  private void open() {
+    LOG.warn("Connector " + searchType + " is failing or too slow, it is not called for " + openDuration + " ms");
+    state = State.OPEN;
+    openedAt = System.currentTimeMillis();
+    probing = false;
+  }
+
+  private void record(boolean failed) {
+    long now = System.currentTimeMillis();
+    long bucketStart = now - now % BUCKET_DURATION;
+    int bucket = (int) ((now / BUCKET_DURATION) % bucketStarts.length);
+    if (bucketStarts[bucket] != bucketStart) {
+      bucketStarts[bucket] = bucketStart;
+      calls[bucket] = 0;
+      failures[bucket] = 0;
+    }
+    calls[bucket]++;
+    if (failed) failures[bucket]++;
+  }
+
+  private void reset() {
+    for (int i = 0; i < bucketStarts.length; i++) {
+      bucketStarts[i] = 0;
+      calls[i] = 0;
+      failures[i] = 0;
+    }
+  }
+}
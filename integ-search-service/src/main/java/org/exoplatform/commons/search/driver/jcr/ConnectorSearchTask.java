@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.exoplatform.commons.api.search.SearchServiceConnector;
+import org.exoplatform.commons.api.search.data.SearchContext;
+import org.exoplatform.commons.api.search.data.SearchResult;
+import org.exoplatform.commons.search.service.ConnectorMetrics;
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.services.jcr.ext.app.SessionProviderService;
+import org.exoplatform.services.jcr.ext.common.SessionProvider;
+import org.exoplatform.services.security.ConversationState;
+
+/**
+ * Calls one connector on a worker thread of the search driver.
+ * The container, the conversation state and the JCR session provider of the requesting thread are captured
+ * at creation time and installed around the call, then the previous values of the worker thread are restored.
+ * The call is reserved in the circuit breaker of the connector before the task is submitted, and its outcome is
+ * reported to it at the end, along with the duration and the result count of the call to the connector metrics.
+ */
+class ConnectorSearchTask implements Callable<Collection<SearchResult>> {
+
+  private final SearchServiceConnector connector;
+  private final SearchContext context;
+  private final String query;
+  private final Collection<String> sites;
+  private final int offset;
+  private final String position;
+  private final int limit;
+  private final String sort;
+  private final String order;
+
+  private final ExoContainer container;
+  private final ConversationState state;
+
+  private final ConnectorCircuitBreaker breaker;
+  private final long permit;
+  private final AtomicBoolean started = new AtomicBoolean();
+  private final ConnectorMetrics metrics;
+
+  ConnectorSearchTask(SearchServiceConnector connector, ConnectorCircuitBreaker breaker, long permit, ConnectorMetrics metrics, SearchContext context, String query, Collection<String> sites, int offset, String position, int limit, String sort, String order) {
+    this.connector = connector;
+    this.breaker = breaker;
+    this.permit = permit;
+    this.metrics = metrics;
+    this.context = context;
+    this.query = query;
+    this.sites = sites;
+    this.offset = offset;
+    this.position = position;
+    this.limit = limit;
+    this.sort = sort;
+    this.order = order;
+    this.container = ExoContainerContext.getCurrentContainer();
+    this.state = ConversationState.getCurrent();
+  }
+
+  public SearchServiceConnector getConnector() {
+    return connector;
+  }
+
+  /**
+   * Gives the reserved call back to the circuit breaker if the task has not started yet; it will then do nothing.
+   */
+  void abandon() {
+    if (started.compareAndSet(false, true)) breaker.release(permit);
+  }
+
+  @Override
+  public Collection<SearchResult> call() throws Exception {
+    if (!started.compareAndSet(false, true)) return TimedOutSearchResults.INSTANCE; //abandoned before it started
+    ExoContainer previousContainer = ExoContainerContext.getCurrentContainerIfPresent();
+    ConversationState previousState = ConversationState.getCurrent();
+    SessionProviderService sessionProviderService = null;
+    SessionProvider previousSessionProvider = null;
+    SessionProvider sessionProvider = null;
+    boolean requestStarted = false;
+    metrics.onStart();
+    long start = System.nanoTime();
+    Collection<SearchResult> results = null;
+    //a failure while installing the context is reported like a failure of the connector, the permit is released
+    try {
+      ExoContainerContext.setCurrentContainer(container);
+      ConversationState.setCurrent(state);
+      sessionProviderService = (SessionProviderService) container.getComponentInstanceOfType(SessionProviderService.class);
+      if (sessionProviderService != null) {
+        previousSessionProvider = sessionProviderService.getSessionProvider(null);
+        sessionProvider = null != state ? new SessionProvider(state) : SessionProvider.createAnonimProvider();
+        sessionProviderService.setSessionProvider(null, sessionProvider);
+      }
+      RequestLifeCycle.begin(container);
+      requestStarted = true;
+      if (null != position) results = ((ResumableSearchConnector) connector).searchAfter(context, query, sites, position, limit, sort, order);
+      else results = connector.search(context, query, sites, offset, limit, sort, order);
+      return results;
+    } finally {
+      long duration = (System.nanoTime() - start) / 1000;
+      if (null == results) {
+        breaker.onFailure(permit, duration / 1000);
+        metrics.onFailure(duration);
+      } else {
+        breaker.onSuccess(permit, duration / 1000);
+        metrics.onSuccess(duration, results.size());
+      }
+      if (requestStarted) RequestLifeCycle.end();
+      if (sessionProvider != null) {
+        sessionProvider.close();
+        if (previousSessionProvider != null) {
+          sessionProviderService.setSessionProvider(null, previousSessionProvider);
+        } else {
+          sessionProviderService.removeSessionProvider(null);
+        }
+      }
+      ConversationState.setCurrent(previousState);
+      ExoContainerContext.setCurrentContainer(previousContainer);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+/**
+ * Health of a connector, as seen by its circuit breaker.
+ */
+public class ConnectorStatus {
+
+  private final String state;
+  private final int inFlight;
+  private final int concurrencyLimit;
+  private final int calls;
+  private final int failures;
+
+  public ConnectorStatus(String state, int inFlight, int concurrencyLimit, int calls, int failures) {
+    this.state = state;
+    this.inFlight = inFlight;
+    this.concurrencyLimit = concurrencyLimit;
+    this.calls = calls;
+    this.failures = failures;
+  }
+
+  /**
+   * @return CLOSED when the connector is called, OPEN when it is skipped, HALF_OPEN when the next call is a probe
+   */
+  public String getState() {
+    return state;
+  }
+
+  /**
+   * @return the number of calls in progress
+   */
+  public int getInFlight() {
+    return inFlight;
+  }
+
+  /**
+   * @return the current maximum number of concurrent calls
+   */
+  public int getConcurrencyLimit() {
+    return concurrencyLimit;
+  }
+
+  /**
+   * @return the number of calls in the rolling window
+   */
+  public int getCalls() {
+    return calls;
+  }
+
+  /**
+   * @return the number of failed or too slow calls in the rolling window
+   */
+  public int getFailures() {
+    return failures;
+  }
+}
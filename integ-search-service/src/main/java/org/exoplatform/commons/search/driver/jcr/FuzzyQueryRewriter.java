@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import java.util.List;
+
+/**
+ * Rewrites a {@link SearchQuery} into the query sent to the connectors, adding the fuzzy syntax to each term.
+ * <br>
+ * The fuzzy settings are read from the <code>unified-search.engine.fuzzy.enable</code> and
+ * <code>unified-search.engine.fuzzy.similarity</code> system properties once, when the rewriter is created.
+ * A term which already has a similarity (e.g. <code>term~0.8</code>) is kept as is, any other <code>~</code> suffix
+ * is replaced by <code>~0.5</code>. When fuzzy search is disabled, the <code>~</code> are removed.
+ */
+public final class FuzzyQueryRewriter {
+
+  public static final String FUZZY_ENABLE_PROPERTY = "unified-search.engine.fuzzy.enable";
+  public static final String FUZZY_SIMILARITY_PROPERTY = "unified-search.engine.fuzzy.similarity";
+
+  private static final double DEFAULT_SIMILARITY = 0.5;
+
+  private final boolean fuzzyEnabled;
+  private final String fuzzySyntax;
+
+  /**
+   * @param fuzzyEnabled whether the terms get a fuzzy syntax
+   * @param similarity the similarity added to the terms, between 0 (included) and 1 (excluded), 0.5 otherwise
+   */
+  public FuzzyQueryRewriter(boolean fuzzyEnabled, double similarity) {
+    this.fuzzyEnabled = fuzzyEnabled;
+    if (similarity < 0 || similarity >= 1) similarity = DEFAULT_SIMILARITY;
+    this.fuzzySyntax = fuzzyEnabled ? "~" + String.valueOf(similarity) : "";
+  }
+
+  /**
+   * @return a rewriter configured from the current system properties
+   */
+  public static FuzzyQueryRewriter fromSystemProperties() {
+    String fuzzyEnable = System.getProperty(FUZZY_ENABLE_PROPERTY);
+    String fuzzySimilarity = System.getProperty(FUZZY_SIMILARITY_PROPERTY);
+    double similarity = DEFAULT_SIMILARITY;
+    if (fuzzySimilarity != null) {
+      try {
+        similarity = Double.parseDouble(fuzzySimilarity);
+      } catch (NumberFormatException e) {
+        similarity = DEFAULT_SIMILARITY;
+      }
+    }
+    return new FuzzyQueryRewriter(null == fuzzyEnable || Boolean.parseBoolean(fuzzyEnable), similarity);
+  }
+
+  public boolean isFuzzyEnabled() {
+    return fuzzyEnabled;
+  }
+
+  /**
+   * @return the syntax added after each single term, e.g. <code>~0.5</code>, or an empty string when fuzzy search is disabled
+   */
+  public String getFuzzySyntax() {
+    return fuzzySyntax;
+  }
+
+  /**
+   * @return the quoted terms, then the single terms with their fuzzy syntax
+   */
+  public String rewrite(SearchQuery query) {
+    StringBuilder sb = new StringBuilder(64);
+    append(sb, query.getQuotedTerms(), true);
+    sb.append(' ');
+    append(sb, query.getSingleTerms(), false);
+    return sb.toString();
+  }
+
+  private void append(StringBuilder sb, List<String> terms, boolean quoted) {
+    for (int i = 0; i < terms.size(); i++) {
+      if (i > 0) sb.append(' ');
+      String term = terms.get(i);
+      int tilde = term.indexOf('~');
+      if (!fuzzyEnabled) {
+        sb.append(tilde == -1 ? term : term.replace("~", ""));
+      } else if (isFuzzyManual(term)) {
+        sb.append(term);
+      } else if (tilde != -1) {
+        sb.append(term, 0, tilde).append("~0.5");
+      } else if (quoted) {
+        sb.append('"').append(term).append('"');
+      } else {
+        sb.append(term).append(fuzzySyntax);
+      }
+    }
+  }
+
+  /**
+   * Whether the term has a similarity set by the user, i.e. a <code>~0.</code> followed by a digit, after at least one character.
+   */
+  static boolean isFuzzyManual(String term) {
+    for (int i = term.indexOf('~', 1); i != -1 && i + 3 < term.length(); i = term.indexOf('~', i + 1)) {
+      if (term.charAt(i + 1) == '0' && term.charAt(i + 2) == '.' && isDigit(term.charAt(i + 3)) && !isLineTerminator(term.charAt(i - 1))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+}
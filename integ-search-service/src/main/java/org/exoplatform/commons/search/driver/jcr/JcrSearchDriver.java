@@ -4,124 +4,480 @@ import org.exoplatform.commons.api.search.SearchService;
 import org.exoplatform.commons.api.search.SearchServiceConnector;
 import org.exoplatform.commons.api.search.data.SearchContext;
 import org.exoplatform.commons.api.search.data.SearchResult;
-import org.exoplatform.commons.search.service.UnifiedSearchService;
+import org.exoplatform.commons.search.service.ConnectorMetrics;
+import org.exoplatform.commons.search.service.SearchMetrics;
+import org.exoplatform.commons.search.service.SearchTypeRegistry;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.picocontainer.Startable;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class JcrSearchDriver extends SearchService {
+/**
+ * Default search driver: runs the enabled connectors concurrently on a bounded pool and collects their results.
+ * A connector which does not answer before the configured deadline is cancelled and reported with
+ * {@link TimedOutSearchResults} so that the other results are returned without waiting for it.
+ */
+@Managed
+@ManagedDescription("Unified search driver")
+@NameTemplate({ @Property(key = "service", value = "unifiedsearch"), @Property(key = "view", value = "driver") })
+public class JcrSearchDriver extends SearchService implements Startable {
     private final static Log LOG = ExoLogger.getLogger(JcrSearchDriver.class);
 
+    public static final String POOL_SIZE_PARAM = "connector.pool.size";
+    public static final String QUEUE_SIZE_PARAM = "connector.queue.size";
+    public static final String TIMEOUT_PARAM = "connector.timeout";
+    public static final String BREAKER_WINDOW_PARAM = "breaker.window";
+    public static final String BREAKER_MINIMUM_CALLS_PARAM = "breaker.minimum-calls";
+    public static final String BREAKER_FAILURE_RATE_PARAM = "breaker.failure-rate";
+    public static final String BREAKER_OPEN_DURATION_PARAM = "breaker.open-duration";
+
+    private static final int DEFAULT_POOL_SIZE = 20;
+    private static final int DEFAULT_QUEUE_SIZE = 100;
+    private static final long DEFAULT_TIMEOUT = 5000; //milliseconds
+    private static final int DEFAULT_BREAKER_WINDOW = 10; //seconds
+    private static final int DEFAULT_BREAKER_MINIMUM_CALLS = 10;
+    private static final int DEFAULT_BREAKER_FAILURE_RATE = 50; //percent
+    private static final int DEFAULT_BREAKER_OPEN_DURATION = 10000; //milliseconds
+
+    private final int poolSize;
+    private final int queueSize;
+    private final long connectorTimeout;
+    private final int breakerWindow;
+    private final int breakerMinimumCalls;
+    private final int breakerFailureRate;
+    private final long breakerOpenDuration;
+    private final ConcurrentMap<String, ConnectorCircuitBreaker> breakers = new ConcurrentHashMap<String, ConnectorCircuitBreaker>();
+    private final SearchTypeRegistry searchTypeRegistry;
+    private final SearchMetrics searchMetrics;
+    private ExecutorService executor;
+    private volatile FuzzyQueryRewriter queryRewriter;
+
+    public JcrSearchDriver(SearchTypeRegistry searchTypeRegistry, SearchMetrics searchMetrics, InitParams params) {
+        this.searchTypeRegistry = searchTypeRegistry;
+        this.searchMetrics = searchMetrics;
+        this.poolSize = getIntParam(params, POOL_SIZE_PARAM, DEFAULT_POOL_SIZE);
+        this.queueSize = getIntParam(params, QUEUE_SIZE_PARAM, DEFAULT_QUEUE_SIZE);
+        this.connectorTimeout = getIntParam(params, TIMEOUT_PARAM, (int) DEFAULT_TIMEOUT);
+        this.breakerWindow = getIntParam(params, BREAKER_WINDOW_PARAM, DEFAULT_BREAKER_WINDOW);
+        this.breakerMinimumCalls = getIntParam(params, BREAKER_MINIMUM_CALLS_PARAM, DEFAULT_BREAKER_MINIMUM_CALLS);
+        this.breakerFailureRate = Math.min(100, getIntParam(params, BREAKER_FAILURE_RATE_PARAM, DEFAULT_BREAKER_FAILURE_RATE));
+        this.breakerOpenDuration = getIntParam(params, BREAKER_OPEN_DURATION_PARAM, DEFAULT_BREAKER_OPEN_DURATION);
+        this.queryRewriter = FuzzyQueryRewriter.fromSystemProperties();
+    }
+
+    /**
+     * Reads the fuzzy search system properties again, they are otherwise only read when the driver is created.
+     */
+    @Managed
+    @ManagedDescription("Read the fuzzy search system properties again")
+    public void reloadQuerySettings() {
+        this.queryRewriter = FuzzyQueryRewriter.fromSystemProperties();
+    }
+
+    @Override
+    public void start() {
+        getExecutor();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
     @Override
     public Map<String, Collection<SearchResult>> search(SearchContext context, String query, Collection<String> sites, Collection<String> types, int offset, int limit, String sort, String order) {
-        String fuzzySyntax = getFuzzySyntax();
-        HashMap<String, ArrayList<String>> terms = parse(query); //parse query for single and quoted terms
-        query = repeat("\"%s\"", terms.get("quoted"), " ") + " " + repeat("%s" + fuzzySyntax, terms.get("single"), " "); //add a fuzzySyntax after each single term (for fuzzy search)
+        final Map<String, Collection<SearchResult>> results = new HashMap<String, Collection<SearchResult>>();
+        try {
+            search(context, query, sites, types, offset, limit, sort, order, new SearchResultHandler() {
+                @Override
+                public void handle(String searchType, Collection<SearchResult> connectorResults) {
+                    results.put(searchType, connectorResults);
+                }
+            });
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e); //not expected, the results are only collected in memory
+        }
+        return results;
+    }
+
+    /**
+     * Searches like {@link #search(SearchContext, String, Collection, Collection, int, int, String, String)} but hands
+     * the results of each connector to the handler as soon as the connector answers, instead of waiting for all of them.
+     * @param handler receives the results of each connector, in completion order
+     * @throws IOException if the handler fails, the connectors still running are cancelled
+     */
+    public void search(SearchContext context, String query, Collection<String> sites, Collection<String> types, int offset, int limit, String sort, String order, SearchResultHandler handler) throws IOException {
+        search(context, query, sites, types, null, offset, limit, sort, order, handler);
+    }
+
+    /**
+     * Searches all the requested connectors and ranks their results together, instead of returning one page per connector.
+     * Each connector is asked for one page from its own offset in the cursor, then the pages are merged.
+     * @param cursor the cursor returned with the previous page, or {@link SearchCursor#START}
+     * @param limit the size of the page
+     * @param sort the ranking of the results: relevancy, date or title
+     * @param order asc or desc
+     * @return the merged page, with the cursor of the next one
+     */
+    public SearchResultPage searchMerged(SearchContext context, String query, Collection<String> sites, Collection<String> types, SearchCursor cursor, int limit, String sort, String order) {
+        if(null==types || types.isEmpty()) return new SearchResultPage(new ArrayList<RankedSearchResult>(), null);
+
+        final Map<String, Collection<SearchResult>> results = new HashMap<String, Collection<SearchResult>>();
+        try {
+            search(context, query, sites, types, cursor, 0, limit, sort, order, new SearchResultHandler() {
+                @Override
+                public void handle(String searchType, Collection<SearchResult> connectorResults) {
+                    results.put(searchType, connectorResults);
+                }
+            });
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e); //not expected, the results are only collected in memory
+        }
+
+        List<String> searchTypes = new ArrayList<String>();
+        for(SearchServiceConnector connector:this.getConnectors()){
+            if(isSearched(connector, types)) searchTypes.add(connector.getSearchType());
+        }
+        return SearchResultMerger.merge(searchTypes, results, cursor, limit, SearchResultMerger.getComparator(sort, order), getResumableConnectors(types), sort, order);
+    }
+
+    /**
+     * Searches the next page of each connector from a cursor, instead of from the same offset for all of them:
+     * the connectors implementing {@link ResumableSearchConnector} resume after the last result they returned,
+     * the others skip the results they already returned. Connectors with no more results are not searched.
+     * @param cursor the cursor of the page, see {@link #getNextCursor(Collection, SearchCursor, Map, int, String, String)}
+     * @return the results of each connector
+     */
+    public Map<String, Collection<SearchResult>> search(SearchContext context, String query, Collection<String> sites, Collection<String> types, SearchCursor cursor, int limit, String sort, String order) {
+        final Map<String, Collection<SearchResult>> results = new HashMap<String, Collection<SearchResult>>();
+        try {
+            search(context, query, sites, types, cursor, 0, limit, sort, order, new SearchResultHandler() {
+                @Override
+                public void handle(String searchType, Collection<SearchResult> connectorResults) {
+                    results.put(searchType, connectorResults);
+                }
+            });
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e); //not expected, the results are only collected in memory
+        }
+        return results;
+    }
+
+    /**
+     * @param types the searched types
+     * @param cursor the cursor the page was searched from
+     * @param results the results of each connector for the page
+     * @param limit the size of the page of each connector
+     * @return the cursor of the next page, or null if no connector has more results
+     */
+    public SearchCursor getNextCursor(Collection<String> types, SearchCursor cursor, Map<String, Collection<SearchResult>> results, int limit, String sort, String order) {
+        Map<String, Integer> offsets = new LinkedHashMap<String, Integer>();
+        Map<String, String> positions = new LinkedHashMap<String, String>();
+        boolean exhausted = true;
+        for(SearchServiceConnector connector:this.getConnectors()){
+            if(null==types || !isSearched(connector, types)) continue;
+            String searchType = connector.getSearchType();
+            Collection<SearchResult> connectorResults = results.get(searchType);
+            int offset = cursor.getOffset(searchType);
+            String position = cursor.getPosition(searchType);
+            if(cursor.isExhausted(searchType) || (null!=connectorResults && !TimedOutSearchResults.isTimedOut(connectorResults) && connectorResults.size() < limit)) {
+                offsets.put(searchType, SearchCursor.EXHAUSTED);
+                continue;
+            }
+            //connectors which failed or timed out are searched again from the same position with the next page
+            if(null!=connectorResults && !TimedOutSearchResults.isTimedOut(connectorResults)) {
+                offset += connectorResults.size();
+                if(connector instanceof ResumableSearchConnector && !connectorResults.isEmpty()) {
+                    SearchResult lastResult = null;
+                    for(SearchResult result:connectorResults) lastResult = result;
+                    position = ((ResumableSearchConnector) connector).getPosition(lastResult, sort, order);
+                }
+            }
+            offsets.put(searchType, offset);
+            if(null!=position) positions.put(searchType, position);
+            exhausted = false;
+        }
+        return exhausted ? null : new SearchCursor(offsets, positions);
+    }
 
-        Map<String, Collection<SearchResult>> results = new HashMap<String, Collection<SearchResult>>();
-        if(null==types || types.isEmpty()) return results;
-        List<String> enabledTypes = UnifiedSearchService.getEnabledSearchTypes();
+    private Map<String, ResumableSearchConnector> getResumableConnectors(Collection<String> types) {
+        Map<String, ResumableSearchConnector> resumableConnectors = new HashMap<String, ResumableSearchConnector>();
         for(SearchServiceConnector connector:this.getConnectors()){
-            if(!enabledTypes.contains(connector.getSearchType())) continue; //ignore disabled types
-            if(!types.contains("all") && !types.contains(connector.getSearchType())) continue; //search requested types only
-            LOG.debug("\n[UNIFIED SEARCH]: connector = " + connector.getClass().getSimpleName());
-            try {
-                results.put(connector.getSearchType(), connector.search(context, query, sites, offset, limit, sort, order));
-            } catch (Exception e) {
-                LOG.error(e.getMessage(), e);
-                continue; //skip this connector and continue searching with the others
+            if(connector instanceof ResumableSearchConnector && isSearched(connector, types)) {
+                resumableConnectors.put(connector.getSearchType(), (ResumableSearchConnector) connector);
             }
         }
+        return resumableConnectors;
+    }
+
+    /**
+     * Runs several searches in one fan-out, sharing the connector deadline: a connector is called once for all the
+     * searches which send it the same query with the same sites, paging and sorting.
+     * @param context the search context, common to all the searches
+     * @param searches the searches to run
+     * @return the results of each search, by search type, in the order of the searches
+     */
+    public List<Map<String, Collection<SearchResult>>> search(SearchContext context, List<SearchSpec> searches) {
+        final List<Map<String, Collection<SearchResult>>> results = new ArrayList<Map<String, Collection<SearchResult>>>();
+        //searches waiting for the results of each call
+        final Map<ConnectorSearchTask, List<Map<String, Collection<SearchResult>>>> waiting = new HashMap<ConnectorSearchTask, List<Map<String, Collection<SearchResult>>>>();
+        Map<String, ConnectorSearchTask> calls = new HashMap<String, ConnectorSearchTask>();
+
+        CompletionService<Collection<SearchResult>> completionService = new ExecutorCompletionService<Collection<SearchResult>>(getExecutor());
+        Map<Future<Collection<SearchResult>>, ConnectorSearchTask> pending = new LinkedHashMap<Future<Collection<SearchResult>>, ConnectorSearchTask>();
+        for(SearchSpec search:searches){
+            Map<String, Collection<SearchResult>> searchResults = new HashMap<String, Collection<SearchResult>>();
+            results.add(searchResults);
+            if(null==search.getTypes() || search.getTypes().isEmpty()) continue;
+
+            long parseStart = System.nanoTime();
+            String query = queryRewriter.rewrite(SearchQuery.parse(search.getQuery()));
+            searchMetrics.recordPhase(SearchMetrics.PARSE_PHASE, parseStart);
+
+            for(SearchServiceConnector connector:this.getConnectors()){
+                if(!isSearched(connector, search.getTypes())) continue;
+                String key = connector.getSearchType() + '\u0000' + query + '\u0000' + search.getSites() + '\u0000' + search.getOffset()
+                    + '\u0000' + search.getLimit() + '\u0000' + search.getSort() + '\u0000' + search.getOrder();
+                ConnectorSearchTask task = calls.get(key);
+                if(null==task && !calls.containsKey(key)) {
+                    task = submit(completionService, pending, connector, context, query, search.getSites(), search.getOffset(), null, search.getLimit(), search.getSort(), search.getOrder());
+                    calls.put(key, task);
+                    if(null!=task) waiting.put(task, new ArrayList<Map<String, Collection<SearchResult>>>());
+                }
+                if(null==task) searchResults.put(connector.getSearchType(), TimedOutSearchResults.INSTANCE); //shed
+                else waiting.get(task).add(searchResults);
+            }
+        }
+
+        try {
+            collect(completionService, pending, new TaskResultHandler() {
+                @Override
+                public void handle(ConnectorSearchTask task, Collection<SearchResult> connectorResults) {
+                    for(Map<String, Collection<SearchResult>> searchResults:waiting.get(task)){
+                        searchResults.put(task.getConnector().getSearchType(), connectorResults);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e); //not expected, the results are only collected in memory
+        }
         return results;
     }
 
+    private void search(SearchContext context, String query, Collection<String> sites, Collection<String> types, SearchCursor cursor, int offset, int limit, String sort, String order, final SearchResultHandler handler) throws IOException {
+        long parseStart = System.nanoTime();
+        query = queryRewriter.rewrite(SearchQuery.parse(query)); //add a fuzzySyntax after each single term (for fuzzy search)
+        searchMetrics.recordPhase(SearchMetrics.PARSE_PHASE, parseStart);
+
+        if(null==types || types.isEmpty()) return;
+
+        //fan out: submit all the requested connectors before waiting for any of them
+        CompletionService<Collection<SearchResult>> completionService = new ExecutorCompletionService<Collection<SearchResult>>(getExecutor());
+        Map<Future<Collection<SearchResult>>, ConnectorSearchTask> pending = new LinkedHashMap<Future<Collection<SearchResult>>, ConnectorSearchTask>();
+        try {
+            for(SearchServiceConnector connector:this.getConnectors()){
+                if(!isSearched(connector, types)) continue;
+                int connectorOffset = offset;
+                String position = null;
+                if(null!=cursor) {
+                    if(cursor.isExhausted(connector.getSearchType())) continue; //nothing left after the previous pages
+                    connectorOffset = cursor.getOffset(connector.getSearchType());
+                    //resume after the last returned result rather than skipping the offset, when the connector can
+                    if(connector instanceof ResumableSearchConnector) position = cursor.getPosition(connector.getSearchType());
+                }
+                LOG.debug("\n[UNIFIED SEARCH]: connector = " + connector.getClass().getSimpleName());
+                if(null==submit(completionService, pending, connector, context, query, sites, connectorOffset, position, limit, sort, order)) {
+                    handler.handle(connector.getSearchType(), TimedOutSearchResults.INSTANCE);
+                }
+            }
+        } catch (IOException e) {
+            cancel(pending);
+            throw e;
+        }
 
-    private static HashMap<String, ArrayList<String>> parse(String input) {
-        HashMap<String, ArrayList<String>> terms = new HashMap<String, ArrayList<String>>();
-
-        ArrayList<String> quoted = new ArrayList<String>();
-        Matcher matcher = Pattern.compile("\"([^\"]+)\"").matcher(input);
-        while (matcher.find()) {
-            String founds = matcher.group(1);
-            quoted.add(founds);
-        }
-        terms.put("quoted", quoted);
-
-        String remain = matcher.replaceAll("").replaceAll("\"", "").trim(); //remove all remaining double quotes
-        ArrayList<String> single = new ArrayList<String>();
-        if(!remain.isEmpty()) single.addAll(Arrays.asList(remain.split("\\s+")));
-        terms.put("single", single);
-
-        return terms;
-    }
-
-    private static String repeat(String format, Collection<String> strArr, String delimiter){
-        StringBuilder sb=new StringBuilder();
-        String delim = "";
-        for(String str:strArr) {
-            if (!isEnableFuzzySearch()){
-                String disableFuzzy = str.replace("~", "");
-                sb.append(delim).append(disableFuzzy);
-                delim = delimiter;
-            } else if (!isFuzzyManual(str) && str.indexOf("~") != -1) {
-                str = str.replace(str.substring(str.indexOf("~")), "~0.5");
-                sb.append(delim).append(str);
-                delim = delimiter;
-            }else if (!isFuzzyManual(str) && isEnableFuzzySearch()){
-                sb.append(delim).append(String.format(format, str));
-                delim = delimiter;
-            }else {
-                sb.append(delim).append(str);
-                delim = delimiter;
+        collect(completionService, pending, new TaskResultHandler() {
+            @Override
+            public void handle(ConnectorSearchTask task, Collection<SearchResult> connectorResults) throws IOException {
+                handler.handle(task.getConnector().getSearchType(), connectorResults);
             }
+        });
+    }
+
+    /**
+     * Submits a call to a connector, unless its circuit breaker refuses it or the pool is saturated.
+     * @return the submitted task, or null if the connector is not called, it is then reported with {@link TimedOutSearchResults}
+     */
+    private ConnectorSearchTask submit(CompletionService<Collection<SearchResult>> completionService, Map<Future<Collection<SearchResult>>, ConnectorSearchTask> pending,
+                                       SearchServiceConnector connector, SearchContext context, String query, Collection<String> sites, int offset, String position, int limit, String sort, String order) {
+        ConnectorCircuitBreaker breaker = getBreaker(connector.getSearchType());
+        ConnectorMetrics metrics = searchMetrics.getConnectorMetrics(connector.getSearchType());
+        long permit = breaker.tryAcquire();
+        if(permit == ConnectorCircuitBreaker.NO_PERMIT) { //shed: the connector is failing or has too many calls in progress
+            metrics.onShed();
+            return null;
+        }
+        ConnectorSearchTask task = new ConnectorSearchTask(connector, breaker, permit, metrics, context, query, sites, offset, position, limit, sort, order);
+        try {
+            pending.put(completionService.submit(task), task);
+            return task;
+        } catch (RejectedExecutionException e) {
+            //the pool is saturated or shut down: the connector is reported as timed out
+            task.abandon();
+            metrics.onShed();
+            LOG.warn("Search pool is saturated, skipping connector " + connector.getSearchType());
+            return null;
         }
-        return sb.toString();
     }
 
-    private static String getFuzzySyntax() {
-        String fuzzySyntax = "";
-        String fuzzySimilarity = System.getProperty("unified-search.engine.fuzzy.similarity");
-        Double fuzzySimilarityDouble = 0.5;
-        if (isEnableFuzzySearch()){
-            if (fuzzySimilarity != null) {
+    /**
+     * Hands the results of the submitted calls to the handler in completion order. Every call shares the same
+     * deadline, counted from now; the calls still running then are cancelled and reported with {@link TimedOutSearchResults}.
+     * A call which failed is logged and not reported.
+     */
+    private void collect(CompletionService<Collection<SearchResult>> completionService, Map<Future<Collection<SearchResult>>, ConnectorSearchTask> pending, TaskResultHandler handler) throws IOException {
+        long deadline = System.currentTimeMillis() + connectorTimeout;
+        try {
+            while(!pending.isEmpty()){
+                long remaining = deadline - System.currentTimeMillis();
+                Future<Collection<SearchResult>> future = remaining > 0 ? completionService.poll(remaining, TimeUnit.MILLISECONDS) : completionService.poll();
+                if(null==future) break; //deadline reached
+                ConnectorSearchTask task = pending.remove(future);
                 try {
-                    fuzzySimilarityDouble = Double.parseDouble(fuzzySimilarity);
-                } catch (NumberFormatException e) {
-                    fuzzySimilarityDouble = 0.5;
+                    handler.handle(task, future.get());
+                } catch (ExecutionException e) {
+                    //the circuit breaker counts the failures, a stack trace per request would flood the log
+                    LOG.warn("Connector " + task.getConnector().getSearchType() + " failed: " + e.getCause());
+                    if(LOG.isDebugEnabled()) LOG.debug(e.getCause().getMessage(), e.getCause());
+                    continue; //skip this connector and continue searching with the others
                 }
             }
-            if (fuzzySimilarityDouble < 0 || fuzzySimilarityDouble >= 1) {
-                fuzzySimilarityDouble = 0.5;
+            for(Map.Entry<Future<Collection<SearchResult>>, ConnectorSearchTask> entry:pending.entrySet()){
+                String searchType = entry.getValue().getConnector().getSearchType();
+                entry.getKey().cancel(true);
+                entry.getValue().abandon();
+                searchMetrics.getConnectorMetrics(searchType).onTimeout();
+                LOG.warn("Connector " + searchType + " did not answer within " + connectorTimeout + " ms, its results are skipped");
+                handler.handle(entry.getValue(), TimedOutSearchResults.INSTANCE);
             }
-            fuzzySyntax = "~" + String.valueOf(fuzzySimilarityDouble);
+            pending.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            cancel(pending);
         }
-        return fuzzySyntax;
     }
 
-    private static boolean isFuzzyManual(String input) {
-        Matcher matcher = Pattern.compile(".[~][0]([\\.][0-9])").matcher(input);
-        while (matcher.find()){
-            return true;
+    private static void cancel(Map<Future<Collection<SearchResult>>, ConnectorSearchTask> pending) {
+        for(Map.Entry<Future<Collection<SearchResult>>, ConnectorSearchTask> entry:pending.entrySet()){
+            entry.getKey().cancel(true);
+            entry.getValue().abandon();
         }
-        return false;
     }
 
-    private static boolean isEnableFuzzySearch(){
-        String fuzzyEnable = System.getProperty("unified-search.engine.fuzzy.enable");
+    private interface TaskResultHandler {
+        void handle(ConnectorSearchTask task, Collection<SearchResult> results) throws IOException;
+    }
+
+    /**
+     * @return the circuit breaker status of each connector, by search type
+     */
+    public Map<String, ConnectorStatus> getConnectorStatuses() {
+        Map<String, ConnectorStatus> statuses = new LinkedHashMap<String, ConnectorStatus>();
+        for(SearchServiceConnector connector:this.getConnectors()){
+            statuses.put(connector.getSearchType(), getBreaker(connector.getSearchType()).getStatus());
+        }
+        return statuses;
+    }
+
+    private ConnectorCircuitBreaker getBreaker(String searchType) {
+        ConnectorCircuitBreaker breaker = breakers.get(searchType);
+        if(null==breaker) {
+            breaker = new ConnectorCircuitBreaker(searchType, breakerWindow, breakerMinimumCalls, breakerFailureRate, breakerOpenDuration, connectorTimeout, poolSize);
+            ConnectorCircuitBreaker existing = breakers.putIfAbsent(searchType, breaker);
+            if(null!=existing) breaker = existing;
+        }
+        return breaker;
+    }
+
+    private boolean isSearched(SearchServiceConnector connector, Collection<String> types) {
+        if(!searchTypeRegistry.isEnabled(connector.getSearchType())) return false; //ignore disabled types
+        return types.contains("all") || types.contains(connector.getSearchType()); //search requested types only
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            //when all the workers are busy and the queue is full, the call is rejected: the requesting thread
+            //must not run a connector itself, it would not be bound by the deadline
+            executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                                              new ArrayBlockingQueue<Runnable>(queueSize),
+                                              new SearchThreadFactory(),
+                                              new ThreadPoolExecutor.AbortPolicy());
+        }
+        return executor;
+    }
+
+    private static int getIntParam(InitParams params, String name, int defaultValue) {
+        if (params == null) return defaultValue;
+        ValueParam param = params.getValueParam(name);
+        if (param == null || param.getValue() == null) return defaultValue;
+        try {
+            int value = Integer.parseInt(param.getValue().trim());
+            return value > 0 ? value : defaultValue;
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid value for " + name + ": " + param.getValue() + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static class SearchThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "unified-search-connector-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 
-        if ((fuzzyEnable!=null && Boolean.parseBoolean(fuzzyEnable)==true)
-                || fuzzyEnable==null)
-            return true;
 
-        return false;
+    /**
+     * Normalizes a query the way the driver parses it: quoted terms first, then single terms, separated by one space.
+     * Two queries with the same normalized form are sent to the connectors identically.
+     * @param query the query entered by the user
+     * @return the normalized query
+     */
+    public static String normalizeQuery(String query) {
+        return SearchQuery.parse(query).toString();
     }
 
 }
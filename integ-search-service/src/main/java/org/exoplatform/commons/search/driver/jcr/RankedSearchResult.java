@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import org.exoplatform.commons.api.search.data.SearchResult;
+
+/**
+ * A search result of a merged search, with the type of the connector which found it.
+ */
+public class RankedSearchResult {
+
+  private final String type;
+  private final SearchResult result;
+
+  public RankedSearchResult(String type, SearchResult result) {
+    this.type = type;
+    this.result = result;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public SearchResult getResult() {
+    return result;
+  }
+}
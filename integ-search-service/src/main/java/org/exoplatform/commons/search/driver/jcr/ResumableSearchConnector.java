@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import java.util.Collection;
+
+import org.exoplatform.commons.api.search.data.SearchContext;
+import org.exoplatform.commons.api.search.data.SearchResult;
+
+/**
+ * Implemented by the connectors which can resume a search after a given result ("search after" or keyset paging),
+ * instead of reading and skipping all the results before the requested offset.
+ * <br>
+ * When a page of results is returned, the position of the last result of each resumable connector is kept in the
+ * {@link SearchCursor} of the next page; the connector is then asked for the results following that position.
+ * The other connectors are asked for their next page by offset, as usual.
+ */
+public interface ResumableSearchConnector {
+
+  /**
+   * @param result a result returned by this connector
+   * @param sort the sort the result was returned with: relevancy, date or title
+   * @param order asc or desc
+   * @return an opaque position of the result in the sorted results, for example its sort key and its identifier.
+   * It must not depend on the URLs of the result, which are made absolute before it is asked.
+   */
+  String getPosition(SearchResult result, String sort, String order);
+
+  /**
+   * Searches the results which come after the given position.
+   * @param position a position returned by {@link #getPosition(SearchResult, String, String)}
+   * @param limit the maximum number of results
+   * @return the results following the position, sorted the same way
+   * @see org.exoplatform.commons.api.search.SearchServiceConnector#search(SearchContext, String, Collection, int, int, String, String)
+   */
+  Collection<SearchResult> searchAfter(SearchContext context, String query, Collection<String> sites, String position, int limit, String sort, String order);
+}
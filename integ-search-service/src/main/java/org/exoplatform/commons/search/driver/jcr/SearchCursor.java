@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Position of a search in the results of each connector, as returned to the client between two pages.
+ * <br>
+ * It is written as a comma-separated list of <code>type:offset</code>, where the offset is the number of results of
+ * that type already returned, or {@value #EXHAUSTED} when the connector has no more results. The offset of a
+ * {@link ResumableSearchConnector} is followed by <code>~position</code>, the URL-encoded position of its last
+ * returned result, which it resumes from instead of skipping the offset.
+ */
+public final class SearchCursor {
+
+  public static final int EXHAUSTED = -1;
+
+  /** The cursor of a first page. */
+  public static final SearchCursor START = new SearchCursor(Collections.<String, Integer>emptyMap());
+
+  private final Map<String, Integer> offsets;
+  private final Map<String, String> positions;
+  private final int defaultOffset;
+
+  SearchCursor(Map<String, Integer> offsets) {
+    this(offsets, Collections.<String, String>emptyMap(), 0);
+  }
+
+  SearchCursor(Map<String, Integer> offsets, Map<String, String> positions) {
+    this(offsets, positions, 0);
+  }
+
+  private SearchCursor(Map<String, Integer> offsets, Map<String, String> positions, int defaultOffset) {
+    this.offsets = offsets;
+    this.positions = positions;
+    this.defaultOffset = defaultOffset;
+  }
+
+  /**
+   * @param offset the number of results of each type to skip
+   * @return the cursor of a first page starting at the given offset for every connector
+   */
+  public static SearchCursor startingAt(int offset) {
+    return offset <= 0 ? START : new SearchCursor(Collections.<String, Integer>emptyMap(), Collections.<String, String>emptyMap(), offset);
+  }
+
+  /**
+   * @param cursor a cursor returned with a previous page, or null or empty for the first page
+   * @throws IllegalArgumentException if the cursor is malformed
+   */
+  public static SearchCursor parse(String cursor) {
+    if (null == cursor || cursor.trim().isEmpty()) return START;
+    Map<String, Integer> offsets = new LinkedHashMap<String, Integer>();
+    Map<String, String> positions = new LinkedHashMap<String, String>();
+    for (String position : cursor.split(",")) {
+      int colon = position.lastIndexOf(':');
+      if (colon <= 0) throw new IllegalArgumentException("Invalid search cursor: " + cursor);
+      String searchType = position.substring(0, colon).trim();
+      String offsetAndPosition = position.substring(colon + 1).trim();
+      int tilde = offsetAndPosition.indexOf('~');
+      try {
+        int offset = Integer.parseInt(-1 == tilde ? offsetAndPosition : offsetAndPosition.substring(0, tilde));
+        if (offset < EXHAUSTED) throw new IllegalArgumentException("Invalid search cursor: " + cursor);
+        offsets.put(searchType, offset);
+        if (-1 != tilde) positions.put(searchType, URLDecoder.decode(offsetAndPosition.substring(tilde + 1), "UTF-8"));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid search cursor: " + cursor);
+      } catch (UnsupportedEncodingException e) {
+        throw new IllegalStateException(e); //UTF-8 is always supported
+      }
+    }
+    return new SearchCursor(Collections.unmodifiableMap(offsets), Collections.unmodifiableMap(positions));
+  }
+
+  /**
+   * @return the number of results of the given type already returned
+   */
+  public int getOffset(String searchType) {
+    Integer offset = offsets.get(searchType);
+    if (null == offset) return defaultOffset;
+    return offset == EXHAUSTED ? 0 : offset;
+  }
+
+  /**
+   * @return the position of the last result of the given type already returned, or null if the connector
+   * is not resumable or nothing was returned yet
+   */
+  public String getPosition(String searchType) {
+    return positions.get(searchType);
+  }
+
+  public boolean isExhausted(String searchType) {
+    Integer offset = offsets.get(searchType);
+    return null != offset && offset == EXHAUSTED;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Integer> entry : offsets.entrySet()) {
+      if (sb.length() > 0) sb.append(',');
+      sb.append(entry.getKey()).append(':').append(entry.getValue());
+      String position = positions.get(entry.getKey());
+      if (null != position && entry.getValue() != EXHAUSTED) {
+        try {
+          sb.append('~').append(URLEncoder.encode(position, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+          throw new IllegalStateException(e); //UTF-8 is always supported
+        }
+      }
+    }
+    return sb.toString();
+  }
+}
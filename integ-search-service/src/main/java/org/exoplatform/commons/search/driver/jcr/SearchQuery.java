@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A search query split into its quoted terms and its single terms.
+ * <br>
+ * Quoted terms are the non-empty texts between two double quotes; the remaining double quotes are dropped
+ * and what is left is split on white spaces into single terms. Instances are immutable and can be shared by connectors.
+ */
+public final class SearchQuery {
+
+  private static final SearchQuery EMPTY = new SearchQuery(Collections.<String>emptyList(), Collections.<String>emptyList());
+
+  private final List<String> quotedTerms;
+  private final List<String> singleTerms;
+
+  private SearchQuery(List<String> quotedTerms, List<String> singleTerms) {
+    this.quotedTerms = quotedTerms;
+    this.singleTerms = singleTerms;
+  }
+
+  /**
+   * Tokenizes a query in a single pass.
+   * @param input the query entered by the user
+   * @return the parsed query, never null
+   */
+  public static SearchQuery parse(String input) {
+    if (null == input || input.isEmpty()) return EMPTY;
+
+    List<String> quoted = null;
+    List<String> single = null;
+    StringBuilder term = new StringBuilder();
+    int length = input.length();
+    int i = 0;
+    while (i < length) {
+      char c = input.charAt(i);
+      if (c == '"') {
+        int end = input.indexOf('"', i + 1);
+        if (end > i + 1) { //a quoted term, removed from the single terms without splitting them
+          if (null == quoted) quoted = new ArrayList<String>(2);
+          quoted.add(input.substring(i + 1, end));
+          i = end + 1;
+        } else { //an empty or unbalanced quote, dropped
+          i++;
+        }
+      } else if (isWhitespace(c)) {
+        if (term.length() > 0) {
+          if (null == single) single = new ArrayList<String>(4);
+          single.add(term.toString());
+          term.setLength(0);
+        }
+        i++;
+      } else {
+        term.append(c);
+        i++;
+      }
+    }
+    if (term.length() > 0) {
+      if (null == single) single = new ArrayList<String>(1);
+      single.add(term.toString());
+    }
+
+    if (null == quoted && null == single) return EMPTY;
+    return new SearchQuery(null == quoted ? Collections.<String>emptyList() : Collections.unmodifiableList(quoted),
+                           null == single ? Collections.<String>emptyList() : Collections.unmodifiableList(single));
+  }
+
+  /**
+   * @return the texts found between double quotes, without the quotes
+   */
+  public List<String> getQuotedTerms() {
+    return quotedTerms;
+  }
+
+  /**
+   * @return the terms found outside of double quotes
+   */
+  public List<String> getSingleTerms() {
+    return singleTerms;
+  }
+
+  public boolean isEmpty() {
+    return quotedTerms.isEmpty() && singleTerms.isEmpty();
+  }
+
+  /**
+   * @return the quoted terms first, then the single terms, separated by one space
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (String quoted : quotedTerms) sb.append('"').append(quoted.trim()).append("\" ");
+    for (String single : singleTerms) sb.append(single).append(' ');
+    return sb.toString().trim();
+  }
+
+  /** Same white spaces as the \s regular expression class. */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.exoplatform.commons.api.search.data.SearchResult;
+
+/**
+ * Receives the results of each connector as soon as it answers, in completion order.
+ * @see JcrSearchDriver#search(org.exoplatform.commons.api.search.data.SearchContext, String, Collection, Collection, int, int, String, String, SearchResultHandler)
+ */
+public interface SearchResultHandler {
+
+  /**
+   * Called once per connector which answered or missed its deadline, on the requesting thread.
+   * @param searchType the search type of the connector
+   * @param results the connector results, or {@link TimedOutSearchResults#INSTANCE} when it did not answer in time
+   * @throws IOException when the results cannot be written, the remaining connectors are then cancelled
+   */
+  void handle(String searchType, Collection<SearchResult> results) throws IOException;
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.exoplatform.commons.api.search.data.SearchResult;
+
+/**
+ * Merges the results of several connectors into one ranked page.
+ * <br>
+ * Each connector is expected to return its results already sorted the way they are merged; a k-way merge over
+ * a heap of the connector heads then gives the best results overall while reading only one page of each connector.
+ */
+final class SearchResultMerger {
+
+  private SearchResultMerger() {
+  }
+
+  /**
+   * @param searchTypes the searched types, ties are broken in this order
+   * @param results the page of results of each connector, starting at its offset in the cursor
+   * @param cursor the cursor the connectors were searched from
+   * @param limit the size of the page
+   * @param comparator the ranking of the results
+   */
+  static SearchResultPage merge(List<String> searchTypes, Map<String, Collection<SearchResult>> results, SearchCursor cursor, int limit, Comparator<SearchResult> comparator) {
+    return merge(searchTypes, results, cursor, limit, comparator, Collections.<String, ResumableSearchConnector>emptyMap(), null, null);
+  }
+
+  /**
+   * Merges like {@link #merge(List, Map, SearchCursor, int, Comparator)}, keeping in the next cursor the position of
+   * the last merged result of each resumable connector.
+   * @param resumableConnectors the searched connectors which can resume after a position, by search type
+   * @param sort the sort the connectors were searched with
+   * @param order the order the connectors were searched with
+   */
+  static SearchResultPage merge(List<String> searchTypes, Map<String, Collection<SearchResult>> results, SearchCursor cursor, int limit, Comparator<SearchResult> comparator,
+                                Map<String, ResumableSearchConnector> resumableConnectors, String sort, String order) {
+    PriorityQueue<Head> heap = new PriorityQueue<Head>(Math.max(1, searchTypes.size()), new HeadComparator(comparator));
+    Map<String, Integer> offsets = new LinkedHashMap<String, Integer>();
+    for (int i = 0; i < searchTypes.size(); i++) {
+      String searchType = searchTypes.get(i);
+      if (cursor.isExhausted(searchType)) {
+        offsets.put(searchType, SearchCursor.EXHAUSTED);
+        continue;
+      }
+      offsets.put(searchType, cursor.getOffset(searchType));
+      Collection<SearchResult> connectorResults = results.get(searchType);
+      //connectors which failed or timed out are searched again from the same offset with the next page
+      if (null == connectorResults || TimedOutSearchResults.isTimedOut(connectorResults)) continue;
+      Head head = new Head(searchType, i, connectorResults.iterator(), connectorResults.size() < limit);
+      if (head.next()) heap.add(head);
+      else if (head.last) offsets.put(searchType, SearchCursor.EXHAUSTED);
+    }
+
+    List<RankedSearchResult> page = new ArrayList<RankedSearchResult>(limit);
+    Map<String, SearchResult> lastResults = new HashMap<String, SearchResult>();
+    while (page.size() < limit && !heap.isEmpty()) {
+      Head head = heap.poll();
+      page.add(new RankedSearchResult(head.searchType, head.current));
+      lastResults.put(head.searchType, head.current);
+      offsets.put(head.searchType, offsets.get(head.searchType) + 1);
+      if (head.next()) heap.add(head);
+      else if (head.last) offsets.put(head.searchType, SearchCursor.EXHAUSTED);
+    }
+
+    boolean exhausted = true;
+    for (Integer offset : offsets.values()) {
+      if (offset != SearchCursor.EXHAUSTED) {
+        exhausted = false;
+        break;
+      }
+    }
+    if (exhausted) return new SearchResultPage(page, null);
+
+    Map<String, String> positions = new LinkedHashMap<String, String>();
+    for (Map.Entry<String, ResumableSearchConnector> entry : resumableConnectors.entrySet()) {
+      String searchType = entry.getKey();
+      SearchResult lastResult = lastResults.get(searchType);
+      //a connector with no merged result this time resumes from the same position with the next page
+      String position = null != lastResult ? entry.getValue().getPosition(lastResult, sort, order) : cursor.getPosition(searchType);
+      if (null != position) positions.put(searchType, position);
+    }
+    return new SearchResultPage(page, new SearchCursor(offsets, positions).toString());
+  }
+
+  /**
+   * @param sort relevancy, date or title
+   * @param order asc or desc
+   * @return the ranking of the results of a merged search
+   */
+  static Comparator<SearchResult> getComparator(String sort, String order) {
+    final boolean ascending = "asc".equalsIgnoreCase(order);
+    if ("title".equalsIgnoreCase(sort)) {
+      return new Comparator<SearchResult>() {
+        @Override
+        public int compare(SearchResult r1, SearchResult r2) {
+          String t1 = null == r1.getTitle() ? "" : r1.getTitle();
+          String t2 = null == r2.getTitle() ? "" : r2.getTitle();
+          int comparison = t1.compareToIgnoreCase(t2);
+          return ascending ? comparison : -comparison;
+        }
+      };
+    }
+    final boolean byDate = "date".equalsIgnoreCase(sort);
+    return new Comparator<SearchResult>() {
+      @Override
+      public int compare(SearchResult r1, SearchResult r2) {
+        long v1 = byDate ? r1.getDate() : r1.getRelevancy();
+        long v2 = byDate ? r2.getDate() : r2.getRelevancy();
+        int comparison = v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+        return ascending ? comparison : -comparison;
+      }
+    };
+  }
+
+  private static class Head {
+    private final String searchType;
+    private final int rank;
+    private final Iterator<SearchResult> results;
+    /** whether the connector returned less than a page, i.e. it has nothing after these results */
+    private final boolean last;
+    private SearchResult current;
+
+    private Head(String searchType, int rank, Iterator<SearchResult> results, boolean last) {
+      this.searchType = searchType;
+      this.rank = rank;
+      this.results = results;
+      this.last = last;
+    }
+
+    private boolean next() {
+      current = results.hasNext() ? results.next() : null;
+      return null != current;
+    }
+  }
+
+  private static class HeadComparator implements Comparator<Head> {
+    private final Comparator<SearchResult> comparator;
+
+    private HeadComparator(Comparator<SearchResult> comparator) {
+      this.comparator = comparator;
+    }
+
+    @Override
+    public int compare(Head h1, Head h2) {
+      int comparison = comparator.compare(h1.current, h2.current);
+      return comparison != 0 ? comparison : h1.rank - h2.rank;
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import java.util.List;
+
+/**
+ * One page of a merged search: the results of all the connectors ranked together, and the cursor of the next page.
+ */
+public class SearchResultPage {
+
+  private final List<RankedSearchResult> results;
+  private final String cursor;
+
+  public SearchResultPage(List<RankedSearchResult> results, String cursor) {
+    this.results = results;
+    this.cursor = cursor;
+  }
+
+  public List<RankedSearchResult> getResults() {
+    return results;
+  }
+
+  /**
+   * @return the cursor to pass to get the next page, or null if there are no more results
+   */
+  public String getCursor() {
+    return cursor;
+  }
+}
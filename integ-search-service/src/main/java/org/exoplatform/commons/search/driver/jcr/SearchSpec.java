@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import java.util.Collection;
+
+/**
+ * One search of a batch run by {@link JcrSearchDriver#search(org.exoplatform.commons.api.search.data.SearchContext, java.util.List)}.
+ */
+public final class SearchSpec {
+
+  private final String query;
+  private final Collection<String> sites;
+  private final Collection<String> types;
+  private final int offset;
+  private final int limit;
+  private final String sort;
+  private final String order;
+
+  public SearchSpec(String query, Collection<String> sites, Collection<String> types, int offset, int limit, String sort, String order) {
+    this.query = query;
+    this.sites = sites;
+    this.types = types;
+    this.offset = offset;
+    this.limit = limit;
+    this.sort = sort;
+    this.order = order;
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  public Collection<String> getSites() {
+    return sites;
+  }
+
+  public Collection<String> getTypes() {
+    return types;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public String getSort() {
+    return sort;
+  }
+
+  public String getOrder() {
+    return order;
+  }
+}
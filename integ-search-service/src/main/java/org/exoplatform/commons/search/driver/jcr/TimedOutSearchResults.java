@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import java.util.AbstractList;
+import java.util.Collection;
+
+import org.exoplatform.commons.api.search.data.SearchResult;
+
+/**
+ * An empty result set put in place of the results of a connector which did not answer before its deadline,
+ * or which was not called at all because its circuit breaker is open or its concurrency limit is reached.
+ * It is serialized as an empty array, so clients which do not know about it simply see no result for that type.
+ */
+public final class TimedOutSearchResults extends AbstractList<SearchResult> {
+
+  public static final TimedOutSearchResults INSTANCE = new TimedOutSearchResults();
+
+  private TimedOutSearchResults() {
+  }
+
+  public static boolean isTimedOut(Collection<SearchResult> results) {
+    return results instanceof TimedOutSearchResults;
+  }
+
+  @Override
+  public SearchResult get(int index) {
+    throw new IndexOutOfBoundsException("Index: " + index + ", Size: 0");
+  }
+
+  @Override
+  public int size() {
+    return 0;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Calls of the search driver to one connector: latency (in microseconds) and result count histograms,
+ * error, timeout and shed counters, and the number of calls in progress.
+ */
+public class ConnectorMetrics {
+
+  private final Histogram latency = new Histogram();
+  private final Histogram results = new Histogram();
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong shed = new AtomicLong();
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  public void onStart() {
+    inFlight.incrementAndGet();
+  }
+
+  /**
+   * @param duration duration of the call, in microseconds
+   * @param resultCount number of results returned by the connector
+   */
+  public void onSuccess(long duration, int resultCount) {
+    inFlight.decrementAndGet();
+    latency.record(duration);
+    results.record(resultCount);
+  }
+
+  /**
+   * @param duration duration of the call, in microseconds
+   */
+  public void onFailure(long duration) {
+    inFlight.decrementAndGet();
+    latency.record(duration);
+    errors.incrementAndGet();
+  }
+
+  /**
+   * Counts a call whose results were not waited for, the call itself is still measured when it ends.
+   */
+  public void onTimeout() {
+    timeouts.incrementAndGet();
+  }
+
+  /**
+   * Counts a call which was not made, to protect a failing or overloaded connector, or because the search pool was saturated.
+   */
+  public void onShed() {
+    shed.incrementAndGet();
+  }
+
+  public HistogramSnapshot getLatency() {
+    return latency.getSnapshot();
+  }
+
+  public HistogramSnapshot getResults() {
+    return results.getSnapshot();
+  }
+
+  public long getErrors() {
+    return errors.get();
+  }
+
+  public long getTimeouts() {
+    return timeouts.get();
+  }
+
+  public long getShed() {
+    return shed.get();
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  void reset() {
+    latency.reset();
+    results.reset();
+    errors.set(0);
+    timeouts.set(0);
+    shed.set(0);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of positive values, in the way of HdrHistogram: values are counted in buckets whose width
+ * doubles every 64 buckets, so that any recorded value is known within 1/64 (about 1.5%) of its magnitude,
+ * with a constant memory footprint. Values up to 127 are counted exactly.
+ */
+public class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+  private static final int MAX_SHIFT = 40; //values up to 2^47, larger ones are counted in the last bucket
+
+  private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKET_COUNT + MAX_SHIFT * SUB_BUCKET_HALF);
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long value) {
+    if (value < 0) value = 0;
+    counts.incrementAndGet(indexOf(value));
+    sum.addAndGet(value);
+    long currentMax = max.get();
+    while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+      currentMax = max.get();
+    }
+  }
+
+  /**
+   * @return the count, the mean, the maximum and the usual percentiles of the values recorded so far
+   */
+  public HistogramSnapshot getSnapshot() {
+    long[] copy = new long[counts.length()];
+    long count = 0;
+    for (int i = 0; i < copy.length; i++) {
+      copy[i] = counts.get(i);
+      count += copy[i];
+    }
+    long maxValue = max.get();
+    double mean = count == 0 ? 0 : (double) sum.get() / count;
+    return new HistogramSnapshot(count, mean, maxValue,
+                                 getValueAtPercentile(copy, count, maxValue, 50),
+                                 getValueAtPercentile(copy, count, maxValue, 90),
+                                 getValueAtPercentile(copy, count, maxValue, 99),
+                                 getValueAtPercentile(copy, count, maxValue, 99.9));
+  }
+
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+    sum.set(0);
+    max.set(0);
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKET_COUNT) return (int) value;
+    int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+    if (shift > MAX_SHIFT) return SUB_BUCKET_COUNT + MAX_SHIFT * SUB_BUCKET_HALF - 1;
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (int) (value >> shift) - SUB_BUCKET_HALF;
+  }
+
+  /**
+   * @return the highest value counted in the given bucket
+   */
+  static long highestValueOf(int index) {
+    if (index < SUB_BUCKET_COUNT) return index;
+    int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+    long mantissa = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+    return ((mantissa + 1) << shift) - 1;
+  }
+
+  private static long getValueAtPercentile(long[] counts, long count, long maxValue, double percentile) {
+    if (count == 0) return 0;
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) return Math.min(highestValueOf(i), maxValue);
+    }
+    return maxValue;
+  }
+}
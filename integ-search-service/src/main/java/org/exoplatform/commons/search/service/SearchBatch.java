@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+import java.util.List;
+
+/**
+ * Body of a batch search: <code>{"queries": [{"id": "people", "q": "john", "types": "people"}, ...]}</code>
+ */
+public class SearchBatch {
+  private List<SearchBatchQuery> queries;
+
+  public List<SearchBatchQuery> getQueries() {
+    return queries;
+  }
+  public void setQueries(List<SearchBatchQuery> queries) {
+    this.queries = queries;
+  }
+}
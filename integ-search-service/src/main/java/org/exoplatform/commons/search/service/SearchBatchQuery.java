@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+/**
+ * One query of a batch search, with the same parameters as a single search.
+ */
+public class SearchBatchQuery {
+  private String id;
+  private String q;
+  private String sites = "all";
+  private String types;
+  private String offset = "0";
+  private String limit;
+  private String sort = "relevancy";
+  private String order = "desc";
+
+  /**
+   * @return the identifier the results of the query are returned with
+   */
+  public String getId() {
+    return id;
+  }
+  public void setId(String id) {
+    this.id = id;
+  }
+  public String getQ() {
+    return q;
+  }
+  public void setQ(String q) {
+    this.q = q;
+  }
+  public String getSites() {
+    return sites;
+  }
+  public void setSites(String sites) {
+    this.sites = sites;
+  }
+  public String getTypes() {
+    return types;
+  }
+  public void setTypes(String types) {
+    this.types = types;
+  }
+  public String getOffset() {
+    return offset;
+  }
+  public void setOffset(String offset) {
+    this.offset = offset;
+  }
+  public String getLimit() {
+    return limit;
+  }
+  public void setLimit(String limit) {
+    this.limit = limit;
+  }
+  public String getSort() {
+    return sort;
+  }
+  public void setSort(String sort) {
+    this.sort = sort;
+  }
+  public String getOrder() {
+    return order;
+  }
+  public void setOrder(String order) {
+    this.order = order;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+
+/**
+ * Latency of the phases of the unified search and of the calls to each connector, in microseconds.
+ * <br>
+ * The phases are the parsing of the query ({@value #PARSE_PHASE}), the rewriting of the result URLs
+ * ({@value #URLS_PHASE}) and the serialization of the response ({@value #SERIALIZATION_PHASE}).
+ * Everything is kept since the start of the server or the last {@link #reset()}.
+ */
+@Managed
+@ManagedDescription("Unified search metrics")
+@NameTemplate({ @Property(key = "service", value = "unifiedsearch"), @Property(key = "view", value = "metrics") })
+public class SearchMetrics {
+
+  public static final String PARSE_PHASE = "parse";
+  public static final String URLS_PHASE = "urls";
+  public static final String SERIALIZATION_PHASE = "serialization";
+
+  private final ConcurrentMap<String, Histogram> phases = new ConcurrentHashMap<String, Histogram>();
+  private final ConcurrentMap<String, ConnectorMetrics> connectors = new ConcurrentHashMap<String, ConnectorMetrics>();
+
+  /**
+   * @param phase the phase name
+   * @param start the start of the phase, as returned by {@link System#nanoTime()}
+   */
+  public void recordPhase(String phase, long start) {
+    Histogram histogram = phases.get(phase);
+    if (null == histogram) {
+      histogram = new Histogram();
+      Histogram existing = phases.putIfAbsent(phase, histogram);
+      if (null != existing) histogram = existing;
+    }
+    histogram.record((System.nanoTime() - start) / 1000);
+  }
+
+  public ConnectorMetrics getConnectorMetrics(String searchType) {
+    ConnectorMetrics metrics = connectors.get(searchType);
+    if (null == metrics) {
+      metrics = new ConnectorMetrics();
+      ConnectorMetrics existing = connectors.putIfAbsent(searchType, metrics);
+      if (null != existing) metrics = existing;
+    }
+    return metrics;
+  }
+
+  /**
+   * @return the latency of each phase, by phase name
+   */
+  public Map<String, HistogramSnapshot> getPhases() {
+    Map<String, HistogramSnapshot> snapshots = new TreeMap<String, HistogramSnapshot>();
+    for (Map.Entry<String, Histogram> entry : phases.entrySet()) {
+      snapshots.put(entry.getKey(), entry.getValue().getSnapshot());
+    }
+    return snapshots;
+  }
+
+  /**
+   * @return the metrics of each connector, by search type
+   */
+  public Map<String, ConnectorMetrics> getConnectors() {
+    return new TreeMap<String, ConnectorMetrics>(connectors);
+  }
+
+  @Managed
+  @ManagedDescription("Latency (in microseconds) of the search phases and of each connector, results and errors of each connector")
+  public String getReport() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, HistogramSnapshot> entry : getPhases().entrySet()) {
+      sb.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+    }
+    for (Map.Entry<String, ConnectorMetrics> entry : getConnectors().entrySet()) {
+      ConnectorMetrics metrics = entry.getValue();
+      sb.append(entry.getKey()).append(": ").append(metrics.getLatency())
+        .append(" | results: ").append(metrics.getResults())
+        .append(" | errors=").append(metrics.getErrors())
+        .append(" timeouts=").append(metrics.getTimeouts())
+        .append(" shed=").append(metrics.getShed())
+        .append(" inFlight=").append(metrics.getInFlight()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Managed
+  @ManagedDescription("Number of connector calls in progress")
+  public int getInFlight() {
+    int inFlight = 0;
+    for (ConnectorMetrics metrics : connectors.values()) {
+      inFlight += metrics.getInFlight();
+    }
+    return inFlight;
+  }
+
+  @Managed
+  @ManagedDescription("Forget the values recorded so far")
+  public void reset() {
+    for (Histogram histogram : phases.values()) {
+      histogram.reset();
+    }
+    for (ConnectorMetrics metrics : connectors.values()) {
+      metrics.reset();
+    }
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.commons.api.search.data.SearchResult;
+import org.exoplatform.commons.search.driver.jcr.JcrSearchDriver;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.listener.Event;
+import org.exoplatform.services.listener.Listener;
+import org.exoplatform.services.listener.ListenerService;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.services.security.MembershipEntry;
+import org.exoplatform.social.integration.SearchContentNotifier;
+
+/**
+ * LRU cache of unified search results, with a time to live.
+ * <br>
+ * Entries are keyed by the normalized query, the sites, the types, the paging and sorting parameters
+ * and a fingerprint of the caller's memberships. They are dropped when one of the integration activity
+ * publishers broadcasts {@link #CONTENT_CHANGED_EVENT} for a search type the entry covers.
+ * A search takes the {@link #getGeneration() generation} of the cache when it starts, its results are not
+ * stored if the cache was invalidated while it was running, since they may miss the changed content.
+ */
+@Managed
+@ManagedDescription("Unified search result cache")
+@NameTemplate({ @Property(key = "service", value = "unifiedsearch"), @Property(key = "view", value = "resultcache") })
+public class SearchResultCache {
+  private final static Log LOG = ExoLogger.getLogger(SearchResultCache.class);
+
+  /** Event broadcast through the {@link ListenerService} when content of a search type is written, its source is the search type. */
+  public static final String CONTENT_CHANGED_EVENT = SearchContentNotifier.CONTENT_CHANGED_EVENT;
+
+  public static final String MAX_SIZE_PARAM = "cache.max.size";
+  public static final String TIME_TO_LIVE_PARAM = "cache.time-to-live";
+  public static final String SHARED_PARAM = "cache.shared";
+
+  private static final int DEFAULT_MAX_SIZE = 1000;
+  private static final long DEFAULT_TIME_TO_LIVE = 60; //seconds
+
+  private final int maxSize;
+  private final long timeToLive;
+  private final boolean shared;
+
+  private final Map<String, CacheEntry> entries;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /** Incremented under the lock of the entries on each invalidation */
+  private long generation;
+
+  public SearchResultCache(ListenerService listenerService, InitParams params) {
+    this.maxSize = (int) getLongParam(params, MAX_SIZE_PARAM, DEFAULT_MAX_SIZE);
+    this.timeToLive = getLongParam(params, TIME_TO_LIVE_PARAM, DEFAULT_TIME_TO_LIVE) * 1000;
+    ValueParam sharedParam = null != params ? params.getValueParam(SHARED_PARAM) : null;
+    this.shared = null != sharedParam && Boolean.parseBoolean(sharedParam.getValue());
+
+    this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+        if (size() > SearchResultCache.this.maxSize) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+
+    listenerService.addListener(CONTENT_CHANGED_EVENT, new Listener<String, Object>() {
+      @Override
+      public void onEvent(Event<String, Object> event) throws Exception {
+        invalidate(event.getSource());
+      }
+    });
+    //results of types which are now disabled must not be served anymore
+    listenerService.addListener(SearchTypeRegistry.ENABLED_TYPES_CHANGED_EVENT, new Listener<Object, String>() {
+      @Override
+      public void onEvent(Event<Object, String> event) throws Exception {
+        clear();
+      }
+    });
+  }
+
+  /**
+   * Builds the key of a search request.
+   * @param identity the caller, used for the membership fingerprint
+   * @param baseUri the base URI the result URLs are made absolute with
+   * @param siteName the site of the search context
+   * @return the cache key
+   */
+  public String getKey(Identity identity, String baseUri, String siteName, String query, Collection<String> sites, Collection<String> types, int offset, int limit, String sort, String order) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(JcrSearchDriver.normalizeQuery(query)).append('\u0000')
+      .append(sites).append('\u0000')
+      .append(types).append('\u0000')
+      .append(offset).append('\u0000')
+      .append(limit).append('\u0000')
+      .append(sort).append('\u0000')
+      .append(order).append('\u0000')
+      .append(siteName).append('\u0000')
+      .append(baseUri).append('\u0000')
+      .append(getFingerprint(identity));
+    return sb.toString();
+  }
+
+  public Map<String, Collection<SearchResult>> get(String key) {
+    CacheEntry entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+      if (null != entry && entry.expiry < System.currentTimeMillis()) {
+        entries.remove(key);
+        entry = null;
+      }
+    }
+    if (null == entry) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return entry.results;
+  }
+
+  /**
+   * @return the generation to give to {@link #put(String, long, Collection, Map)} with the results of a search
+   *         starting now
+   */
+  public long getGeneration() {
+    synchronized (entries) {
+      return generation;
+    }
+  }
+
+  /**
+   * Stores the results of a search, unless the cache was invalidated since the search started.
+   * @param generation the generation of the cache when the search started
+   */
+  public void put(String key, long generation, Collection<String> types, Map<String, Collection<SearchResult>> results) {
+    CacheEntry entry = new CacheEntry(Collections.unmodifiableMap(results), new ArrayList<String>(types), System.currentTimeMillis() + timeToLive);
+    synchronized (entries) {
+      if (generation != this.generation) return;
+      entries.put(key, entry);
+    }
+  }
+
+  /**
+   * Drops the entries which may contain results of the given search type.
+   * @param searchType the search type whose content changed, or null to drop everything
+   */
+  public void invalidate(String searchType) {
+    if (null == searchType) {
+      clear();
+      return;
+    }
+    int count = 0;
+    synchronized (entries) {
+      generation++;
+      Iterator<CacheEntry> it = entries.values().iterator();
+      while (it.hasNext()) {
+        List<String> types = it.next().types;
+        if (types.contains("all") || types.contains(searchType)) {
+          it.remove();
+          count++;
+        }
+      }
+    }
+    invalidations.addAndGet(count);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(count + " cached search results invalidated for type " + searchType);
+    }
+  }
+
+  @Managed
+  @ManagedDescription("Drop all the cached search results")
+  public void clear() {
+    synchronized (entries) {
+      generation++;
+      invalidations.addAndGet(entries.size());
+      entries.clear();
+    }
+  }
+
+  @Managed
+  @ManagedDescription("Number of searches served from the cache")
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  @Managed
+  @ManagedDescription("Number of searches sent to the connectors")
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  @Managed
+  @ManagedDescription("Ratio of searches served from the cache")
+  public double getHitRatio() {
+    long hitCount = hits.get();
+    long total = hitCount + misses.get();
+    return total == 0 ? 0 : (double) hitCount / total;
+  }
+
+  @Managed
+  @ManagedDescription("Number of entries removed to respect the maximum size")
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  @Managed
+  @ManagedDescription("Number of entries removed because their content changed")
+  public long getInvalidationCount() {
+    return invalidations.get();
+  }
+
+  @Managed
+  @ManagedDescription("Number of cached searches")
+  public int getSize() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  @Managed
+  @ManagedDescription("Maximum number of cached searches")
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Fingerprints the memberships of an identity so that users sharing the same memberships share the same entries.
+   * Unless the cache is configured as shared, the user id is part of the fingerprint too, since connectors may
+   * also filter on permissions granted to the user directly.
+   */
+  private String getFingerprint(Identity identity) {
+    if (null == identity) return "";
+    List<String> memberships = new ArrayList<String>();
+    for (MembershipEntry membership : identity.getMemberships()) {
+      memberships.add(membership.toString());
+    }
+    Collections.sort(memberships);
+    StringBuilder sb = new StringBuilder();
+    if (!shared) sb.append(identity.getUserId()).append('|');
+    for (String membership : memberships) {
+      sb.append(membership).append('|');
+    }
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(sb.toString().getBytes("UTF-8"));
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (Exception e) {
+      return sb.toString();
+    }
+  }
+
+  private static long getLongParam(InitParams params, String name, long defaultValue) {
+    if (null == params) return defaultValue;
+    ValueParam param = params.getValueParam(name);
+    if (null == param || null == param.getValue()) return defaultValue;
+    try {
+      long value = Long.parseLong(param.getValue().trim());
+      return value > 0 ? value : defaultValue;
+    } catch (NumberFormatException e) {
+      LOG.warn("Invalid value for " + name + ": " + param.getValue() + ", using " + defaultValue);
+      return defaultValue;
+    }
+  }
+
+  private static class CacheEntry {
+    private final Map<String, Collection<SearchResult>> results;
+    private final List<String> types;
+    private final long expiry;
+
+    private CacheEntry(Map<String, Collection<SearchResult>> results, List<String> types, long expiry) {
+      this.results = results;
+      this.types = types;
+      this.expiry = expiry;
+    }
+  }
+}
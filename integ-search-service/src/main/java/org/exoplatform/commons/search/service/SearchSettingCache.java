@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * LRU cache of the search settings, with a time to live.
+ * <br>
+ * The settings of each user are keyed by their user id, the quick search settings (which are global) by {@link #QUICKSEARCH_KEY}.
+ * {@link UnifiedSearchService} writes through this cache when it saves settings; the time to live bounds how long
+ * a change made on another cluster node stays unseen.
+ */
+@Managed
+@ManagedDescription("Unified search setting cache")
+@NameTemplate({ @Property(key = "service", value = "unifiedsearch"), @Property(key = "view", value = "settingcache") })
+public class SearchSettingCache {
+  private final static Log LOG = ExoLogger.getLogger(SearchSettingCache.class);
+
+  /** Key of the quick search settings, it cannot be a user id. */
+  public static final String QUICKSEARCH_KEY = "\u0000quicksearch";
+
+  public static final String MAX_SIZE_PARAM = "cache.max.size";
+  public static final String TIME_TO_LIVE_PARAM = "cache.time-to-live";
+
+  private static final int DEFAULT_MAX_SIZE = 500;
+  private static final long DEFAULT_TIME_TO_LIVE = 300; //seconds
+
+  private final int maxSize;
+  private final long timeToLive;
+
+  private final Map<String, CacheEntry> entries;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public SearchSettingCache(InitParams params) {
+    this.maxSize = (int) getLongParam(params, MAX_SIZE_PARAM, DEFAULT_MAX_SIZE);
+    this.timeToLive = getLongParam(params, TIME_TO_LIVE_PARAM, DEFAULT_TIME_TO_LIVE) * 1000;
+    this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+        return size() > SearchSettingCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * @param key a user id or {@link #QUICKSEARCH_KEY}
+   * @return the cached settings, or null if they are not cached or expired
+   */
+  public SearchSetting get(String key) {
+    CacheEntry entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+      if (null != entry && entry.expiry < System.currentTimeMillis()) {
+        entries.remove(key);
+        entry = null;
+      }
+    }
+    if (null == entry) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return entry.setting;
+  }
+
+  public void put(String key, SearchSetting setting) {
+    CacheEntry entry = new CacheEntry(setting, System.currentTimeMillis() + timeToLive);
+    synchronized (entries) {
+      entries.put(key, entry);
+    }
+  }
+
+  public void remove(String key) {
+    synchronized (entries) {
+      entries.remove(key);
+    }
+  }
+
+  @Managed
+  @ManagedDescription("Drop all the cached search settings")
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  @Managed
+  @ManagedDescription("Number of search settings served from the cache")
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  @Managed
+  @ManagedDescription("Number of search settings read from the setting service")
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  @Managed
+  @ManagedDescription("Number of cached search settings")
+  public int getSize() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  private static long getLongParam(InitParams params, String name, long defaultValue) {
+    if (null == params) return defaultValue;
+    ValueParam param = params.getValueParam(name);
+    if (null == param || null == param.getValue()) return defaultValue;
+    try {
+      long value = Long.parseLong(param.getValue().trim());
+      return value > 0 ? value : defaultValue;
+    } catch (NumberFormatException e) {
+      LOG.warn("Invalid value for " + name + ": " + param.getValue() + ", using " + defaultValue);
+      return defaultValue;
+    }
+  }
+
+  private static class CacheEntry {
+    private final SearchSetting setting;
+    private final long expiry;
+
+    private CacheEntry(SearchSetting setting, long expiry) {
+      this.setting = setting;
+      this.expiry = expiry;
+    }
+  }
+}
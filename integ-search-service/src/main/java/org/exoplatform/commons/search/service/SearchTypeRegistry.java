@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.commons.api.search.SearchService;
+import org.exoplatform.commons.api.search.SearchServiceConnector;
+import org.exoplatform.commons.api.settings.SettingService;
+import org.exoplatform.commons.api.settings.SettingValue;
+import org.exoplatform.commons.api.settings.data.Context;
+import org.exoplatform.commons.api.settings.data.Scope;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.listener.Event;
+import org.exoplatform.services.listener.Listener;
+import org.exoplatform.services.listener.ListenerService;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * In-memory registry of the search connectors and of the enabled search types.
+ * <br>
+ * The "enabledSearchTypes" global setting is read once, then kept until {@link #setEnabledSearchTypes(String)} changes it
+ * (which broadcasts {@link #ENABLED_TYPES_CHANGED_EVENT}) or until the reload interval is over, so that the other nodes
+ * of a cluster catch up with a change made on one of them.
+ */
+@Managed
+@ManagedDescription("Unified search type registry")
+@NameTemplate({ @Property(key = "service", value = "unifiedsearch"), @Property(key = "view", value = "searchtypes") })
+public class SearchTypeRegistry {
+  private final static Log LOG = ExoLogger.getLogger(SearchTypeRegistry.class);
+
+  /** Event broadcast through the {@link ListenerService} when the enabled search types are changed, its data is the new value. */
+  public static final String ENABLED_TYPES_CHANGED_EVENT = "exo.unified-search.enabled-types.changed";
+
+  public static final String RELOAD_INTERVAL_PARAM = "registry.reload-interval";
+
+  private static final String ENABLED_SEARCH_TYPES = "enabledSearchTypes";
+  private static final long DEFAULT_RELOAD_INTERVAL = 60; //seconds
+
+  private final SettingService settingService;
+  private final ListenerService listenerService;
+  private final long reloadInterval;
+
+  private final AtomicLong generation = new AtomicLong();
+  private volatile SearchTypes searchTypes;
+
+  public SearchTypeRegistry(SettingService settingService, ListenerService listenerService, InitParams params) {
+    this.settingService = settingService;
+    this.listenerService = listenerService;
+    this.reloadInterval = getReloadInterval(params) * 1000;
+
+    listenerService.addListener(ENABLED_TYPES_CHANGED_EVENT, new Listener<Object, String>() {
+      @Override
+      public void onEvent(Event<Object, String> event) throws Exception {
+        invalidate();
+      }
+    });
+  }
+
+  /**
+   * @return the enabled search types, or the types of all the connectors if they have never been set
+   */
+  public List<String> getEnabledSearchTypes() {
+    return getSearchTypes().enabledTypes;
+  }
+
+  public boolean isEnabled(String searchType) {
+    return getSearchTypes().enabledTypeSet.contains(searchType);
+  }
+
+  /**
+   * @return the registered connectors, by search type
+   */
+  public Map<String, SearchServiceConnector> getConnectors() {
+    return getSearchTypes().connectors;
+  }
+
+  /**
+   * Stores the enabled search types in the global settings and tells the listeners of {@link #ENABLED_TYPES_CHANGED_EVENT}.
+   * @param searchTypes a comma-separated list of search types
+   */
+  public void setEnabledSearchTypes(String searchTypes) {
+    settingService.set(Context.GLOBAL, Scope.APPLICATION, ENABLED_SEARCH_TYPES, new SettingValue<String>(searchTypes));
+    invalidate();
+    try {
+      listenerService.broadcast(ENABLED_TYPES_CHANGED_EVENT, this, searchTypes);
+    } catch (Exception e) {
+      LOG.warn("Cannot broadcast " + ENABLED_TYPES_CHANGED_EVENT, e);
+    }
+  }
+
+  @Managed
+  @ManagedDescription("Read the enabled search types from the settings again on next search")
+  public void invalidate() {
+    generation.incrementAndGet();
+    searchTypes = null;
+  }
+
+  private SearchTypes getSearchTypes() {
+    SearchTypes current = searchTypes;
+    if (null != current && current.expiry > System.currentTimeMillis()) return current;
+
+    long loadedGeneration = generation.get();
+    current = load();
+    //do not keep what was loaded if it was invalidated meanwhile, the next search loads it again
+    if (generation.get() == loadedGeneration) searchTypes = current;
+    return current;
+  }
+
+  @SuppressWarnings("unchecked")
+  private SearchTypes load() {
+    SearchService searchService = (SearchService) ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(SearchService.class);
+    LinkedHashMap<String, SearchServiceConnector> connectors = new LinkedHashMap<String, SearchServiceConnector>();
+    for (SearchServiceConnector connector : searchService.getConnectors()) {
+      connectors.put(connector.getSearchType(), connector);
+    }
+
+    List<String> enabledTypes;
+    SettingValue<String> enabledSearchTypes = (SettingValue<String>) settingService.get(Context.GLOBAL, Scope.APPLICATION, ENABLED_SEARCH_TYPES);
+    if (null != enabledSearchTypes) {
+      enabledTypes = Arrays.asList(enabledSearchTypes.getValue().split(",\\s*"));
+    } else {
+      enabledTypes = new LinkedList<String>(connectors.keySet());
+    }
+    return new SearchTypes(Collections.unmodifiableMap(connectors), Collections.unmodifiableList(enabledTypes),
+                           System.currentTimeMillis() + reloadInterval);
+  }
+
+  private static long getReloadInterval(InitParams params) {
+    if (null == params) return DEFAULT_RELOAD_INTERVAL;
+    ValueParam param = params.getValueParam(RELOAD_INTERVAL_PARAM);
+    if (null == param || null == param.getValue()) return DEFAULT_RELOAD_INTERVAL;
+    try {
+      long value = Long.parseLong(param.getValue().trim());
+      return value > 0 ? value : DEFAULT_RELOAD_INTERVAL;
+    } catch (NumberFormatException e) {
+      LOG.warn("Invalid value for " + RELOAD_INTERVAL_PARAM + ": " + param.getValue() + ", using " + DEFAULT_RELOAD_INTERVAL);
+      return DEFAULT_RELOAD_INTERVAL;
+    }
+  }
+
+  private static class SearchTypes {
+    private final Map<String, SearchServiceConnector> connectors;
+    private final List<String> enabledTypes;
+    private final Set<String> enabledTypeSet;
+    private final long expiry;
+
+    private SearchTypes(Map<String, SearchServiceConnector> connectors, List<String> enabledTypes, long expiry) {
+      this.connectors = connectors;
+      this.enabledTypes = enabledTypes;
+      this.enabledTypeSet = new HashSet<String>(enabledTypes);
+      this.expiry = expiry;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.exoplatform.commons.api.search.data.SearchContext;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.portal.config.DataStorage;
+import org.exoplatform.portal.config.UserACL;
+import org.exoplatform.portal.config.model.PortalConfig;
+import org.exoplatform.services.listener.Event;
+import org.exoplatform.services.listener.Listener;
+import org.exoplatform.services.listener.ListenerService;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.web.WebAppController;
+import org.exoplatform.web.controller.metadata.ControllerDescriptor;
+import org.exoplatform.web.controller.metadata.DescriptorBuilder;
+import org.exoplatform.web.controller.router.Router;
+
+/**
+ * Keeps the site names and the controller router the search contexts are built with.
+ * <br>
+ * The portal configs are read once, then again after a portal config is created, updated or removed.
+ * They are kept unfiltered, the permissions of the caller are checked on each call.
+ * The router is built from the controller descriptor, and built again when that file is modified.
+ */
+@Managed
+@ManagedDescription("Unified search site registry")
+@NameTemplate({ @Property(key = "service", value = "unifiedsearch"), @Property(key = "view", value = "sites") })
+public class SiteRegistry {
+  private final static Log LOG = ExoLogger.getLogger(SiteRegistry.class);
+
+  /** Minimum time between two checks of the controller descriptor modification date. */
+  private static final long CHECK_INTERVAL = 10000; //milliseconds
+
+  private final DataStorage dataStorage;
+  private final UserACL userACL;
+  private final WebAppController webAppController;
+
+  private volatile Map<String, PortalConfig> portalConfigs;
+
+  private volatile Router router;
+  private volatile long routerLastModified;
+  private volatile long routerLastCheck;
+
+  public SiteRegistry(DataStorage dataStorage, UserACL userACL, WebAppController webAppController, ListenerService listenerService) {
+    this.dataStorage = dataStorage;
+    this.userACL = userACL;
+    this.webAppController = webAppController;
+
+    Listener<Object, Object> portalConfigListener = new Listener<Object, Object>() {
+      @Override
+      public void onEvent(Event<Object, Object> event) throws Exception {
+        invalidate();
+      }
+    };
+    listenerService.addListener(DataStorage.PORTAL_CONFIG_CREATED, portalConfigListener);
+    listenerService.addListener(DataStorage.PORTAL_CONFIG_UPDATED, portalConfigListener);
+    listenerService.addListener(DataStorage.PORTAL_CONFIG_REMOVED, portalConfigListener);
+
+    reloadRouter();
+  }
+
+  /**
+   * @return the names of the portal sites the current user has access to
+   */
+  public List<String> getAllPortalNames() throws Exception {
+    Map<String, PortalConfig> configs = getPortalConfigs();
+    List<String> names = new ArrayList<String>(configs.size());
+    for (Map.Entry<String, PortalConfig> entry : configs.entrySet()) {
+      if (userACL.hasPermission(entry.getValue())) names.add(entry.getKey());
+    }
+    return names;
+  }
+
+  private Map<String, PortalConfig> getPortalConfigs() throws Exception {
+    Map<String, PortalConfig> configs = portalConfigs;
+    if (null == configs) {
+      configs = new LinkedHashMap<String, PortalConfig>();
+      for (String name : dataStorage.getAllPortalNames()) {
+        PortalConfig config = dataStorage.getPortalConfig(PortalConfig.PORTAL_TYPE, name);
+        if (null != config) configs.put(name, config);
+      }
+      configs = Collections.unmodifiableMap(configs);
+      portalConfigs = configs;
+    }
+    return configs;
+  }
+
+  /**
+   * @return a new search context for the given site
+   */
+  public SearchContext getSearchContext(String siteName) {
+    return new SearchContext(getRouter(), siteName);
+  }
+
+  public Router getRouter() {
+    long now = System.currentTimeMillis();
+    if (now - routerLastCheck > CHECK_INTERVAL) {
+      routerLastCheck = now;
+      long lastModified = new File(webAppController.getConfigurationPath()).lastModified();
+      if (lastModified != routerLastModified) reloadRouter();
+    }
+    return router;
+  }
+
+  @Managed
+  @ManagedDescription("Read the site names again on next search")
+  public void invalidate() {
+    portalConfigs = null;
+  }
+
+  @Managed
+  @ManagedDescription("Build the router from the controller descriptor again")
+  public synchronized void reloadRouter() {
+    File controllerXml = new File(webAppController.getConfigurationPath());
+    try {
+      long lastModified = controllerXml.lastModified();
+      InputStream in = controllerXml.toURI().toURL().openStream();
+      try {
+        ControllerDescriptor routerDesc = new DescriptorBuilder().build(in);
+        this.router = new Router(routerDesc);
+      } finally {
+        in.close();
+      }
+      this.routerLastModified = lastModified;
+      this.routerLastCheck = System.currentTimeMillis();
+    } catch (Exception e) {
+      LOG.error(e.getMessage(), e); //keep the previous router, if any
+    }
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.commons.api.search.SearchService;
+import org.exoplatform.commons.api.search.SearchServiceConnector;
+import org.exoplatform.commons.api.search.data.SearchContext;
+import org.exoplatform.commons.api.search.data.SearchResult;
+import org.exoplatform.commons.search.driver.jcr.JcrSearchDriver;
+import org.exoplatform.commons.search.driver.jcr.SearchQuery;
+import org.exoplatform.commons.search.driver.jcr.SearchResultHandler;
+import org.exoplatform.commons.search.driver.jcr.TimedOutSearchResults;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.services.security.ConversationState;
+
+/**
+ * Searches for the quick search while the user is typing.
+ * <br>
+ * The candidates found for the last query of a user are kept in their conversation state. When the next query extends it
+ * (e.g. "proj" then "proje"), the candidates are filtered locally and the connectors are only searched again for the types
+ * which do not have enough candidates left. The connectors are not prefix-monotonic (fuzzy terms, matches in content the
+ * results do not show), so the candidate set of a type is never trusted once it is exhausted, and a type whose connector
+ * failed, which has no candidate set, is searched again. A request is dropped as soon as a newer one arrives from the same
+ * user, cancelling the connectors it was waiting for; the keystrokes are debounced by the quick search itself.
+ */
+public class TypeaheadSearcher {
+  private final static Log LOG = ExoLogger.getLogger(TypeaheadSearcher.class);
+
+  public static final String CANDIDATES_PARAM = "typeahead.candidates";
+  public static final String TIME_TO_LIVE_PARAM = "typeahead.time-to-live";
+
+  private static final long DEFAULT_CANDIDATES = 20;
+  private static final long DEFAULT_TIME_TO_LIVE = 30; //seconds
+
+  private static final String STATE_ATTRIBUTE = TypeaheadSearcher.class.getName();
+
+  private final SearchService searchService;
+  private final int candidates;
+  private final long timeToLive;
+
+  public TypeaheadSearcher(SearchService searchService, InitParams params) {
+    this.searchService = searchService;
+    this.candidates = (int) getLongParam(params, CANDIDATES_PARAM, DEFAULT_CANDIDATES);
+    this.timeToLive = getLongParam(params, TIME_TO_LIVE_PARAM, DEFAULT_TIME_TO_LIVE) * 1000;
+  }
+
+  /**
+   * Searches for the query typed so far.
+   * @param key identifies everything but the query: two queries with different keys never share candidates
+   * @param baseUri the base URI the result URLs are made absolute with
+   * @return the results by search type, or null if a newer request of the same user superseded this one
+   */
+  public Map<String, Collection<SearchResult>> search(String key, String baseUri, SearchContext context, String query, Collection<String> sites, Collection<String> types, int limit, String sort, String order) throws Exception {
+    TypeaheadState state = getState();
+    long ticket = state.newRequest();
+
+    SearchQuery searchQuery = SearchQuery.parse(query);
+    String normalizedQuery = searchQuery.toString();
+    int candidateLimit = Math.max(limit, candidates);
+
+    Map<String, List<SearchResult>> candidateResults = new HashMap<String, List<SearchResult>>();
+    Collection<String> searchedTypes = types;
+
+    TypeaheadEntry previous = state.getEntry();
+    if (null != previous && previous.isExtendedBy(key, normalizedQuery, System.currentTimeMillis())) {
+      List<String> terms = getTerms(searchQuery);
+      searchedTypes = new ArrayList<String>();
+      for (Map.Entry<String, List<SearchResult>> entry : previous.candidates.entrySet()) {
+        String searchType = entry.getKey();
+        List<SearchResult> filtered = filter(entry.getValue(), terms);
+        if (filtered.size() >= limit) {
+          candidateResults.put(searchType, filtered);
+        } else {
+          searchedTypes.add(searchType); //not enough candidates left, the connector may match more
+        }
+      }
+      //the connectors which failed have no candidates, they are searched again
+      for (String searchType : getConnectorTypes(types)) {
+        if (!previous.candidates.containsKey(searchType)) searchedTypes.add(searchType);
+      }
+    }
+
+    boolean answered = true;
+    if (!searchedTypes.isEmpty()) {
+      answered = searchConnectors(state, ticket, baseUri, context, query, sites, searchedTypes, candidateLimit, sort, order, candidateResults);
+      if (!answered && state.isSuperseded(ticket)) return null;
+    }
+
+    //a connector which timed out has no candidates to filter, the next query starts from scratch
+    if (answered) state.setEntry(ticket, new TypeaheadEntry(key, normalizedQuery, candidateResults, System.currentTimeMillis() + timeToLive));
+
+    Map<String, Collection<SearchResult>> results = new LinkedHashMap<String, Collection<SearchResult>>();
+    for (Map.Entry<String, List<SearchResult>> entry : candidateResults.entrySet()) {
+      List<SearchResult> typeResults = entry.getValue();
+      results.put(entry.getKey(), typeResults.size() > limit ? new ArrayList<SearchResult>(typeResults.subList(0, limit)) : typeResults);
+    }
+    return results;
+  }
+
+  /**
+   * @return true if all the connectors answered, false if one of them timed out or if the request was superseded
+   */
+  private boolean searchConnectors(final TypeaheadState state, final long ticket, final String baseUri, SearchContext context, String query, Collection<String> sites,
+                                   Collection<String> types, int candidateLimit, String sort, String order,
+                                   final Map<String, List<SearchResult>> candidateResults) throws Exception {
+    final boolean[] timedOut = {false};
+    SearchResultHandler handler = new SearchResultHandler() {
+      @Override
+      public void handle(String searchType, Collection<SearchResult> results) throws IOException {
+        //stops the search, the driver then cancels the connectors still running
+        if (state.isSuperseded(ticket)) throw new InterruptedIOException("Superseded by a newer search");
+        if (TimedOutSearchResults.isTimedOut(results)) {
+          timedOut[0] = true;
+          return;
+        }
+        List<SearchResult> typeResults = new ArrayList<SearchResult>(results);
+        for (SearchResult result : typeResults) {
+          UnifiedSearchService.toAbsoluteUrls(result, baseUri);
+        }
+        candidateResults.put(searchType, typeResults);
+      }
+    };
+
+    try {
+      if (searchService instanceof JcrSearchDriver) {
+        ((JcrSearchDriver) searchService).search(context, query, sites, types, 0, candidateLimit, sort, order, handler);
+      } else {
+        for (Map.Entry<String, Collection<SearchResult>> entry : searchService.search(context, query, sites, types, 0, candidateLimit, sort, order).entrySet()) {
+          handler.handle(entry.getKey(), entry.getValue());
+        }
+      }
+    } catch (InterruptedIOException e) {
+      if (LOG.isDebugEnabled()) LOG.debug("Typeahead search for '" + query + "' superseded");
+      return false;
+    }
+    return !timedOut[0];
+  }
+
+  /**
+   * @return the requested types, or the types of all the connectors if all the types are requested
+   */
+  private Collection<String> getConnectorTypes(Collection<String> types) {
+    if (!types.contains("all")) return types;
+    List<String> connectorTypes = new ArrayList<String>();
+    for (SearchServiceConnector connector : searchService.getConnectors()) {
+      connectorTypes.add(connector.getSearchType());
+    }
+    return connectorTypes;
+  }
+
+  /**
+   * @return the lower-cased terms of the query, without their fuzzy syntax
+   */
+  private static List<String> getTerms(SearchQuery query) {
+    List<String> terms = new ArrayList<String>();
+    for (String quoted : query.getQuotedTerms()) {
+      terms.add(quoted.trim().toLowerCase(Locale.ENGLISH));
+    }
+    for (String single : query.getSingleTerms()) {
+      int tilde = single.indexOf('~');
+      String term = tilde == -1 ? single : single.substring(0, tilde);
+      if (!term.isEmpty()) terms.add(term.toLowerCase(Locale.ENGLISH));
+    }
+    return terms;
+  }
+
+  /**
+   * Keeps the results whose title, excerpt or detail contain all the terms.
+   */
+  private static List<SearchResult> filter(List<SearchResult> results, List<String> terms) {
+    List<SearchResult> filtered = new ArrayList<SearchResult>(results.size());
+    StringBuilder text = new StringBuilder();
+    for (SearchResult result : results) {
+      text.setLength(0);
+      if (null != result.getTitle()) text.append(result.getTitle()).append(' ');
+      if (null != result.getExcerpt()) text.append(result.getExcerpt()).append(' ');
+      if (null != result.getDetail()) text.append(result.getDetail());
+      String content = text.toString().toLowerCase(Locale.ENGLISH);
+      boolean matches = true;
+      for (String term : terms) {
+        if (content.indexOf(term) == -1) {
+          matches = false;
+          break;
+        }
+      }
+      if (matches) filtered.add(result);
+    }
+    return filtered;
+  }
+
+  private TypeaheadState getState() {
+    ConversationState conversationState = ConversationState.getCurrent();
+    if (null == conversationState) return new TypeaheadState(); //nothing to share with the next keystroke
+    synchronized (conversationState) {
+      TypeaheadState state = (TypeaheadState) conversationState.getAttribute(STATE_ATTRIBUTE);
+      if (null == state) {
+        state = new TypeaheadState();
+        conversationState.setAttribute(STATE_ATTRIBUTE, state);
+      }
+      return state;
+    }
+  }
+
+  private static long getLongParam(InitParams params, String name, long defaultValue) {
+    if (null == params) return defaultValue;
+    ValueParam param = params.getValueParam(name);
+    if (null == param || null == param.getValue()) return defaultValue;
+    try {
+      long value = Long.parseLong(param.getValue().trim());
+      return value >= 0 ? value : defaultValue;
+    } catch (NumberFormatException e) {
+      LOG.warn("Invalid value for " + name + ": " + param.getValue() + ", using " + defaultValue);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * The typeahead state of one user: the ticket of their latest request and the candidates of their last query.
+   */
+  private static class TypeaheadState {
+    private final AtomicLong lastTicket = new AtomicLong();
+    private volatile TypeaheadEntry entry;
+
+    private long newRequest() {
+      return lastTicket.incrementAndGet();
+    }
+
+    private boolean isSuperseded(long ticket) {
+      return lastTicket.get() != ticket;
+    }
+
+    private TypeaheadEntry getEntry() {
+      return entry;
+    }
+
+    private synchronized void setEntry(long ticket, TypeaheadEntry entry) {
+      if (!isSuperseded(ticket)) this.entry = entry;
+    }
+  }
+
+  private static class TypeaheadEntry {
+    private final String key;
+    private final String query;
+    private final Map<String, List<SearchResult>> candidates;
+    private final long expiry;
+
+    private TypeaheadEntry(String key, String query, Map<String, List<SearchResult>> candidates, long expiry) {
+      this.key = key;
+      this.query = query;
+      this.candidates = candidates;
+      this.expiry = expiry;
+    }
+
+    private boolean isExtendedBy(String key, String query, long now) {
+      return expiry > now && this.key.equals(key) && query.startsWith(this.query);
+    }
+  }
+}
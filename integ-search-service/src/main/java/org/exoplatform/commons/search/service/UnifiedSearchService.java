@@ -16,15 +16,20 @@
  */
 package org.exoplatform.commons.search.service;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
@@ -37,29 +42,37 @@ import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.RuntimeDelegate;
 
 import org.exoplatform.commons.api.search.SearchService;
-import org.exoplatform.commons.api.search.SearchServiceConnector;
 import org.exoplatform.commons.api.search.data.SearchContext;
 import org.exoplatform.commons.api.search.data.SearchResult;
 import org.exoplatform.commons.api.settings.SettingService;
 import org.exoplatform.commons.api.settings.SettingValue;
 import org.exoplatform.commons.api.settings.data.Context;
 import org.exoplatform.commons.api.settings.data.Scope;
+import org.exoplatform.commons.search.driver.jcr.JcrSearchDriver;
+import org.exoplatform.commons.search.driver.jcr.RankedSearchResult;
+import org.exoplatform.commons.search.driver.jcr.SearchCursor;
+import org.exoplatform.commons.search.driver.jcr.SearchResultHandler;
+import org.exoplatform.commons.search.driver.jcr.SearchResultPage;
+import org.exoplatform.commons.search.driver.jcr.SearchSpec;
+import org.exoplatform.commons.search.driver.jcr.TimedOutSearchResults;
 import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.portal.config.UserACL;
-import org.exoplatform.portal.config.UserPortalConfigService;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.rest.impl.RuntimeDelegateImpl;
 import org.exoplatform.services.rest.resource.ResourceContainer;
 import org.exoplatform.services.security.ConversationState;
-import org.exoplatform.web.WebAppController;
-import org.exoplatform.web.controller.metadata.ControllerDescriptor;
-import org.exoplatform.web.controller.metadata.DescriptorBuilder;
-import org.exoplatform.web.controller.router.Router;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.ws.frameworks.json.JsonWriter;
+import org.exoplatform.ws.frameworks.json.impl.JsonException;
+import org.exoplatform.ws.frameworks.json.impl.JsonGeneratorImpl;
+import org.exoplatform.ws.frameworks.json.impl.JsonWriterImpl;
 
 /**
  * This class provides RESTful services endpoints which will help all external components to call unified search functions.
@@ -71,6 +84,15 @@ import org.exoplatform.web.controller.router.Router;
 public class UnifiedSearchService implements ResourceContainer {
   private final static Log LOG = ExoLogger.getLogger(UnifiedSearchService.class);
   
+  /** Response header listing the search types whose connector did not answer in time, comma-separated. For a batch search, each type is prefixed with the query id and a colon. */
+  public static final String TIMED_OUT_TYPES_HEADER = "X-Search-Timed-Out-Types";
+
+  /** Response header giving the cursor of the next page of a search paged with a cursor, empty after the last page. */
+  public static final String CURSOR_HEADER = "X-Search-Cursor";
+
+  /** Maximum number of queries in a batch search. */
+  public static final int MAX_BATCH_SIZE = 50;
+  
   private static final CacheControl cacheControl;
   static {
     RuntimeDelegate.setInstance(new RuntimeDelegateImpl());
@@ -84,33 +106,36 @@ public class UnifiedSearchService implements ResourceContainer {
   private static SearchSetting defaultQuicksearchSetting = new SearchSetting(5, Arrays.asList("all"), true, true, true);
   
   private SearchService searchService;
-  private UserPortalConfigService userPortalConfigService;
   private SettingService settingService;
-  private Router router;
+  private SearchResultCache searchResultCache;
+  private SearchTypeRegistry searchTypeRegistry;
+  private SearchSettingCache searchSettingCache;
+  private TypeaheadSearcher typeaheadSearcher;
+  private SiteRegistry siteRegistry;
+  private SearchMetrics searchMetrics;
   
   /**
    * A constructor creates a instance of unified search service with the specified parameters
    * @param searchService a service to work with other connectors
    * @param settingService a service to store and get the setting values 
-   * @param userPortalConfigService a service to get user information from portal
-   * @param webAppController a controller to get configuration path
+   * @param siteRegistry a registry of the sites and of the controller router
+   * @param searchResultCache a cache of the results of recent searches
+   * @param searchTypeRegistry a registry of the connectors and of the enabled search types
+   * @param searchSettingCache a cache of the search settings
+   * @param typeaheadSearcher a searcher for the queries being typed
+   * @param searchMetrics the latency of the search phases and of the connectors
    * @format json
    * @LevelAPI Experimental
    */
-  public UnifiedSearchService(SearchService searchService, SettingService settingService, UserPortalConfigService userPortalConfigService, WebAppController webAppController){
+  public UnifiedSearchService(SearchService searchService, SettingService settingService, SiteRegistry siteRegistry, SearchResultCache searchResultCache, SearchTypeRegistry searchTypeRegistry, SearchSettingCache searchSettingCache, TypeaheadSearcher typeaheadSearcher, SearchMetrics searchMetrics){
     this.searchService = searchService;
     this.settingService = settingService;
-    this.userPortalConfigService = userPortalConfigService;
-    
-    try {
-      File controllerXml = new File(webAppController.getConfigurationPath());
-      URL url = controllerXml.toURI().toURL();
-      ControllerDescriptor routerDesc = new DescriptorBuilder().build(url.openStream());
-      this.router = new Router(routerDesc);
-    } catch (Exception e) {
-      LOG.error(e.getMessage(), e);
-    }
-    
+    this.siteRegistry = siteRegistry;
+    this.searchResultCache = searchResultCache;
+    this.searchTypeRegistry = searchTypeRegistry;
+    this.searchSettingCache = searchSettingCache;
+    this.typeaheadSearcher = typeaheadSearcher;
+    this.searchMetrics = searchMetrics;
   }
   
   /**
@@ -123,6 +148,8 @@ public class UnifiedSearchService implements ResourceContainer {
    * @param sLimit Limit the maximum size of the results set.
    * @param sort Defines the Sort type (relevancy, date, title).
    * @param order Defines the Sort order (ascending, descending).
+   * @param cursor Pages with a cursor rather than with the offset: empty for the first page (which starts at the offset), then the
+   * {@value #CURSOR_HEADER} header of the previous page. Each connector then continues from its own position instead of skipping the offset.
    * @format JSON
    * @return a map of connectors, including their search results.
    * @LevelAPI Experimental
@@ -137,54 +164,450 @@ public class UnifiedSearchService implements ResourceContainer {
       @QueryParam("offset") @DefaultValue("0") String sOffset, 
       @QueryParam("limit") String sLimit, 
       @QueryParam("sort") @DefaultValue("relevancy") String sort, 
-      @QueryParam("order") @DefaultValue("desc") String order) 
+      @QueryParam("order") @DefaultValue("desc") String order,
+      @QueryParam("cursor") String cursor) 
   {
     try {
-      MultivaluedMap<String, String> queryParams = uriInfo.getQueryParameters();
-      String siteName = queryParams.getFirst("searchContext[siteName]");
-      SearchContext context = new SearchContext(this.router, siteName);
-      
       if(null==query || query.isEmpty()) return Response.ok("", MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
-  
-      String userId = ConversationState.getCurrent().getIdentity().getUserId();
-      boolean isAnonymous = null==userId || userId.isEmpty() || userId.equals("__anonim");
-      SearchSetting searchSetting = isAnonymous ? anonymousSearchSetting : getSearchSetting();
-      
-      List<String> sites = Arrays.asList(sSites.split(",\\s*"));      
-      if(sites.contains("all")) sites = userPortalConfigService.getAllPortalNames(); 
-      
-      List<String> types = isAnonymous||null==sTypes ? searchSetting.getSearchTypes() : Arrays.asList(sTypes.split(",\\s*"));
-      
-      int offset = Integer.parseInt(sOffset);
-      int limit = isAnonymous||null==sLimit||sLimit.isEmpty() ? (int)searchSetting.getResultsPerPage() : Integer.parseInt(sLimit);
+      SearchRequest request = new SearchRequest(uriInfo, query, sSites, sTypes, sOffset, sLimit, sort, order);
+
+      // with a cursor, the offset of each connector comes from the cursor (other drivers only know about offsets)
+      JcrSearchDriver cursorDriver = null!=cursor && searchService instanceof JcrSearchDriver ? (JcrSearchDriver)searchService : null;
+      SearchCursor searchCursor = null;
+      String cacheKey = request.cacheKey;
+      if(null!=cursorDriver) {
+        try {
+          searchCursor = cursor.isEmpty() ? SearchCursor.startingAt(request.offset) : SearchCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+          return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).cacheControl(cacheControl).build();
+        }
+        cacheKey = cacheKey + '\u0000' + searchCursor;
+      }
 
-      Map<String, Collection<SearchResult>> results = searchService.search(context, query, sites, types, offset, limit, sort, order);
+      Map<String, Collection<SearchResult>> results = searchResultCache.get(cacheKey);
+      if(null!=results) {
+        ResponseBuilder response = Response.ok(toOutput(results), MediaType.APPLICATION_JSON).cacheControl(cacheControl);
+        if(null!=cursorDriver) response.header(CURSOR_HEADER, toString(cursorDriver.getNextCursor(request.types, searchCursor, results, request.limit, sort, order)));
+        return response.build();
+      }
+
+      if(null!=cursorDriver) results = cursorDriver.search(request.context, query, request.sites, request.types, searchCursor, request.limit, sort, order);
+      else results = searchService.search(request.context, query, request.sites, request.types, request.offset, request.limit, sort, order);
       
-      // get the base URI - http://<host>:<port>
-      String baseUri = uriInfo.getBaseUri().toString(); // http://<host>:<port>/rest      
-      baseUri = baseUri.substring(0,baseUri.lastIndexOf((new URL(baseUri)).getPath()));
-      String resultUrl, imageUrl;      
+      StringBuilder timedOutTypes = new StringBuilder();
       
       // use absolute path for URLs in search results
-      for(Collection<SearchResult> connectorResults:results.values()){
-        for(SearchResult result:connectorResults){
-          resultUrl = result.getUrl();
-          imageUrl =  result.getImageUrl();
-          if(null!=resultUrl && resultUrl.startsWith("/")) result.setUrl(baseUri + resultUrl);
-          if(null!=imageUrl && imageUrl.startsWith("/")) result.setImageUrl(baseUri + imageUrl);          
+      long urlsStart = System.nanoTime();
+      for(Map.Entry<String, Collection<SearchResult>> entry:results.entrySet()){
+        if(TimedOutSearchResults.isTimedOut(entry.getValue())) {
+          if(timedOutTypes.length() > 0) timedOutTypes.append(",");
+          timedOutTypes.append(entry.getKey());
+          continue;
+        }
+        for(SearchResult result:entry.getValue()){
+          toAbsoluteUrls(result, request.baseUri);
         }        
       }
+      searchMetrics.recordPhase(SearchMetrics.URLS_PHASE, urlsStart);
       
-      return Response.ok(results, MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
+      ResponseBuilder response = Response.ok(toOutput(results), MediaType.APPLICATION_JSON).cacheControl(cacheControl);
+      if(null!=cursorDriver) response.header(CURSOR_HEADER, toString(cursorDriver.getNextCursor(request.types, searchCursor, results, request.limit, sort, order)));
+      // connectors which missed their deadline are returned empty, tell the caller which ones they are
+      // and do not keep these partial results
+      if(timedOutTypes.length() > 0) response.header(TIMED_OUT_TYPES_HEADER, timedOutTypes.toString());
+      else searchResultCache.put(cacheKey, request.generation, request.types, results);
+      return response.build();
+    } catch (Exception e) {
+      LOG.error(e.getMessage(), e);
+      return Response.serverError().status(Response.Status.INTERNAL_SERVER_ERROR).entity(e).cacheControl(cacheControl).build();
+    }
+  }
+
+  /**
+   * Searches for a query like {@link #REST_search}, but streams the results of each connector as soon as it answers.
+   * The response has the same JSON format, with the search types in the order their connector answered.
+   * Since the headers are sent before the connectors answer, a connector which missed its deadline is only
+   * seen as an empty array (no {@value #TIMED_OUT_TYPES_HEADER} header).
+   * @param query Searches for a query which is entered by the user.
+   * @param sSites Searches in the specified sites only (for example, ACME or Intranet).
+   * @param sTypes Searches for these specified content types only (for example, people, discussions, events, tasks, wikis, spaces, files, and documents).
+   * @param sOffset Starts the offset of the results set.
+   * @param sLimit Limit the maximum size of the results set.
+   * @param sort Defines the Sort type (relevancy, date, title).
+   * @param order Defines the Sort order (ascending, descending).
+   * @format JSON
+   * @return a map of connectors, including their search results.
+   * @LevelAPI Experimental
+   * @anchor UnifiedSearchService.searchStream
+   */
+  @GET
+  @Path("/stream")
+  public Response REST_searchStream(
+      @javax.ws.rs.core.Context UriInfo uriInfo,
+      @QueryParam("q") String query, 
+      @QueryParam("sites") @DefaultValue("all") String sSites, 
+      @QueryParam("types") String sTypes, 
+      @QueryParam("offset") @DefaultValue("0") String sOffset, 
+      @QueryParam("limit") String sLimit, 
+      @QueryParam("sort") @DefaultValue("relevancy") String sort, 
+      @QueryParam("order") @DefaultValue("desc") String order) 
+  {
+    try {
+      if(null==query || query.isEmpty()) return Response.ok("", MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
+      final SearchRequest request = new SearchRequest(uriInfo, query, sSites, sTypes, sOffset, sLimit, sort, order);
+
+      Map<String, Collection<SearchResult>> results = searchResultCache.get(request.cacheKey);
+      if(null!=results) return Response.ok(toOutput(results), MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
+
+      StreamingOutput output = new StreamingOutput() {
+        @Override
+        public void write(OutputStream out) throws IOException {
+          writeSearchResults(request, out);
+        }
+      };
+      return Response.ok(output, MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
     } catch (Exception e) {
       LOG.error(e.getMessage(), e);
       return Response.serverError().status(Response.Status.INTERNAL_SERVER_ERROR).entity(e).cacheControl(cacheControl).build();
     }
   }
 
+  /**
+   * Searches for a query while it is being typed, for the quick search.
+   * The response has the same JSON format as {@link #REST_search}. When the query extends the previous one of the same user,
+   * the previous results are filtered instead of searching again. A request superseded by a newer one of the same user
+   * gets a 204 (No Content) response.
+   * @param query Searches for a query which is entered by the user.
+   * @param sSites Searches in the specified sites only (for example, ACME or Intranet).
+   * @param sTypes Searches for these specified content types only (for example, people, discussions, events, tasks, wikis, spaces, files, and documents).
+   * @param sLimit Limit the maximum size of the results set.
+   * @param sort Defines the Sort type (relevancy, date, title).
+   * @param order Defines the Sort order (ascending, descending).
+   * @format JSON
+   * @return a map of connectors, including their search results.
+   * @LevelAPI Experimental
+   * @anchor UnifiedSearchService.typeahead
+   */
+  @GET
+  @Path("/typeahead")
+  public Response REST_typeahead(
+      @javax.ws.rs.core.Context UriInfo uriInfo,
+      @QueryParam("q") String query, 
+      @QueryParam("sites") @DefaultValue("all") String sSites, 
+      @QueryParam("types") String sTypes, 
+      @QueryParam("limit") String sLimit, 
+      @QueryParam("sort") @DefaultValue("relevancy") String sort, 
+      @QueryParam("order") @DefaultValue("desc") String order) 
+  {
+    try {
+      if(null==query || query.isEmpty()) return Response.ok("", MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
+      SearchRequest request = new SearchRequest(uriInfo, query, sSites, sTypes, "0", sLimit, sort, order);
+
+      String key = request.siteName + '\u0000' + request.sites + '\u0000' + request.types + '\u0000' + request.limit + '\u0000' + sort + '\u0000' + order;
+      Map<String, Collection<SearchResult>> results = typeaheadSearcher.search(key, request.baseUri, request.context, query, request.sites, request.types, request.limit, sort, order);
+      if(null==results) return Response.noContent().cacheControl(cacheControl).build();
+      return Response.ok(toOutput(results), MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
+    } catch (Exception e) {
+      LOG.error(e.getMessage(), e);
+      return Response.serverError().status(Response.Status.INTERNAL_SERVER_ERROR).entity(e).cacheControl(cacheControl).build();
+    }
+  }
+
+  /**
+   * Searches for a query and ranks the results of all the connectors together, one page at a time.
+   * @param query Searches for a query which is entered by the user.
+   * @param sSites Searches in the specified sites only (for example, ACME or Intranet).
+   * @param sTypes Searches for these specified content types only (for example, people, discussions, events, tasks, wikis, spaces, files, and documents).
+   * @param cursor The cursor returned with the previous page, nothing for the first page.
+   * @param sLimit Limit the maximum size of the results set.
+   * @param sort Defines the Sort type (relevancy, date, title).
+   * @param order Defines the Sort order (ascending, descending).
+   * @format JSON
+   * @return the ranked results with their search type, and the cursor of the next page (null after the last page).
+   * @LevelAPI Experimental
+   * @anchor UnifiedSearchService.searchMerged
+   */
+  @GET
+  @Path("/merged")
+  public Response REST_searchMerged(
+      @javax.ws.rs.core.Context UriInfo uriInfo,
+      @QueryParam("q") String query, 
+      @QueryParam("sites") @DefaultValue("all") String sSites, 
+      @QueryParam("types") String sTypes, 
+      @QueryParam("cursor") String cursor, 
+      @QueryParam("limit") String sLimit, 
+      @QueryParam("sort") @DefaultValue("relevancy") String sort, 
+      @QueryParam("order") @DefaultValue("desc") String order) 
+  {
+    try {
+      if(null==query || query.isEmpty()) return Response.ok("", MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
+      if(!(searchService instanceof JcrSearchDriver)) {
+        return Response.status(501).entity("merged search is not supported by " + searchService.getClass().getName()).cacheControl(cacheControl).build();
+      }
+
+      SearchCursor searchCursor;
+      try {
+        searchCursor = SearchCursor.parse(cursor);
+      } catch (IllegalArgumentException e) {
+        return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).cacheControl(cacheControl).build();
+      }
+      SearchRequest request = new SearchRequest(uriInfo, query, sSites, sTypes, "0", sLimit, sort, order);
+
+      SearchResultPage page = ((JcrSearchDriver)searchService).searchMerged(request.context, query, request.sites, request.types, searchCursor, request.limit, sort, order);
+      for(RankedSearchResult rankedResult:page.getResults()){
+        toAbsoluteUrls(rankedResult.getResult(), request.baseUri);
+      }
+      return Response.ok(page, MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
+    } catch (Exception e) {
+      LOG.error(e.getMessage(), e);
+      return Response.serverError().status(Response.Status.INTERNAL_SERVER_ERROR).entity(e).cacheControl(cacheControl).build();
+    }
+  }
+
+  /**
+   * Runs several searches at once, for pages showing many of them such as dashboards and gadgets.
+   * The caller, its settings and the sites are resolved once for all the queries, identical queries are searched once,
+   * and all the connectors are called in a single fan-out where a connector is asked only once for the queries which
+   * send it the same search.
+   * @param batch the queries, as <code>{"queries": [{"id": ..., "q": ..., "sites": ..., "types": ..., "offset": ..., "limit": ..., "sort": ..., "order": ...}]}</code>
+   * with the same parameters and defaults as {@link #REST_search}; the id of each query must be unique.
+   * @format JSON
+   * @return a map of the query ids, each with a map of connectors including their search results.
+   * @LevelAPI Experimental
+   * @anchor UnifiedSearchService.searchBatch
+   */
+  @POST
+  @Path("/batch")
+  @Consumes(MediaType.APPLICATION_JSON)
+  public Response REST_searchBatch(@javax.ws.rs.core.Context UriInfo uriInfo, SearchBatch batch) {
+    try {
+      if(null==batch || null==batch.getQueries() || batch.getQueries().isEmpty()) {
+        return Response.status(Response.Status.BAD_REQUEST).entity("no query").cacheControl(cacheControl).build();
+      }
+      if(batch.getQueries().size() > MAX_BATCH_SIZE) {
+        return Response.status(Response.Status.BAD_REQUEST).entity("more than " + MAX_BATCH_SIZE + " queries").cacheControl(cacheControl).build();
+      }
+
+      SearchCaller caller = new SearchCaller(uriInfo);
+      Map<String, String> cacheKeys = new LinkedHashMap<String, String>(); //query id -> search
+      Map<String, Map<String, Collection<SearchResult>>> results = new HashMap<String, Map<String, Collection<SearchResult>>>(); //search -> results
+      Map<String, SearchRequest> requests = new LinkedHashMap<String, SearchRequest>(); //searches not in the cache
+      for(SearchBatchQuery batchQuery:batch.getQueries()){
+        String id = batchQuery.getId();
+        if(null==id || cacheKeys.containsKey(id)) {
+          return Response.status(Response.Status.BAD_REQUEST).entity("missing or duplicate query id: " + id).cacheControl(cacheControl).build();
+        }
+        if(null==batchQuery.getQ() || batchQuery.getQ().isEmpty()) {
+          cacheKeys.put(id, null);
+          continue;
+        }
+        SearchRequest request = new SearchRequest(caller, batchQuery.getQ(), batchQuery.getSites(), batchQuery.getTypes(), batchQuery.getOffset(), batchQuery.getLimit(), batchQuery.getSort(), batchQuery.getOrder());
+        cacheKeys.put(id, request.cacheKey);
+        if(results.containsKey(request.cacheKey) || requests.containsKey(request.cacheKey)) continue;
+        Map<String, Collection<SearchResult>> cachedResults = searchResultCache.get(request.cacheKey);
+        if(null!=cachedResults) results.put(request.cacheKey, cachedResults);
+        else requests.put(request.cacheKey, request);
+      }
+
+      List<Map<String, Collection<SearchResult>>> searchResults;
+      if(searchService instanceof JcrSearchDriver) {
+        List<SearchSpec> searches = new ArrayList<SearchSpec>();
+        for(SearchRequest request:requests.values()){
+          searches.add(new SearchSpec(request.query, request.sites, request.types, request.offset, request.limit, request.sort, request.order));
+        }
+        searchResults = ((JcrSearchDriver)searchService).search(caller.context, searches);
+      } else {
+        searchResults = new ArrayList<Map<String, Collection<SearchResult>>>();
+        for(SearchRequest request:requests.values()){
+          searchResults.add(searchService.search(request.context, request.query, request.sites, request.types, request.offset, request.limit, request.sort, request.order));
+        }
+      }
+
+      // use absolute path for URLs in search results, cache the complete ones
+      Set<String> timedOutSearches = new HashSet<String>();
+      long urlsStart = System.nanoTime();
+      int i = 0;
+      for(SearchRequest request:requests.values()){
+        Map<String, Collection<SearchResult>> requestResults = searchResults.get(i++);
+        boolean timedOut = false;
+        for(Map.Entry<String, Collection<SearchResult>> entry:requestResults.entrySet()){
+          if(TimedOutSearchResults.isTimedOut(entry.getValue())) {
+            timedOutSearches.add(request.cacheKey + '\u0000' + entry.getKey());
+            timedOut = true;
+            continue;
+          }
+          for(SearchResult result:entry.getValue()){
+            toAbsoluteUrls(result, request.baseUri);
+          }
+        }
+        results.put(request.cacheKey, requestResults);
+        if(!timedOut) searchResultCache.put(request.cacheKey, request.generation, request.types, requestResults);
+      }
+      searchMetrics.recordPhase(SearchMetrics.URLS_PHASE, urlsStart);
+
+      final Map<String, Map<String, Collection<SearchResult>>> batchResults = new LinkedHashMap<String, Map<String, Collection<SearchResult>>>();
+      StringBuilder timedOutTypes = new StringBuilder();
+      for(Map.Entry<String, String> entry:cacheKeys.entrySet()){
+        Map<String, Collection<SearchResult>> queryResults = null==entry.getValue() ? new HashMap<String, Collection<SearchResult>>() : results.get(entry.getValue());
+        batchResults.put(entry.getKey(), queryResults);
+        for(String searchType:queryResults.keySet()){
+          if(!timedOutSearches.contains(entry.getValue() + '\u0000' + searchType)) continue;
+          if(timedOutTypes.length() > 0) timedOutTypes.append(",");
+          timedOutTypes.append(entry.getKey()).append(':').append(searchType);
+        }
+      }
+
+      StreamingOutput output = new StreamingOutput() {
+        @Override
+        public void write(OutputStream out) throws IOException {
+          writeBatchResults(batchResults, out);
+        }
+      };
+      ResponseBuilder response = Response.ok(output, MediaType.APPLICATION_JSON).cacheControl(cacheControl);
+      if(timedOutTypes.length() > 0) response.header(TIMED_OUT_TYPES_HEADER, timedOutTypes.toString());
+      return response.build();
+    } catch (Exception e) {
+      LOG.error(e.getMessage(), e);
+      return Response.serverError().status(Response.Status.INTERNAL_SERVER_ERROR).entity(e).cacheControl(cacheControl).build();
+    }
+  }
+
+  /**
+   * Writes the results of each connector to the output as soon as it answers, turning their URLs into absolute ones on the way.
+   * The complete results are cached if every connector answered in time.
+   */
+  private void writeSearchResults(final SearchRequest request, OutputStream out) throws IOException {
+    final JsonWriter writer = new JsonWriterImpl(out);
+    final JsonGeneratorImpl generator = new JsonGeneratorImpl();
+    final Map<String, Collection<SearchResult>> results = new HashMap<String, Collection<SearchResult>>();
+    final boolean[] timedOut = {false};
+
+    SearchResultHandler handler = new SearchResultHandler() {
+      @Override
+      public void handle(String searchType, Collection<SearchResult> connectorResults) throws IOException {
+        long urlsStart = System.nanoTime();
+        for(SearchResult result:connectorResults){
+          toAbsoluteUrls(result, request.baseUri);
+        }
+        searchMetrics.recordPhase(SearchMetrics.URLS_PHASE, urlsStart);
+        long serializationStart = System.nanoTime();
+        try {
+          writer.writeKey(searchType);
+          writeSearchResults(writer, generator, connectorResults);
+          writer.flush();
+        } catch (JsonException e) {
+          throw new IOException(e.getMessage(), e);
+        }
+        searchMetrics.recordPhase(SearchMetrics.SERIALIZATION_PHASE, serializationStart);
+        if(TimedOutSearchResults.isTimedOut(connectorResults)) timedOut[0] = true;
+        else results.put(searchType, connectorResults);
+      }
+    };
+
+    try {
+      writer.writeStartObject();
+      if(searchService instanceof JcrSearchDriver) {
+        ((JcrSearchDriver)searchService).search(request.context, request.query, request.sites, request.types, request.offset, request.limit, request.sort, request.order, handler);
+      } else {
+        for(Map.Entry<String, Collection<SearchResult>> entry:searchService.search(request.context, request.query, request.sites, request.types, request.offset, request.limit, request.sort, request.order).entrySet()){
+          handler.handle(entry.getKey(), entry.getValue());
+        }
+      }
+      writer.writeEndObject();
+      writer.flush();
+    } catch (JsonException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+    if(!timedOut[0]) searchResultCache.put(request.cacheKey, request.generation, request.types, results);
+  }
+
+  /**
+   * Search results are serialized here rather than by the JSON provider, whether they come from the cache or not,
+   * so that the responses are the same and the duration of the serialization can be measured.
+   */
+  private StreamingOutput toOutput(final Map<String, Collection<SearchResult>> results) {
+    return new StreamingOutput() {
+      @Override
+      public void write(OutputStream out) throws IOException {
+        writeSearchResults(results, out);
+      }
+    };
+  }
+
+  /**
+   * Writes the results of all the connectors to the output at once.
+   */
+  private void writeSearchResults(Map<String, Collection<SearchResult>> results, OutputStream out) throws IOException {
+    long start = System.nanoTime();
+    JsonWriter writer = new JsonWriterImpl(out);
+    JsonGeneratorImpl generator = new JsonGeneratorImpl();
+    try {
+      writer.writeStartObject();
+      for(Map.Entry<String, Collection<SearchResult>> entry:results.entrySet()){
+        writer.writeKey(entry.getKey());
+        writeSearchResults(writer, generator, entry.getValue());
+      }
+      writer.writeEndObject();
+      writer.flush();
+    } catch (JsonException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+    searchMetrics.recordPhase(SearchMetrics.SERIALIZATION_PHASE, start);
+  }
+
+  /**
+   * Writes the results of all the queries of a batch to the output, by query id.
+   */
+  private void writeBatchResults(Map<String, Map<String, Collection<SearchResult>>> results, OutputStream out) throws IOException {
+    long start = System.nanoTime();
+    JsonWriter writer = new JsonWriterImpl(out);
+    JsonGeneratorImpl generator = new JsonGeneratorImpl();
+    try {
+      writer.writeStartObject();
+      for(Map.Entry<String, Map<String, Collection<SearchResult>>> queryEntry:results.entrySet()){
+        writer.writeKey(queryEntry.getKey());
+        writer.writeStartObject();
+        for(Map.Entry<String, Collection<SearchResult>> entry:queryEntry.getValue().entrySet()){
+          writer.writeKey(entry.getKey());
+          writeSearchResults(writer, generator, entry.getValue());
+        }
+        writer.writeEndObject();
+      }
+      writer.writeEndObject();
+      writer.flush();
+    } catch (JsonException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+    searchMetrics.recordPhase(SearchMetrics.SERIALIZATION_PHASE, start);
+  }
+
+  private static void writeSearchResults(JsonWriter writer, JsonGeneratorImpl generator, Collection<SearchResult> results) throws JsonException {
+    writer.writeStartArray();
+    for(SearchResult result:results){
+      generator.createJsonObject(result).writeTo(writer);
+    }
+    writer.writeEndArray();
+  }
+
+  private static String toString(SearchCursor cursor) {
+    return null==cursor ? "" : cursor.toString();
+  }
+
+  /**
+   * Prefixes the URL and the image URL of a result with the base URI, when they are absolute paths.
+   * @param result a search result
+   * @param baseUri the scheme, host and port of the server, e.g. http://localhost:8080
+   */
+  public static void toAbsoluteUrls(SearchResult result, String baseUri) {
+    String resultUrl = result.getUrl();
+    String imageUrl = result.getImageUrl();
+    if(null!=resultUrl && resultUrl.startsWith("/")) result.setUrl(baseUri + resultUrl);
+    if(null!=imageUrl && imageUrl.startsWith("/")) result.setImageUrl(baseUri + imageUrl);
+  }
+
   /**
   * Gets all connectors which are registered in the system and are enabled.
-  * @return List of connectors and names of the enabled ones.
+  * @return List of connectors and names of the enabled ones, followed by the circuit breaker status of each connector when the search driver has them.
   * @format JSON
   * @LevelAPI Experimental
   * @anchor UnifiedSearchService.getRegistry
@@ -192,11 +615,29 @@ public class UnifiedSearchService implements ResourceContainer {
   @GET
   @Path("/registry")
   public Response REST_getRegistry() {
-    LinkedHashMap<String, SearchServiceConnector> searchConnectors = new LinkedHashMap<String, SearchServiceConnector>();
-    for(SearchServiceConnector connector:searchService.getConnectors()) {
-      searchConnectors.put(connector.getSearchType(), connector);
-    }
-    return Response.ok(Arrays.asList(searchConnectors, getEnabledSearchTypes()), MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
+    List<Object> registry = new ArrayList<Object>();
+    registry.add(searchTypeRegistry.getConnectors());
+    registry.add(searchTypeRegistry.getEnabledSearchTypes());
+    if(searchService instanceof JcrSearchDriver) registry.add(((JcrSearchDriver)searchService).getConnectorStatuses());
+    return Response.ok(registry, MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
+  }
+
+  
+  /**
+  * Gets the latency (in microseconds) of the search phases, and the latency, result counts, errors, timeouts and calls in progress of each connector.
+  * The latencies are given as count, mean, maximum and percentiles (p50, p90, p99, p999) since the start of the server.
+  * @return the metrics of the phases and of the connectors.
+  * @format JSON
+  * @LevelAPI Experimental
+  * @anchor UnifiedSearchService.getMetrics
+  */
+  @GET
+  @Path("/metrics")
+  public Response REST_getMetrics() {
+    Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+    metrics.put("phases", searchMetrics.getPhases());
+    metrics.put("connectors", searchMetrics.getConnectors());
+    return Response.ok(metrics, MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
   }
 
   
@@ -211,7 +652,7 @@ public class UnifiedSearchService implements ResourceContainer {
   @Path("/sites")
   public Response REST_getSites() {
     try {
-      return Response.ok(userPortalConfigService.getAllPortalNames(), MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
+      return Response.ok(siteRegistry.getAllPortalNames(), MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
     } catch (Exception e) {
       LOG.error(e.getMessage(), e);
       return Response.serverError().status(Response.Status.INTERNAL_SERVER_ERROR).entity(e).cacheControl(cacheControl).build();
@@ -219,8 +660,18 @@ public class UnifiedSearchService implements ResourceContainer {
   }
 
     
-  @SuppressWarnings("unchecked")
   private SearchSetting getSearchSetting() {
+    String userId = ConversationState.getCurrent().getIdentity().getUserId();
+    SearchSetting searchSetting = searchSettingCache.get(userId);
+    if(null==searchSetting) {
+      searchSetting = loadSearchSetting();
+      searchSettingCache.put(userId, searchSetting);
+    }
+    return searchSetting;
+  }
+
+  @SuppressWarnings("unchecked")
+  private SearchSetting loadSearchSetting() {
     try {
       Long resultsPerPage = ((SettingValue<Long>)settingService.get(Context.USER, Scope.WINDOWS, "resultsPerPage")).getValue();
       String searchTypes = ((SettingValue<String>) settingService.get(Context.USER, Scope.WINDOWS, "searchTypes")).getValue();      
@@ -264,12 +715,24 @@ public class UnifiedSearchService implements ResourceContainer {
     settingService.set(Context.USER, Scope.WINDOWS, "hideSearchForm", new SettingValue<Boolean>(hideSearchForm));
     settingService.set(Context.USER, Scope.WINDOWS, "hideFacetsFilter", new SettingValue<Boolean>(hideFacetsFilter));
     
+    String userId = ConversationState.getCurrent().getIdentity().getUserId();
+    if(null==searchTypes) searchSettingCache.remove(userId);
+    else searchSettingCache.put(userId, new SearchSetting(resultsPerPage, Arrays.asList(searchTypes.split(",\\s*")), searchCurrentSiteOnly, hideSearchForm, hideFacetsFilter));
     return Response.ok("ok", MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
   } 
 
 
-  @SuppressWarnings("unchecked")
   private SearchSetting getQuickSearchSetting() {
+    SearchSetting quickSearchSetting = searchSettingCache.get(SearchSettingCache.QUICKSEARCH_KEY);
+    if(null==quickSearchSetting) {
+      quickSearchSetting = loadQuickSearchSetting();
+      searchSettingCache.put(SearchSettingCache.QUICKSEARCH_KEY, quickSearchSetting);
+    }
+    return quickSearchSetting;
+  }
+
+  @SuppressWarnings("unchecked")
+  private SearchSetting loadQuickSearchSetting() {
     try {
       Long resultsPerPage = ((SettingValue<Long>)settingService.get(Context.GLOBAL, Scope.WINDOWS, "resultsPerPage")).getValue();
       String searchTypes = ((SettingValue<String>) settingService.get(Context.GLOBAL, Scope.WINDOWS, "searchTypes")).getValue();
@@ -309,22 +772,15 @@ public class UnifiedSearchService implements ResourceContainer {
     settingService.set(Context.GLOBAL, Scope.WINDOWS, "resultsPerPage", new SettingValue<Long>(resultsPerPage));    
     settingService.set(Context.GLOBAL, Scope.WINDOWS, "searchTypes", new SettingValue<String>(searchTypes));
     settingService.set(Context.GLOBAL, Scope.WINDOWS, "searchCurrentSiteOnly", new SettingValue<Boolean>(searchCurrentSiteOnly));
+    if(null==searchTypes) searchSettingCache.remove(SearchSettingCache.QUICKSEARCH_KEY);
+    else searchSettingCache.put(SearchSettingCache.QUICKSEARCH_KEY, new SearchSetting(resultsPerPage, Arrays.asList(searchTypes.split(",\\s*")), searchCurrentSiteOnly, true, true));
     return Response.ok("ok", MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
   } 
   
   
-  @SuppressWarnings("unchecked")
   public static List<String> getEnabledSearchTypes(){
-    SettingService settingService = (SettingService)ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(SettingService.class);
-    SettingValue<String> enabledSearchTypes = (SettingValue<String>) settingService.get(Context.GLOBAL, Scope.APPLICATION, "enabledSearchTypes");
-    if(null!=enabledSearchTypes) return Arrays.asList(enabledSearchTypes.getValue().split(",\\s*"));
-
-    SearchService searchService = (SearchService)ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(SearchService.class);
-    LinkedList<String> allSearchTypes = new LinkedList<String>();
-    for(SearchServiceConnector connector:searchService.getConnectors()) {
-      allSearchTypes.add(connector.getSearchType());
-    }
-    return allSearchTypes;      
+    SearchTypeRegistry searchTypeRegistry = (SearchTypeRegistry)ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(SearchTypeRegistry.class);
+    return searchTypeRegistry.getEnabledSearchTypes();
   }
   
   /**
@@ -341,11 +797,89 @@ public class UnifiedSearchService implements ResourceContainer {
     UserACL userAcl = (UserACL)ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(UserACL.class);
     
     if(ConversationState.getCurrent().getIdentity().isMemberOf(userAcl.getAdminGroups())) {//only administrators can set this
-      settingService.set(Context.GLOBAL, Scope.APPLICATION, "enabledSearchTypes", new SettingValue<String>(searchTypes));      
+      searchTypeRegistry.setEnabledSearchTypes(searchTypes);
       return Response.ok("ok", MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
     }
     return Response.ok("nok: administrators only", MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
   } 
 
   
+  /**
+   * The parameters of a search request, resolved against the caller's settings.
+   */
+  private class SearchRequest {
+    private final SearchContext context;
+    private final String siteName;
+    private final String query;
+    private final List<String> sites;
+    private final List<String> types;
+    private final int offset;
+    private final int limit;
+    private final String sort;
+    private final String order;
+    private final String baseUri;
+    private final String cacheKey;
+    private final long generation;
+
+    private SearchRequest(UriInfo uriInfo, String query, String sSites, String sTypes, String sOffset, String sLimit, String sort, String order) throws Exception {
+      this(new SearchCaller(uriInfo), query, sSites, sTypes, sOffset, sLimit, sort, order);
+    }
+
+    private SearchRequest(SearchCaller caller, String query, String sSites, String sTypes, String sOffset, String sLimit, String sort, String order) throws Exception {
+      this.context = caller.context;
+      this.siteName = caller.siteName;
+      this.query = query;
+      this.sort = sort;
+      this.order = order;
+
+      List<String> sites = Arrays.asList(sSites.split(",\\s*"));      
+      if(sites.contains("all")) sites = caller.getAllSites(); 
+      this.sites = sites;
+      
+      this.types = caller.isAnonymous||null==sTypes ? caller.searchSetting.getSearchTypes() : Arrays.asList(sTypes.split(",\\s*"));
+      
+      this.offset = Integer.parseInt(sOffset);
+      this.limit = caller.isAnonymous||null==sLimit||sLimit.isEmpty() ? (int)caller.searchSetting.getResultsPerPage() : Integer.parseInt(sLimit);
+
+      this.baseUri = caller.baseUri;
+
+      this.cacheKey = searchResultCache.getKey(caller.identity, this.baseUri, siteName, query, this.sites, this.types, this.offset, this.limit, sort, order);
+      //taken before the cache is read, results computed across an invalidation are not stored
+      this.generation = searchResultCache.getGeneration();
+    }
+  }
+
+  /**
+   * The user searching, its settings and the site it searches from: resolved once per HTTP request, even when it carries several searches.
+   */
+  private class SearchCaller {
+    private final SearchContext context;
+    private final String siteName;
+    private final Identity identity;
+    private final boolean isAnonymous;
+    private final SearchSetting searchSetting;
+    private final String baseUri;
+    private List<String> allSites;
+
+    private SearchCaller(UriInfo uriInfo) throws Exception {
+      MultivaluedMap<String, String> queryParams = uriInfo.getQueryParameters();
+      this.siteName = queryParams.getFirst("searchContext[siteName]");
+      this.context = siteRegistry.getSearchContext(siteName);
+
+      this.identity = ConversationState.getCurrent().getIdentity();
+      String userId = identity.getUserId();
+      this.isAnonymous = null==userId || userId.isEmpty() || userId.equals("__anonim");
+      this.searchSetting = isAnonymous ? anonymousSearchSetting : getSearchSetting();
+
+      // get the base URI - http://<host>:<port>
+      String baseUri = uriInfo.getBaseUri().toString(); // http://<host>:<port>/rest      
+      this.baseUri = baseUri.substring(0,baseUri.lastIndexOf((new URL(baseUri)).getPath()));
+    }
+
+    private List<String> getAllSites() throws Exception {
+      if(null==allSites) allSites = siteRegistry.getAllPortalNames();
+      return allSites;
+    }
+  }
+
 }
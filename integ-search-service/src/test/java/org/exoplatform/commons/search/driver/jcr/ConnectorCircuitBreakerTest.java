@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import junit.framework.TestCase;
+
+public class ConnectorCircuitBreakerTest extends TestCase {
+
+  private static final long OPEN_DURATION = 50; //milliseconds
+  private static final long SLOW_CALL_DURATION = 1000; //milliseconds
+
+  private ConnectorCircuitBreaker breaker;
+
+  @Override
+  protected void setUp() throws Exception {
+    breaker = new ConnectorCircuitBreaker("test", 10, 4, 50, OPEN_DURATION, SLOW_CALL_DURATION, 10);
+  }
+
+  public void testOpensOnFailureRate() {
+    succeedCall();
+    succeedCall();
+    failCall();
+    assertEquals("CLOSED", breaker.getStatus().getState()); //not enough calls yet
+    failCall();
+    assertEquals("OPEN", breaker.getStatus().getState()); //2 failed calls out of 4
+    assertEquals(ConnectorCircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+  }
+
+  public void testStaysClosedBelowFailureRate() {
+    succeedCall();
+    succeedCall();
+    succeedCall();
+    failCall();
+    assertEquals("CLOSED", breaker.getStatus().getState());
+    assertEquals(4, breaker.getStatus().getCalls());
+    assertEquals(1, breaker.getStatus().getFailures());
+  }
+
+  public void testSlowCallCountsAsFailure() {
+    for (int i = 0; i < 4; i++) {
+      long permit = breaker.tryAcquire();
+      breaker.onSuccess(permit, SLOW_CALL_DURATION);
+    }
+    assertEquals("OPEN", breaker.getStatus().getState());
+    assertEquals(4, breaker.getStatus().getFailures());
+  }
+
+  public void testHalfOpenLetsASingleProbeThrough() throws Exception {
+    trip();
+    assertEquals("HALF_OPEN", breaker.getStatus().getState());
+    long probe = breaker.tryAcquire();
+    assertTrue(probe != ConnectorCircuitBreaker.NO_PERMIT);
+    assertEquals(ConnectorCircuitBreaker.NO_PERMIT, breaker.tryAcquire()); //the probe is in progress
+
+    breaker.onSuccess(probe, 1);
+    assertEquals("CLOSED", breaker.getStatus().getState());
+    assertEquals(0, breaker.getStatus().getFailures()); //the window starts over
+    assertTrue(breaker.tryAcquire() != ConnectorCircuitBreaker.NO_PERMIT);
+  }
+
+  public void testFailedProbeReopens() throws Exception {
+    trip();
+    long probe = breaker.tryAcquire();
+    breaker.onFailure(probe, 1);
+    assertEquals("OPEN", breaker.getStatus().getState());
+    assertEquals(ConnectorCircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+  }
+
+  public void testReleasedProbeLetsAnotherOneThrough() throws Exception {
+    trip();
+    long probe = breaker.tryAcquire();
+    breaker.release(probe);
+    assertEquals("HALF_OPEN", breaker.getStatus().getState());
+    assertTrue(breaker.tryAcquire() != ConnectorCircuitBreaker.NO_PERMIT);
+  }
+
+  public void testCallsStartedBeforeTheTripDoNotDecideWhileHalfOpen() throws Exception {
+    breaker = new ConnectorCircuitBreaker("test", 10, 2, 50, OPEN_DURATION, SLOW_CALL_DURATION, 10);
+    long before1 = breaker.tryAcquire();
+    long before2 = breaker.tryAcquire();
+    failCall();
+    failCall();
+    assertEquals("OPEN", breaker.getStatus().getState());
+    Thread.sleep(OPEN_DURATION * 2);
+
+    long probe = breaker.tryAcquire();
+    breaker.onSuccess(before1, 1);
+    assertEquals("HALF_OPEN", breaker.getStatus().getState()); //not the probe: the breaker is not closed
+    assertEquals(ConnectorCircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+    breaker.onFailure(before2, 1);
+    assertEquals("HALF_OPEN", breaker.getStatus().getState()); //not the probe: the breaker is not reopened
+    assertEquals(4, breaker.getStatus().getCalls()); //but both are counted
+    assertEquals(3, breaker.getStatus().getFailures());
+    assertEquals(1, breaker.getStatus().getInFlight());
+
+    breaker.onSuccess(probe, 1);
+    assertEquals("CLOSED", breaker.getStatus().getState());
+    assertEquals(0, breaker.getStatus().getInFlight());
+  }
+
+  private void trip() throws Exception {
+    for (int i = 0; i < 4; i++) failCall();
+    assertEquals("OPEN", breaker.getStatus().getState());
+    Thread.sleep(OPEN_DURATION * 2);
+  }
+
+  private void succeedCall() {
+    long permit = breaker.tryAcquire();
+    assertTrue(permit != ConnectorCircuitBreaker.NO_PERMIT);
+    breaker.onSuccess(permit, 1);
+  }
+
+  private void failCall() {
+    long permit = breaker.tryAcquire();
+    assertTrue(permit != ConnectorCircuitBreaker.NO_PERMIT);
+    breaker.onFailure(permit, 1);
+  }
+}
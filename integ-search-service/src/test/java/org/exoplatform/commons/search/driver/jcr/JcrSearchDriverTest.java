@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.commons.api.search.SearchService;
+import org.exoplatform.commons.api.search.SearchServiceConnector;
+import org.exoplatform.commons.api.search.data.SearchContext;
+import org.exoplatform.commons.api.search.data.SearchResult;
+import org.exoplatform.commons.api.settings.SettingService;
+import org.exoplatform.commons.search.service.MockSettingService;
+import org.exoplatform.commons.search.service.SearchMetrics;
+import org.exoplatform.commons.search.service.SearchTypeRegistry;
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.services.listener.ListenerService;
+
+public class JcrSearchDriverTest extends TestCase {
+
+  private static final int TIMEOUT = 300; //milliseconds
+
+  /** Released at the end of each test, the blocked connectors then return */
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private ExoContainer container;
+  private SearchMetrics searchMetrics;
+  private JcrSearchDriver driver;
+
+  @Override
+  protected void tearDown() throws Exception {
+    release.countDown();
+    if (null != driver) driver.stop();
+    ExoContainerContext.setCurrentContainer(null);
+  }
+
+  public void testSlowConnectorTimesOutAtDeadline() {
+    createDriver(20, 100, new TestConnector("fast", Behavior.ANSWER), new TestConnector("slow", Behavior.BLOCK));
+
+    long start = System.currentTimeMillis();
+    Map<String, Collection<SearchResult>> results = search();
+    long duration = System.currentTimeMillis() - start;
+
+    assertEquals(1, results.get("fast").size());
+    assertTrue(TimedOutSearchResults.isTimedOut(results.get("slow")));
+    assertTrue("The search took " + duration + " ms", duration < TIMEOUT + 1000);
+    assertEquals(1, searchMetrics.getConnectorMetrics("slow").getTimeouts());
+  }
+
+  public void testFailingConnectorIsSkipped() {
+    createDriver(20, 100, new TestConnector("fast", Behavior.ANSWER), new TestConnector("failing", Behavior.FAIL));
+
+    Map<String, Collection<SearchResult>> results = search();
+
+    assertEquals(1, results.get("fast").size());
+    assertFalse(results.containsKey("failing"));
+    assertEquals(1, searchMetrics.getConnectorMetrics("failing").getErrors());
+  }
+
+  public void testSaturatedPoolRejectsCalls() {
+    //one worker and one queued call: the third connector can not be submitted
+    createDriver(1, 1, new TestConnector("first", Behavior.BLOCK), new TestConnector("second", Behavior.BLOCK),
+                 new TestConnector("third", Behavior.BLOCK));
+
+    long start = System.currentTimeMillis();
+    Map<String, Collection<SearchResult>> results = search();
+    long duration = System.currentTimeMillis() - start;
+
+    assertEquals(3, results.size());
+    for (Collection<SearchResult> connectorResults : results.values()) {
+      assertTrue(TimedOutSearchResults.isTimedOut(connectorResults));
+    }
+    assertTrue("The search took " + duration + " ms", duration < TIMEOUT + 1000);
+    assertEquals(1, searchMetrics.getConnectorMetrics("third").getShed());
+    assertEquals(0, searchMetrics.getConnectorMetrics("third").getTimeouts());
+  }
+
+  private Map<String, Collection<SearchResult>> search() {
+    return driver.search(null, "test", Collections.<String>emptyList(), Arrays.asList("all"), 0, 10, "relevancy", "desc");
+  }
+
+  private void createDriver(int poolSize, int queueSize, TestConnector... connectors) {
+    container = new ExoContainer();
+    ExoContainerContext.setCurrentContainer(container);
+
+    SettingService settingService = new MockSettingService();
+    ListenerService listenerService = new ListenerService(container.getContext());
+    SearchTypeRegistry searchTypeRegistry = new SearchTypeRegistry(settingService, listenerService, null);
+    searchMetrics = new SearchMetrics();
+    InitParams params = new InitParams();
+    params.addParameter(newValueParam(JcrSearchDriver.POOL_SIZE_PARAM, poolSize));
+    params.addParameter(newValueParam(JcrSearchDriver.QUEUE_SIZE_PARAM, queueSize));
+    params.addParameter(newValueParam(JcrSearchDriver.TIMEOUT_PARAM, TIMEOUT));
+    driver = new JcrSearchDriver(searchTypeRegistry, searchMetrics, params);
+    container.registerComponentInstance(SettingService.class, settingService);
+    container.registerComponentInstance(ListenerService.class, listenerService);
+    container.registerComponentInstance(SearchTypeRegistry.class, searchTypeRegistry);
+    container.registerComponentInstance(SearchService.class, driver);
+
+    StringBuilder enabledTypes = new StringBuilder();
+    for (TestConnector connector : connectors) {
+      driver.addConnector(connector);
+      if (enabledTypes.length() > 0) enabledTypes.append(',');
+      enabledTypes.append(connector.getSearchType());
+    }
+    searchTypeRegistry.setEnabledSearchTypes(enabledTypes.toString());
+    driver.start();
+  }
+
+  private static ValueParam newValueParam(String name, int value) {
+    ValueParam param = new ValueParam();
+    param.setName(name);
+    param.setValue(String.valueOf(value));
+    return param;
+  }
+
+  private enum Behavior {
+    ANSWER, FAIL, BLOCK
+  }
+
+  private class TestConnector extends SearchServiceConnector {
+    private final Behavior behavior;
+
+    private TestConnector(String searchType, Behavior behavior) {
+      super(newInitParams(searchType));
+      this.behavior = behavior;
+    }
+
+    @Override
+    public Collection<SearchResult> search(SearchContext context, String query, Collection<String> sites, int offset, int limit, String sort, String order) {
+      if (Behavior.FAIL == behavior) throw new IllegalStateException("Connector " + getSearchType() + " failed");
+      if (Behavior.BLOCK == behavior) {
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      List<SearchResult> results = new ArrayList<SearchResult>();
+      results.add(new SearchResult("/portal/intranet/" + getSearchType(), getSearchType() + " result", "", "", null, 0, 1000));
+      return results;
+    }
+  }
+
+  private static InitParams newInitParams(String searchType) {
+    PropertiesParam constructorParams = new PropertiesParam();
+    constructorParams.setName("constructor.params");
+    constructorParams.setProperty("searchType", searchType);
+    constructorParams.setProperty("displayName", searchType);
+    InitParams params = new InitParams();
+    params.addParameter(constructorParams);
+    return params;
+  }
+}
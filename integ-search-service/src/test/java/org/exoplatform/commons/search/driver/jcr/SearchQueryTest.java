@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class SearchQueryTest extends TestCase {
+
+  public void testParse() {
+    SearchQuery query = SearchQuery.parse("foo \"bar baz\" qux\"quux\"corge \"");
+    assertEquals(Arrays.asList("bar baz", "quux"), query.getQuotedTerms());
+    assertEquals(Arrays.asList("foo", "quxcorge"), query.getSingleTerms());
+    assertEquals("\"bar baz\" \"quux\" foo quxcorge", query.toString());
+  }
+
+  public void testParseEmpty() {
+    assertTrue(SearchQuery.parse(null).isEmpty());
+    assertTrue(SearchQuery.parse("  \"\"  ").isEmpty());
+    assertEquals("", SearchQuery.parse(" \t ").toString());
+  }
+
+  public void testRewriteFuzzy() {
+    FuzzyQueryRewriter rewriter = new FuzzyQueryRewriter(true, 0.7);
+    assertEquals("\"bar baz\" foo~0.7 qux~0.8 corge~0.5", rewriter.rewrite(SearchQuery.parse("foo \"bar baz\" qux~0.8 corge~")));
+  }
+
+  public void testRewriteInvalidSimilarity() {
+    FuzzyQueryRewriter rewriter = new FuzzyQueryRewriter(true, 2);
+    assertEquals("~0.5", rewriter.getFuzzySyntax());
+  }
+
+  public void testRewriteNotFuzzy() {
+    FuzzyQueryRewriter rewriter = new FuzzyQueryRewriter(false, 0.7);
+    assertEquals(" foo qux0.8", rewriter.rewrite(SearchQuery.parse("foo qux~0.8")));
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.driver.jcr;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.commons.api.search.data.SearchContext;
+import org.exoplatform.commons.api.search.data.SearchResult;
+
+public class SearchResultMergerTest extends TestCase {
+
+  private static final List<String> TYPES = Arrays.asList("post", "wiki");
+
+  public void testMergeByRelevancy() {
+    Map<String, Collection<SearchResult>> results = new HashMap<String, Collection<SearchResult>>();
+    results.put("post", Arrays.asList(result("p1", 90), result("p2", 50)));
+    results.put("wiki", Arrays.asList(result("w1", 70), result("w2", 50)));
+
+    SearchResultPage page = SearchResultMerger.merge(TYPES, results, SearchCursor.START, 2, SearchResultMerger.getComparator("relevancy", "desc"));
+    assertEquals(2, page.getResults().size());
+    assertEquals("p1", page.getResults().get(0).getResult().getTitle());
+    assertEquals("post", page.getResults().get(0).getType());
+    assertEquals("w1", page.getResults().get(1).getResult().getTitle());
+    assertEquals("post:1,wiki:1", page.getCursor());
+  }
+
+  public void testMergeLastPage() {
+    Map<String, Collection<SearchResult>> results = new HashMap<String, Collection<SearchResult>>();
+    results.put("post", Arrays.asList(result("p2", 50)));
+    results.put("wiki", Arrays.asList(result("w2", 50)));
+
+    SearchResultPage page = SearchResultMerger.merge(TYPES, results, SearchCursor.parse("post:1,wiki:1"), 2, SearchResultMerger.getComparator("relevancy", "desc"));
+    assertEquals(2, page.getResults().size());
+    assertEquals("p2", page.getResults().get(0).getResult().getTitle()); //ties are ranked in the connector order
+    assertEquals("w2", page.getResults().get(1).getResult().getTitle());
+    assertNull(page.getCursor());
+  }
+
+  public void testMergeSkipsTimedOutConnector() {
+    Map<String, Collection<SearchResult>> results = new HashMap<String, Collection<SearchResult>>();
+    results.put("post", TimedOutSearchResults.INSTANCE);
+    results.put("wiki", Arrays.asList(result("w1", 70), result("w2", 50), result("w3", 10)));
+
+    SearchResultPage page = SearchResultMerger.merge(TYPES, results, SearchCursor.START, 3, SearchResultMerger.getComparator("relevancy", "desc"));
+    assertEquals(3, page.getResults().size());
+    assertEquals("post:0,wiki:3", page.getCursor());
+  }
+
+  public void testMergeKeepsPositionOfResumableConnector() {
+    Map<String, Collection<SearchResult>> results = new HashMap<String, Collection<SearchResult>>();
+    results.put("post", Arrays.asList(result("p1", 90), result("p2", 50)));
+    results.put("wiki", Arrays.asList(result("w1", 70), result("w2", 50)));
+    Map<String, ResumableSearchConnector> resumableConnectors = new HashMap<String, ResumableSearchConnector>();
+    resumableConnectors.put("post", new TitlePosition());
+    resumableConnectors.put("wiki", new TitlePosition());
+
+    SearchResultPage page = SearchResultMerger.merge(TYPES, results, SearchCursor.parse("post:2~p0,wiki:2~w0"), 1,
+                                                     SearchResultMerger.getComparator("relevancy", "desc"), resumableConnectors, "relevancy", "desc");
+    assertEquals("post:3~p1,wiki:2~w0", page.getCursor()); //wiki resumes from its previous position
+  }
+
+  public void testParseCursorWithPositions() {
+    SearchCursor cursor = SearchCursor.parse("post:3~a%2Cb%3A%7Ec,wiki:-1");
+    assertEquals(3, cursor.getOffset("post"));
+    assertEquals("a,b:~c", cursor.getPosition("post"));
+    assertNull(cursor.getPosition("wiki"));
+    assertEquals("post:3~a%2Cb%3A%7Ec,wiki:-1", cursor.toString());
+    assertEquals(5, SearchCursor.startingAt(5).getOffset("post"));
+  }
+
+  public void testParseCursor() {
+    SearchCursor cursor = SearchCursor.parse("post:3,wiki:-1");
+    assertEquals(3, cursor.getOffset("post"));
+    assertTrue(cursor.isExhausted("wiki"));
+    assertEquals(0, cursor.getOffset("file"));
+    assertEquals("post:3,wiki:-1", cursor.toString());
+    try {
+      SearchCursor.parse("post");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static class TitlePosition implements ResumableSearchConnector {
+    @Override
+    public String getPosition(SearchResult result, String sort, String order) {
+      return result.getTitle();
+    }
+
+    @Override
+    public Collection<SearchResult> searchAfter(SearchContext context, String query, Collection<String> sites, String position, int limit, String sort, String order) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static SearchResult result(String title, long relevancy) {
+    return new SearchResult("/" + title, title, null, null, null, 0, relevancy);
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+import junit.framework.TestCase;
+
+public class HistogramTest extends TestCase {
+
+  public void testBuckets() {
+    for (long value = 0; value < 1 << 20; value++) {
+      long highest = Histogram.highestValueOf(Histogram.indexOf(value));
+      assertTrue(value + " counted up to " + highest, highest >= value && highest - value <= value / 64);
+    }
+    assertEquals(Histogram.indexOf(Long.MAX_VALUE), Histogram.indexOf(1L << 60));
+  }
+
+  public void testPercentiles() {
+    Histogram histogram = new Histogram();
+    for (int value = 1; value <= 1000; value++) {
+      histogram.record(value);
+    }
+    HistogramSnapshot snapshot = histogram.getSnapshot();
+    assertEquals(1000, snapshot.getCount());
+    assertEquals(500.5, snapshot.getMean(), 0.001);
+    assertEquals(1000, snapshot.getMax());
+    assertEquals(500, snapshot.getP50(), 500 / 64);
+    assertEquals(900, snapshot.getP90(), 900 / 64);
+    assertEquals(990, snapshot.getP99(), 990 / 64);
+    assertEquals(1000, snapshot.getP999());
+  }
+
+  public void testEmptyAndReset() {
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.getSnapshot().getP99());
+    histogram.record(42);
+    histogram.reset();
+    assertEquals(0, histogram.getSnapshot().getCount());
+    assertEquals(0, histogram.getSnapshot().getMax());
+  }
+}
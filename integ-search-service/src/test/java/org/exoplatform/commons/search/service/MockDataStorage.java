@@ -26,6 +26,7 @@ import org.exoplatform.commons.utils.ListAccess;
 import org.exoplatform.portal.application.PortletPreferences;
 import org.exoplatform.portal.config.DataStorage;
 import org.exoplatform.portal.config.Query;
+import org.exoplatform.portal.config.UserACL;
 import org.exoplatform.portal.config.model.Application;
 import org.exoplatform.portal.config.model.ApplicationState;
 import org.exoplatform.portal.config.model.ApplicationType;
@@ -93,7 +94,10 @@ public class MockDataStorage implements DataStorage,Startable {
    */
   @Override
   public PortalConfig getPortalConfig(String ownerType, String portalName) throws Exception {
-    return null;
+    if (!getAllPortalNames().contains(portalName)) return null;
+    PortalConfig portalConfig = new PortalConfig(ownerType, portalName);
+    portalConfig.setAccessPermissions(new String[] { UserACL.EVERYONE });
+    return portalConfig;
   }
 
   /* (non-Javadoc)
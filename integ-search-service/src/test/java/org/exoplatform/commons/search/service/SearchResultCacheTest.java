@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.commons.api.search.data.SearchResult;
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.services.listener.ListenerService;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.services.security.MembershipEntry;
+
+public class SearchResultCacheTest extends TestCase {
+
+  private ListenerService listenerService;
+
+  private SearchResultCache cache;
+
+  @Override
+  protected void setUp() throws Exception {
+    listenerService = new ListenerService(new ExoContainer().getContext());
+    cache = new SearchResultCache(listenerService, null);
+  }
+
+  public void testKeyDependsOnUserAndMemberships() {
+    String root = getKey(cache, newIdentity("root", "/platform/users", "/platform/administrators"));
+    assertEquals(root, getKey(cache, newIdentity("root", "/platform/administrators", "/platform/users")));
+    assertFalse(root.equals(getKey(cache, newIdentity("john", "/platform/users", "/platform/administrators"))));
+    assertFalse(root.equals(getKey(cache, newIdentity("root", "/platform/users"))));
+    assertFalse(root.equals(cache.getKey(newIdentity("root", "/platform/users", "/platform/administrators"), "http://localhost:8080",
+                                         "intranet", "other", Arrays.asList("intranet"), Arrays.asList("all"), 0, 10, "relevancy", "desc")));
+  }
+
+  public void testSharedKeyDependsOnMembershipsOnly() {
+    SearchResultCache sharedCache = new SearchResultCache(listenerService, newParams(SearchResultCache.SHARED_PARAM, "true"));
+    String root = getKey(sharedCache, newIdentity("root", "/platform/users"));
+    assertEquals(root, getKey(sharedCache, newIdentity("john", "/platform/users")));
+    assertFalse(root.equals(getKey(sharedCache, newIdentity("john", "/platform/users", "/platform/administrators"))));
+  }
+
+  public void testInvalidationDropsEntriesOfType() throws Exception {
+    cache.put("people", cache.getGeneration(), Arrays.asList("people"), newResults());
+    cache.put("wiki", cache.getGeneration(), Arrays.asList("wiki"), newResults());
+    cache.put("all", cache.getGeneration(), Arrays.asList("all"), newResults());
+
+    listenerService.broadcast(SearchResultCache.CONTENT_CHANGED_EVENT, "people", null);
+
+    assertNull(cache.get("people"));
+    assertNull(cache.get("all"));
+    assertNotNull(cache.get("wiki"));
+    assertEquals(2, cache.getInvalidationCount());
+  }
+
+  public void testResultsOfSearchRunningAcrossInvalidationAreNotStored() {
+    long generation = cache.getGeneration();
+    cache.invalidate("wiki");
+    cache.put("people", generation, Arrays.asList("people"), newResults());
+    assertNull(cache.get("people"));
+
+    cache.put("people", cache.getGeneration(), Arrays.asList("people"), newResults());
+    assertNotNull(cache.get("people"));
+  }
+
+  private static String getKey(SearchResultCache cache, Identity identity) {
+    return cache.getKey(identity, "http://localhost:8080", "intranet", "test", Arrays.asList("intranet"), Arrays.asList("all"),
+                        0, 10, "relevancy", "desc");
+  }
+
+  private static Identity newIdentity(String userId, String... groups) {
+    List<MembershipEntry> memberships = new ArrayList<MembershipEntry>();
+    for (String group : groups) {
+      memberships.add(new MembershipEntry(group, "*"));
+    }
+    return new Identity(userId, memberships);
+  }
+
+  private static InitParams newParams(String name, String value) {
+    ValueParam param = new ValueParam();
+    param.setName(name);
+    param.setValue(value);
+    InitParams params = new InitParams();
+    params.addParameter(param);
+    return params;
+  }
+
+  private static Map<String, Collection<SearchResult>> newResults() {
+    return new HashMap<String, Collection<SearchResult>>();
+  }
+}
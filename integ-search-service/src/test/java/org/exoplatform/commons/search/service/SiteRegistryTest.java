@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.portal.config.DataStorage;
+import org.exoplatform.portal.config.UserACL;
+import org.exoplatform.portal.config.model.PortalConfig;
+import org.exoplatform.services.listener.ListenerService;
+import org.exoplatform.web.WebAppController;
+import org.mockito.Mockito;
+
+public class SiteRegistryTest extends TestCase {
+
+  private final PortalConfig intranet = new PortalConfig(PortalConfig.PORTAL_TYPE, "intranet");
+
+  private final PortalConfig acme = new PortalConfig(PortalConfig.PORTAL_TYPE, "acme");
+
+  private DataStorage dataStorage;
+
+  private UserACL userACL;
+
+  private ListenerService listenerService;
+
+  private SiteRegistry siteRegistry;
+
+  @Override
+  protected void setUp() throws Exception {
+    dataStorage = Mockito.mock(DataStorage.class);
+    Mockito.when(dataStorage.getAllPortalNames()).thenReturn(Arrays.asList("intranet", "acme"));
+    Mockito.when(dataStorage.getPortalConfig(PortalConfig.PORTAL_TYPE, "intranet")).thenReturn(intranet);
+    Mockito.when(dataStorage.getPortalConfig(PortalConfig.PORTAL_TYPE, "acme")).thenReturn(acme);
+    userACL = Mockito.mock(UserACL.class);
+    Mockito.when(userACL.hasPermission(Mockito.any(PortalConfig.class))).thenReturn(true);
+    WebAppController webAppController = Mockito.mock(WebAppController.class);
+    Mockito.when(webAppController.getConfigurationPath()).thenReturn(getClass().getResource("/conf/portal/controller.xml").getPath());
+    listenerService = new ListenerService(new ExoContainer().getContext());
+    siteRegistry = new SiteRegistry(dataStorage, userACL, webAppController, listenerService);
+  }
+
+  public void testCachedSiteIsFilteredByPermission() throws Exception {
+    assertEquals(Arrays.asList("intranet", "acme"), siteRegistry.getAllPortalNames());
+
+    //the caller can not access acme anymore, while the portal configs are still cached
+    Mockito.when(userACL.hasPermission(acme)).thenReturn(false);
+    assertEquals(Arrays.asList("intranet"), siteRegistry.getAllPortalNames());
+    Mockito.verify(dataStorage, Mockito.times(1)).getAllPortalNames();
+  }
+
+  public void testPortalConfigsAreReadAgainAfterChange() throws Exception {
+    siteRegistry.getAllPortalNames();
+    Mockito.when(dataStorage.getAllPortalNames()).thenReturn(Arrays.asList("intranet"));
+
+    listenerService.broadcast(DataStorage.PORTAL_CONFIG_REMOVED, dataStorage, acme);
+
+    assertEquals(Arrays.asList("intranet"), siteRegistry.getAllPortalNames());
+    Mockito.verify(dataStorage, Mockito.times(2)).getAllPortalNames();
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.commons.search.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.commons.api.search.SearchService;
+import org.exoplatform.commons.api.search.SearchServiceConnector;
+import org.exoplatform.commons.api.search.data.SearchContext;
+import org.exoplatform.commons.api.search.data.SearchResult;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
+import org.exoplatform.services.security.ConversationState;
+import org.exoplatform.services.security.Identity;
+
+public class TypeaheadSearcherTest extends TestCase {
+
+  private static final String BASE_URI = "http://localhost:8080";
+
+  private MockSearchService searchService;
+
+  private TypeaheadSearcher searcher;
+
+  @Override
+  protected void setUp() throws Exception {
+    ConversationState.setCurrent(new ConversationState(new Identity("root")));
+    searchService = new MockSearchService();
+    searchService.addConnector(new MockConnector("people"));
+    searchService.addConnector(new MockConnector("wiki"));
+    searcher = new TypeaheadSearcher(searchService, null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    ConversationState.setCurrent(null);
+  }
+
+  public void testExtendedQueryFiltersCandidates() throws Exception {
+    Map<String, Collection<SearchResult>> results = search("proj", Arrays.asList("all"));
+    assertEquals(2, results.get("people").size());
+
+    results = search("proje", Arrays.asList("all"));
+    assertEquals(1, searchService.searches.size());
+    assertEquals(2, results.get("people").size());
+    assertEquals(2, results.get("wiki").size());
+  }
+
+  public void testFailedTypeIsSearchedAgain() throws Exception {
+    searchService.failing.add("wiki");
+    Map<String, Collection<SearchResult>> results = search("proj", Arrays.asList("all"));
+    assertFalse(results.containsKey("wiki"));
+
+    searchService.failing.clear();
+    results = search("proje", Arrays.asList("all"));
+    assertEquals(2, searchService.searches.size());
+    assertEquals(Arrays.asList("wiki"), searchService.searches.get(1));
+    assertEquals(2, results.get("people").size());
+    assertEquals(2, results.get("wiki").size());
+  }
+
+  public void testFailedRequestedTypeIsSearchedAgain() throws Exception {
+    searchService.failing.add("people");
+    search("proj", Arrays.asList("people", "wiki"));
+
+    searchService.failing.clear();
+    Map<String, Collection<SearchResult>> results = search("proje", Arrays.asList("people", "wiki"));
+    assertEquals(Arrays.asList("people"), searchService.searches.get(1));
+    assertEquals(2, results.get("people").size());
+  }
+
+  private Map<String, Collection<SearchResult>> search(String query, List<String> types) throws Exception {
+    String key = "intranet" + '\u0000' + types;
+    return searcher.search(key, BASE_URI, null, query, Arrays.asList("intranet"), types, 2, "relevancy", "desc");
+  }
+
+  /**
+   * Calls its connectors one after the other, except the failing ones which are skipped like the driver does.
+   */
+  private static class MockSearchService extends SearchService {
+    private final Set<String> failing = new HashSet<String>();
+
+    private final List<Collection<String>> searches = new ArrayList<Collection<String>>();
+
+    @Override
+    public Map<String, Collection<SearchResult>> search(SearchContext context, String query, Collection<String> sites, Collection<String> types, int offset, int limit, String sort, String order) {
+      searches.add(new ArrayList<String>(types));
+      Map<String, Collection<SearchResult>> results = new LinkedHashMap<String, Collection<SearchResult>>();
+      for (SearchServiceConnector connector : getConnectors()) {
+        String searchType = connector.getSearchType();
+        if (failing.contains(searchType) || !(types.contains("all") || types.contains(searchType))) continue;
+        results.put(searchType, connector.search(context, query, sites, offset, limit, sort, order));
+      }
+      return results;
+    }
+  }
+
+  private static class MockConnector extends SearchServiceConnector {
+    private MockConnector(String searchType) {
+      super(newInitParams(searchType));
+    }
+
+    @Override
+    public Collection<SearchResult> search(SearchContext context, String query, Collection<String> sites, int offset, int limit, String sort, String order) {
+      List<SearchResult> results = new ArrayList<SearchResult>();
+      for (int i = 0; i < 3; i++) {
+        results.add(new SearchResult("/portal/intranet/" + getSearchType() + "/" + i, "Project " + i, "", "", null, 0, 1000 - i));
+      }
+      return results;
+    }
+  }
+
+  private static InitParams newInitParams(String searchType) {
+    PropertiesParam constructorParams = new PropertiesParam();
+    constructorParams.setName("constructor.params");
+    constructorParams.setProperty("searchType", searchType);
+    constructorParams.setProperty("displayName", searchType);
+    InitParams params = new InitParams();
+    params.addParameter(constructorParams);
+    return params;
+  }
+}
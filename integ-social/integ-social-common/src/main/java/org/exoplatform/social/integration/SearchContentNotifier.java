@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.integration;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.services.listener.ListenerService;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Tells the unified search that content of a search type was written by one of the activity publishers,
+ * so that the search results it cached for this type are dropped.
+ */
+public final class SearchContentNotifier {
+  private final static Log LOG = ExoLogger.getLogger(SearchContentNotifier.class);
+
+  /** Event broadcast through the {@link ListenerService} when content of a search type is written, its source is the search type. */
+  public static final String CONTENT_CHANGED_EVENT = "exo.unified-search.content.changed";
+
+  private SearchContentNotifier() {
+  }
+
+  /**
+   * @param searchType the search type of the written content
+   */
+  public static void contentChanged(String searchType) {
+    ExoContainer container = ExoContainerContext.getCurrentContainerIfPresent();
+    if (null == container) container = PortalContainer.getInstance();
+    ListenerService listenerService = null != container ? (ListenerService) container.getComponentInstanceOfType(ListenerService.class) : null;
+    if (null == listenerService) return;
+    try {
+      listenerService.broadcast(CONTENT_CHANGED_EVENT, searchType, null);
+    } catch (Exception e) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Can not notify the unified search of the " + searchType + " change", e);
+      }
+    }
+  }
+}
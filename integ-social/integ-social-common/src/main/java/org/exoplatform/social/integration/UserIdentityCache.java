@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.integration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
+import org.exoplatform.social.core.manager.IdentityManager;
+
+/**
+ * LRU cache of the social identities of the users, by user name, with a time to live.
+ * <br>
+ * The activity publishers of the applications resolve the author of each activity and comment they write,
+ * mostly among the same few active users. Identities are loaded without forcing the reload of their profile,
+ * so the cache is meant for authorship (identity id and remote id), not for displaying profile data.
+ * Entries are dropped when the user or its profile is saved or deleted on this node, see
+ * {@link UserIdentityCacheListener} and {@link UserProfileIdentityCacheListener}.
+ */
+@Managed
+@ManagedDescription("User identity cache of the activity publishers")
+@NameTemplate({ @Property(key = "service", value = "integration"), @Property(key = "view", value = "useridentitycache") })
+public class UserIdentityCache {
+  private final static Log LOG = ExoLogger.getLogger(UserIdentityCache.class);
+
+  public static final String MAX_SIZE_PARAM = "cache.max.size";
+  public static final String TIME_TO_LIVE_PARAM = "cache.time-to-live";
+
+  private static final int DEFAULT_MAX_SIZE = 1000;
+  private static final long DEFAULT_TIME_TO_LIVE = 600; //seconds
+
+  private final IdentityManager identityManager;
+
+  private final int maxSize;
+  private final long timeToLive;
+
+  private final Map<String, CacheEntry> entries;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  public UserIdentityCache(IdentityManager identityManager, InitParams params) {
+    this.identityManager = identityManager;
+    this.maxSize = (int) getLongParam(params, MAX_SIZE_PARAM, DEFAULT_MAX_SIZE);
+    this.timeToLive = getLongParam(params, TIME_TO_LIVE_PARAM, DEFAULT_TIME_TO_LIVE) * 1000;
+    this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+        return size() > UserIdentityCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * Gets the identity of a user, creating it if needed.
+   * @param userId the user name
+   * @return the identity, or null if the user does not exist
+   */
+  public Identity getIdentity(String userId) {
+    if (null == userId || userId.length() == 0) return null;
+    long now = System.currentTimeMillis();
+    synchronized (entries) {
+      CacheEntry entry = entries.get(userId);
+      if (null != entry) {
+        if (entry.expiry > now) {
+          hits.incrementAndGet();
+          return entry.identity;
+        }
+        entries.remove(userId);
+      }
+    }
+    misses.incrementAndGet();
+    Identity identity = loadIdentity(userId);
+    if (null != identity) {
+      synchronized (entries) {
+        entries.put(userId, new CacheEntry(identity, now + timeToLive));
+      }
+    }
+    return identity;
+  }
+
+  /**
+   * Gets the identity of a user through the cache deployed in the current container, or from the identity manager
+   * when there is none. This is the lookup the activity publishers resolve their authors with.
+   * @param identityManager the identity manager used when the cache is not deployed
+   * @param userId the user name
+   * @return the identity, or null if the user does not exist
+   */
+  public static Identity getUserIdentity(IdentityManager identityManager, String userId) {
+    ExoContainer container = ExoContainerContext.getCurrentContainerIfPresent();
+    if (null == container) container = PortalContainer.getInstance();
+    UserIdentityCache cache = null != container ? (UserIdentityCache) container.getComponentInstanceOfType(UserIdentityCache.class) : null;
+    if (null != cache) return cache.getIdentity(userId);
+    return identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, userId, false);
+  }
+
+  /**
+   * Drops the cached identity of a user.
+   * @param userId the user name
+   */
+  public void remove(String userId) {
+    if (null == userId) return;
+    synchronized (entries) {
+      if (null != entries.remove(userId)) invalidations.incrementAndGet();
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Cached identity of " + userId + " invalidated");
+    }
+  }
+
+  @Managed
+  @ManagedDescription("Drop all the cached identities")
+  public void clear() {
+    synchronized (entries) {
+      invalidations.addAndGet(entries.size());
+      entries.clear();
+    }
+  }
+
+  @Managed
+  @ManagedDescription("Number of identities served from the cache")
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  @Managed
+  @ManagedDescription("Number of identities loaded from the identity manager")
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  @Managed
+  @ManagedDescription("Ratio of identities served from the cache")
+  public double getHitRatio() {
+    long hitCount = hits.get();
+    long total = hitCount + misses.get();
+    return total == 0 ? 0 : (double) hitCount / total;
+  }
+
+  @Managed
+  @ManagedDescription("Number of entries removed because the user or its profile changed")
+  public long getInvalidationCount() {
+    return invalidations.get();
+  }
+
+  @Managed
+  @ManagedDescription("Number of cached identities")
+  public int getSize() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  @Managed
+  @ManagedDescription("Maximum number of cached identities")
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  protected Identity loadIdentity(String userId) {
+    return identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, userId, false);
+  }
+
+  private static long getLongParam(InitParams params, String name, long defaultValue) {
+    if (null == params) return defaultValue;
+    ValueParam param = params.getValueParam(name);
+    if (null == param || null == param.getValue()) return defaultValue;
+    try {
+      long value = Long.parseLong(param.getValue().trim());
+      return value > 0 ? value : defaultValue;
+    } catch (NumberFormatException e) {
+      LOG.warn("Invalid value for " + name + ": " + param.getValue() + ", using " + defaultValue);
+      return defaultValue;
+    }
+  }
+
+  private static class CacheEntry {
+    private final Identity identity;
+    private final long expiry;
+
+    private CacheEntry(Identity identity, long expiry) {
+      this.identity = identity;
+      this.expiry = expiry;
+    }
+  }
+}
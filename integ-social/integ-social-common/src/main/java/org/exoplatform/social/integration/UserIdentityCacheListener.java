@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.integration;
+
+import org.exoplatform.services.organization.User;
+import org.exoplatform.services.organization.UserEventListener;
+
+/**
+ * Drops the cached identity of a user when the user is updated, enabled, disabled or deleted.
+ */
+public class UserIdentityCacheListener extends UserEventListener {
+
+  private final UserIdentityCache cache;
+
+  public UserIdentityCacheListener(UserIdentityCache cache) {
+    this.cache = cache;
+  }
+
+  @Override
+  public void postSave(User user, boolean isNew) throws Exception {
+    if (!isNew) cache.remove(user.getUserName());
+  }
+
+  @Override
+  public void postSetEnabled(User user) throws Exception {
+    cache.remove(user.getUserName());
+  }
+
+  @Override
+  public void postDelete(User user) throws Exception {
+    cache.remove(user.getUserName());
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.integration;
+
+import org.exoplatform.services.organization.UserProfile;
+import org.exoplatform.services.organization.UserProfileEventListener;
+
+/**
+ * Drops the cached identity of a user when the profile of the user is saved or deleted.
+ */
+public class UserProfileIdentityCacheListener extends UserProfileEventListener {
+
+  private final UserIdentityCache cache;
+
+  public UserProfileIdentityCacheListener(UserIdentityCache cache) {
+    this.cache = cache;
+  }
+
+  @Override
+  public void postSave(UserProfile profile, boolean isNew) throws Exception {
+    cache.remove(profile.getUserName());
+  }
+
+  @Override
+  public void postDelete(UserProfile profile) throws Exception {
+    cache.remove(profile.getUserName());
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2003-2013 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.integration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
+
+public class UserIdentityCacheTest extends TestCase {
+
+  private final Map<String, Identity> users = new HashMap<String, Identity>();
+
+  private UserIdentityCache cache;
+
+  @Override
+  protected void setUp() throws Exception {
+    users.put("root", new Identity(OrganizationIdentityProvider.NAME, "root"));
+    users.put("john", new Identity(OrganizationIdentityProvider.NAME, "john"));
+    cache = new UserIdentityCache(null, null) {
+      @Override
+      protected Identity loadIdentity(String userId) {
+        return users.get(userId);
+      }
+    };
+  }
+
+  public void testIdentityIsServedFromCache() throws Exception {
+    Identity root = cache.getIdentity("root");
+    users.put("root", new Identity(OrganizationIdentityProvider.NAME, "root"));
+    assertTrue(root == cache.getIdentity("root"));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(0.5, cache.getHitRatio(), 0.001);
+  }
+
+  public void testUnknownUserIsNotCached() throws Exception {
+    assertNull(cache.getIdentity("mary"));
+    assertNull(cache.getIdentity(""));
+    assertEquals(0, cache.getSize());
+    Identity mary = new Identity(OrganizationIdentityProvider.NAME, "mary");
+    users.put("mary", mary);
+    assertTrue(mary == cache.getIdentity("mary"));
+  }
+
+  public void testRemovedUserIsLoadedAgain() throws Exception {
+    cache.getIdentity("root");
+    cache.getIdentity("john");
+    Identity john = new Identity(OrganizationIdentityProvider.NAME, "john");
+    users.put("john", john);
+    cache.remove("john");
+    assertTrue(john == cache.getIdentity("john"));
+    assertEquals(1, cache.getInvalidationCount());
+    cache.clear();
+    assertEquals(0, cache.getSize());
+  }
+}
@@ -14,13 +14,14 @@ import org.exoplatform.services.security.MembershipEntry;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.identity.model.Identity;
-import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.manager.ActivityManager;
 import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.space.spi.SpaceService;
 import org.exoplatform.social.core.storage.SpaceStorageException;
+import org.exoplatform.social.integration.SearchContentNotifier;
+import org.exoplatform.social.integration.UserIdentityCache;
 import org.exoplatform.wiki.ext.impl.WikiUIActivity.CommentType;
 import org.exoplatform.wiki.mow.api.Page;
 import org.exoplatform.wiki.mow.api.WikiNodeType;
@@ -65,6 +66,8 @@ public class WikiSpaceActivityPublisher extends PageWikiListener {
 
   private static final int   EXCERPT_LENGTH    = 140;
 
+  public static final String WIKI_SEARCH_TYPE  = "wiki";
+
   private static final Log   LOG               = ExoLogger.getExoLogger(WikiSpaceActivityPublisher.class);
 
   public WikiSpaceActivityPublisher() {
@@ -337,7 +340,7 @@ public class WikiSpaceActivityPublisher extends PageWikiListener {
     
     String username = ConversationState.getCurrent().getIdentity().getUserId();
     IdentityManager identityM = (IdentityManager) PortalContainer.getInstance().getComponentInstanceOfType(IdentityManager.class);
-    Identity userIdentity = identityM.getOrCreateIdentity(OrganizationIdentityProvider.NAME, username, false);
+    Identity userIdentity = UserIdentityCache.getUserIdentity(identityM, username);
     
     Identity ownerStream = null, authorActivity = userIdentity;
     ExoSocialActivity activity = null;
@@ -380,6 +383,7 @@ public class WikiSpaceActivityPublisher extends PageWikiListener {
       if (!StringUtils.isEmpty(activityId)) {
         ActivityTypeUtils.attachActivityId(node, activityId);
       }
+      SearchContentNotifier.contentChanged(WIKI_SEARCH_TYPE);
     }
   }
 
@@ -400,6 +404,7 @@ public class WikiSpaceActivityPublisher extends PageWikiListener {
       String nodeActivityID = node.getProperty(ActivityTypeUtils.EXO_ACTIVITY_ID).getString();
       activityManager.deleteActivity(nodeActivityID);
     }
+    SearchContentNotifier.contentChanged(WIKI_SEARCH_TYPE);
   }
 
   @Override